@@ -350,6 +350,13 @@ public class TextEntryController {
                 entry.addFoodEntry(newEntry);
             }else{
                 System.out.println("Food does not Exist Skipping");
+                List<String> similar = new ArrayList<>();
+                for(Food match: foodHandler.search(food.getKey(), 3)){
+                    similar.add(match.getName());
+                }
+                if(!similar.isEmpty()){
+                    System.out.println("Did you mean: " + String.join(", ", similar) + "?");
+                }
             }
         }
         return entry;
@@ -373,6 +380,13 @@ public class TextEntryController {
                 entry.addExerciseEntry(newEntry);
             }else{
                 System.out.println("Exercise does not Exist Skipping");
+                List<String> similar = new ArrayList<>();
+                for(Exercise match: exerciseHandler.search(exercise.getKey(), 3)){
+                    similar.add(match.getName());
+                }
+                if(!similar.isEmpty()){
+                    System.out.println("Did you mean: " + String.join(", ", similar) + "?");
+                }
             }
         }
         return entry;
@@ -10,6 +10,8 @@ import DietManager.Model.Exercise.Exercise;
 import DietManager.Model.ExerciseHandler;
 import DietManager.Model.Food.Food;
 import DietManager.Model.FoodHandler;
+import DietManager.Model.Startup;
+import DietManager.Model.Util.BackgroundSaver;
 import DietManager.Model.Util.IOHandler;
 import DietManager.View.*;
 
@@ -24,7 +26,17 @@ public class Main{
     // RUN THE TEXT UI
     private static boolean RUN_TEXT_UI = false;
 
+    // SAVE THE LOG IN THE COMPACT FORMAT.
+    private static boolean COMPACT_LOG = false;
+
+    // JOURNAL CHANGES AS THEY ARE MADE.
+    private static boolean JOURNAL = false;
+
+    // KEEP BINARY SNAPSHOTS FOR A FAST START.
+    private static boolean SNAPSHOTS = false;
+
     private static IOHandler io;
+    private static BackgroundSaver saver;
     private static FoodHandler foodHandler;
     private static ExerciseHandler exerciseHandler;
     private static EntryHandler entryHandler;
@@ -51,6 +63,15 @@ public class Main{
             if (arg.equals("--textui")) {
                 RUN_TEXT_UI = true;
             }
+            if (arg.equals("--compact-log")) {
+                COMPACT_LOG = true;
+            }
+            if (arg.equals("--journal")) {
+                JOURNAL = true;
+            }
+            if (arg.equals("--snapshots")) {
+                SNAPSHOTS = true;
+            }
             if (arg.equals("--dev-files")) {
                 PATH = "./src/DietManager/Assets/TestAssets/";
                 logIn = PATH+"log.csv";
@@ -69,9 +90,28 @@ public class Main{
         exerciseHandler = new ExerciseHandler(io);
         entryHandler = new EntryHandler(io,foodHandler,exerciseHandler);
 
+        // Saves requested from the UI are written on a background thread.
+        saver = new BackgroundSaver(io);
+        foodHandler.setSaver(saver);
+        exerciseHandler.setSaver(saver);
+        entryHandler.setSaver(saver);
+
+        // Journal changes as they are made and keep binary snapshots for a fast start, if asked for.
+        // Only safe when the files are saved back to where they were loaded from.
+        foodHandler.setJournaling(JOURNAL && foodsIn.equals(foodsOut));
+        exerciseHandler.setJournaling(JOURNAL && exerciseIn.equals(exerciseOut));
+        entryHandler.setJournaling(JOURNAL && logIn.equals(logOut));
+        foodHandler.setBinarySnapshots(SNAPSHOTS && foodsIn.equals(foodsOut));
+        exerciseHandler.setBinarySnapshots(SNAPSHOTS && exerciseIn.equals(exerciseOut));
+        entryHandler.setBinarySnapshots(SNAPSHOTS && logIn.equals(logOut));
+        // A log that is already compact stays compact whether or not this is asked for.
+        entryHandler.setCompactLog(COMPACT_LOG);
+
         // Add shutdown hook to program so that the data is written when the program exits.
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             try {
+                // Let queued background saves finish first so that they cannot overwrite the final save.
+                saver.close();
                 foodHandler.save(new File(foodsOut));
                 exerciseHandler.save(new File(exerciseOut));
                 entryHandler.save(new File(logOut));
@@ -81,10 +121,11 @@ public class Main{
         }));
 
         if(!E2E_MODEL_TEST) {
+            // Foods and exercises load at the same time, the log once both are in.
+            Startup startup = new Startup(foodHandler,exerciseHandler,entryHandler);
             try {
-                foodHandler.load(new File(foodsIn));
-                exerciseHandler.load(new File(exerciseIn));
-                entryHandler.load(new File(logIn));
+                startup.load(new File(foodsIn), new File(exerciseIn), new File(logIn));
+                System.out.println(startup.report());
             }catch(Exception e){
                 System.out.println(e.getMessage());
             }
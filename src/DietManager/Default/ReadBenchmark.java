@@ -0,0 +1,171 @@
+package DietManager.Default;
+
+import DietManager.Model.Entry.Entry;
+import DietManager.Model.Entry.Nutrient;
+import DietManager.Model.EntryHandler;
+import DietManager.Model.ExerciseHandler;
+import DietManager.Model.Food.Food;
+import DietManager.Model.FoodHandler;
+import DietManager.Model.Util.IOHandler;
+import DietManager.Model.Util.Resolution;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times reading the model from several threads, with and without another thread changing it at the same time.
+ * The files are loaded without journaling, snapshots or a save on exit, so nothing the benchmark changes is written.
+ * Run it on its own, with the same "--dev-files" argument as Main to use the developer files.
+ */
+public class ReadBenchmark {
+
+    private static final int READERS = 4;
+    private static final long MILLIS = 2000;
+
+    private final FoodHandler foodHandler;
+    private final EntryHandler entryHandler;
+
+    /**
+     * Creates a benchmark over loaded handlers.
+     * @param foodHandler The foods to read and change.
+     * @param entryHandler The log to read and change.
+     */
+    public ReadBenchmark(FoodHandler foodHandler, EntryHandler entryHandler) {
+        this.foodHandler = foodHandler;
+        this.entryHandler = entryHandler;
+    }
+
+    /**
+     * Loads the files and runs the benchmark, once without a writer to warm up, then without and with one.
+     * @param args "--dev-files" to read the developer files instead of the ones in the working directory.
+     */
+    public static void main(String[] args) {
+        String path = "./";
+        for (String arg : args) {
+            if (arg.equals("--dev-files")) {
+                path = "./src/DietManager/Assets/TestAssets/";
+            }
+        }
+
+        IOHandler io = new IOHandler();
+        FoodHandler foodHandler = new FoodHandler(io);
+        ExerciseHandler exerciseHandler = new ExerciseHandler(io);
+        EntryHandler entryHandler = new EntryHandler(io, foodHandler, exerciseHandler);
+        try {
+            foodHandler.load(new File(path + "foods.csv"));
+            exerciseHandler.load(new File(path + "exercise.csv"));
+            entryHandler.load(new File(path + "log.csv"));
+        } catch (Exception e) {
+            System.out.println("Could not run benchmark. Reason: " + e.getMessage());
+            return;
+        }
+
+        ReadBenchmark benchmark = new ReadBenchmark(foodHandler, entryHandler);
+        // The first run only warms up the JIT, compare the two after it.
+        benchmark.run(false);
+        benchmark.run(false);
+        benchmark.run(true);
+    }
+
+    /**
+     * Reads the model from several threads for a while and prints how many reads there were and how long they took.
+     * @param withWriter True to keep changing the model from another thread at the same time.
+     */
+    public void run(boolean withWriter) {
+        LocalDate first = entryHandler.firstDay();
+        LocalDate last = entryHandler.lastDay();
+        if (first == null) {
+            System.out.println("Could not run benchmark. Reason: The log has no entries.");
+            return;
+        }
+        int days = (int) (last.toEpochDay() - first.toEpochDay()) + 1;
+        ArrayList<Food> foods = new ArrayList<>(foodHandler.getAll());
+        ArrayList<Entry> entries = new ArrayList<>(entryHandler.getAll());
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder writes = new LongAdder();
+        // How many reads took under 2^i microseconds, and at least half that.
+        AtomicLongArray latencies = new AtomicLongArray(64);
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long[] counts = new long[64];
+                while (running.get()) {
+                    LocalDate day = first.plusDays(random.nextInt(days));
+                    long start = System.nanoTime();
+                    entryHandler.get(day);
+                    entryHandler.total(Nutrient.CALORIES, day.minusDays(30), day);
+                    entryHandler.bucket(Resolution.MONTH, day);
+                    if (!foods.isEmpty()) {
+                        foodHandler.get(foods.get(random.nextInt(foods.size())).getName());
+                    }
+                    counts[64 - Long.numberOfLeadingZeros((System.nanoTime() - start) / 1000)]++;
+                }
+                for (int bucket = 0; bucket < counts.length; bucket++) {
+                    latencies.addAndGet(bucket, counts[bucket]);
+                }
+            }));
+        }
+        if (withWriter) {
+            threads.add(new Thread(() -> {
+                //Store what is already there over and over, so the model keeps changing but ends up the same.
+                int i = 0;
+                while (running.get()) {
+                    entryHandler.addOverwrite(entries.get(i++ % entries.size()));
+                    if (!foods.isEmpty()) {
+                        foodHandler.add(foods.get(i % foods.size()));
+                    }
+                    writes.increment();
+                }
+            }));
+        }
+
+        threads.forEach(Thread::start);
+        try {
+            Thread.sleep(MILLIS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        running.set(false);
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        long reads = 0;
+        for (int bucket = 0; bucket < latencies.length(); bucket++) {
+            reads += latencies.get(bucket);
+        }
+        System.out.println((withWriter ? "With a writer: " : "Without a writer: ")
+                + READERS + " readers, " + (reads * 1000 / MILLIS) + " reads/s, 99% under "
+                + percentile(latencies, reads, 0.99) + "us, 99.9% under " + percentile(latencies, reads, 0.999)
+                + "us, " + (writes.sum() * 1000 / MILLIS) + " writes/s");
+    }
+
+    /**
+     * Finds the latency that a fraction of the reads came in under.
+     * @param latencies How many reads fell in each power of two bucket of microseconds.
+     * @param reads The total number of reads.
+     * @param fraction The fraction of reads, such as 0.99.
+     * @return The upper bound of the bucket, in microseconds.
+     */
+    private static long percentile(AtomicLongArray latencies, long reads, double fraction) {
+        long seen = 0;
+        for (int bucket = 0; bucket < latencies.length(); bucket++) {
+            seen += latencies.get(bucket);
+            if (seen >= reads * fraction) {
+                return 1L << bucket;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,12 @@
+package DietManager.Model;
+
+/**
+ * What a bulk import does with a food whose name is already stored, either from before the import or from an earlier
+ * row of it.
+ */
+public enum ConflictPolicy {
+
+    SKIP,       // Keep the stored food and drop the row.
+    REPLACE,    // Store the row in place of the food, recipes that used it are made with the new one.
+    FAIL        // Stop the import at the row.
+}
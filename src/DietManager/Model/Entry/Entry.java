@@ -5,18 +5,24 @@ import DietManager.Model.Food.Food;
 import DietManager.Model.ICSVable;
 
 import java.util.*;
+import java.util.function.ToIntFunction;
 
 /**
  * This class is an representation of a day, which is composed of multiple entries types.
+ * An entry can be read on one thread while another changes it. The lists of food and exercise entries are never
+ * changed once they are in place: a change puts a new list in their place, so a reader iterates the list it started
+ * with. The mutators are synchronized so that two changes cannot lose each other.
  */
 public class Entry implements ICSVable {
 
-    private GregorianCalendar date;
+    private volatile GregorianCalendar date;
     private String dateString;
-    private CalorieEntry calorieEntry;
-    private WeightEntry weightEntry;
-    private ArrayList<FoodEntry> foodEntries = new ArrayList<>();
-    private ArrayList<ExerciseEntry> exerciseEntries = new ArrayList<>();
+    private volatile CalorieEntry calorieEntry;
+    private volatile WeightEntry weightEntry;
+    private volatile EntryList<FoodEntry> foodEntries = EntryList.empty();
+    private volatile EntryList<ExerciseEntry> exerciseEntries = EntryList.empty();
+    // Set by every mutator below so that a save can find the days that changed.
+    private volatile boolean dirty = true;
 
     /**
      * Instantiates a new entry.
@@ -39,9 +45,10 @@ public class Entry implements ICSVable {
      * This sets the calorie goal for the day.
      * @param calorieEntry The calorie goal for the day.
      */
-    public void setCalorieEntry(CalorieEntry calorieEntry) {
+    public synchronized void setCalorieEntry(CalorieEntry calorieEntry) {
         if (calorieEntry != null) {
             this.calorieEntry = calorieEntry;
+            this.dirty = true;
         }
     }
 
@@ -57,9 +64,10 @@ public class Entry implements ICSVable {
      * This sets the weight entry for the day.
      * @param weightEntry The weight entry for the day.
      */
-    public void setWeightEntry(WeightEntry weightEntry) {
+    public synchronized void setWeightEntry(WeightEntry weightEntry) {
         if (weightEntry != null) {
             this.weightEntry = weightEntry;
+            this.dirty = true;
         }
     }
 
@@ -76,8 +84,10 @@ public class Entry implements ICSVable {
      * @param foodEntry The food consumption to be added to the day.
      * @return True if the operation was successful.
      */
-    public boolean addFoodEntry(FoodEntry foodEntry) {
-        return this.foodEntries.add(foodEntry);
+    public synchronized boolean addFoodEntry(FoodEntry foodEntry) {
+        this.foodEntries = this.foodEntries.plus(foodEntry);
+        this.dirty = true;
+        return true;
     }
 
     /**
@@ -88,7 +98,7 @@ public class Entry implements ICSVable {
      */
     public Collection<FoodEntry> getFoodEntries(String name) {
         ArrayList<FoodEntry> retList = new ArrayList<>();
-        for (FoodEntry entry : foodEntries) {
+        for (FoodEntry entry : this.foodEntries) {
             if (entry.getFood().getName().equals(name)) {
                 retList.add(entry);
             }
@@ -100,6 +110,7 @@ public class Entry implements ICSVable {
      * Returns all of the food entries associated with the entry.
      * @return All of the food entries associated with the entry.
      * Can return a list of 0 items if there are no food entries associated with the day.
+     * The list is read only and does not change, even if the entry does.
      */
     public Collection<FoodEntry> getAllFoodEntries() {
         return this.foodEntries;
@@ -110,8 +121,11 @@ public class Entry implements ICSVable {
      * @param foodEntry The food entry to be removed.
      * @return True if the operation was successful.
      */
-    public boolean removeFoodEntry(FoodEntry foodEntry) {
-        return foodEntries.remove(foodEntry);
+    public synchronized boolean removeFoodEntry(FoodEntry foodEntry) {
+        this.dirty = true;
+        EntryList<FoodEntry> foodEntries = this.foodEntries;
+        this.foodEntries = foodEntries.minus(foodEntry);
+        return this.foodEntries != foodEntries;
     }
 
     /**
@@ -119,8 +133,10 @@ public class Entry implements ICSVable {
      * @param exerciseEntry The exercise that occurred.
      * @return True if the operation was successful.
      */
-    public boolean addExerciseEntry(ExerciseEntry exerciseEntry) {
-        return this.exerciseEntries.add(exerciseEntry);
+    public synchronized boolean addExerciseEntry(ExerciseEntry exerciseEntry) {
+        this.exerciseEntries = this.exerciseEntries.plus(exerciseEntry);
+        this.dirty = true;
+        return true;
     }
 
     /**
@@ -131,7 +147,7 @@ public class Entry implements ICSVable {
      */
     public Collection<ExerciseEntry> getExerciseEntries(String name) {
         ArrayList<ExerciseEntry> retList = new ArrayList<>();
-        for (ExerciseEntry entry : exerciseEntries) {
+        for (ExerciseEntry entry : this.exerciseEntries) {
             if (entry.getExercise().getName().equals(name)) {
                 retList.add(entry);
             }
@@ -144,14 +160,18 @@ public class Entry implements ICSVable {
      * @param exerciseEntry The entry to be removed.
      * @return True if the operation was successful.
      */
-    public boolean removeExerciseEntry(ExerciseEntry exerciseEntry) {
-        return this.exerciseEntries.remove(exerciseEntry);
+    public synchronized boolean removeExerciseEntry(ExerciseEntry exerciseEntry) {
+        this.dirty = true;
+        EntryList<ExerciseEntry> exerciseEntries = this.exerciseEntries;
+        this.exerciseEntries = exerciseEntries.minus(exerciseEntry);
+        return this.exerciseEntries != exerciseEntries;
     }
 
     /**
      * Returns all of the exercise entries associated with the entry.
      * @return All of the exercise entries associated with the entry.
      * Can return a list of 0 items if there are no exercise entries associated with the day.
+     * The list is read only and does not change, even if the entry does.
      */
     public Collection<ExerciseEntry> getAllExerciseEntries() {
         return this.exerciseEntries;
@@ -163,7 +183,7 @@ public class Entry implements ICSVable {
      */
     public double getCaloriesConsumed() {
         double calsConsumed = 0.0;
-        for (FoodEntry meal : foodEntries) {
+        for (FoodEntry meal : this.foodEntries) {
             calsConsumed += meal.getFood().getCalories() * meal.getServings();
         }
         return calsConsumed;
@@ -175,7 +195,7 @@ public class Entry implements ICSVable {
      */
     public double getProtienConsumed() {
         double proteinConsumed = 0.0;
-        for (FoodEntry meal : foodEntries) {
+        for (FoodEntry meal : this.foodEntries) {
             proteinConsumed += meal.getFood().getProtein() * meal.getServings();
         }
         return proteinConsumed;
@@ -187,7 +207,7 @@ public class Entry implements ICSVable {
      */
     public double getFatConsumed() {
         double fatConsumed = 0.0;
-        for (FoodEntry meal : foodEntries) {
+        for (FoodEntry meal : this.foodEntries) {
             fatConsumed += meal.getFood().getFat() * meal.getServings();
         }
         return fatConsumed;
@@ -199,25 +219,59 @@ public class Entry implements ICSVable {
      */
     public double getCarbsConsumed() {
         double carbsConsumed = 0.0;
-        for (FoodEntry meal : foodEntries) {
+        for (FoodEntry meal : this.foodEntries) {
             carbsConsumed += meal.getFood().getCarbs() * meal.getServings();
         }
         return carbsConsumed;
     }
 
+    /**
+     * Returns the calories burned through exercise on the day.
+     * Exercise calories are per hour for a 100lbs person, so they are scaled by the weight for the day
+     * and the duration in minutes. Returns 0 if no weight has been entered for the day.
+     * @return The calories burned on the day.
+     */
+    public double getCaloriesBurned() {
+        WeightEntry weightEntry = this.weightEntry;
+        if (weightEntry == null) {
+            return 0.0;
+        }
+        double caloriesBurned = 0.0;
+        for (ExerciseEntry exercise : this.exerciseEntries) {
+            caloriesBurned += exercise.getExercise().getCalories()
+                    * (weightEntry.getWeight() / 100)
+                    * (exercise.getDuration() / 60);
+        }
+        return caloriesBurned;
+    }
+
     /**
      * Returns All associated entries in this object as csv.
      * If an entry does not exist it will not be added.
      * @return All associated entries in this object as csv.
      */
     public String getCSV(){
+        return this.getCSV(null, null);
+    }
+
+    /**
+     * Returns All associated entries in this object as compact csv, where food and exercise rows refer to the food
+     * or exercise by a number instead of repeating its name. Food rows are marked "F" and exercise rows "E" so they
+     * cannot be mistaken for rows that hold a name.
+     * @param foodIds Gives the number of each food, or null to write names.
+     * @param exerciseIds Gives the number of each exercise, or null to write names.
+     * @return All associated entries in this object as csv.
+     */
+    public String getCSV(ToIntFunction<Food> foodIds, ToIntFunction<Exercise> exerciseIds){
         StringBuilder sb = new StringBuilder();
+        WeightEntry weightEntry = this.weightEntry;
+        CalorieEntry calorieEntry = this.calorieEntry;
 
         if (weightEntry != null) {
             sb.append(this.getDateAsCSV())
                     .append("w")
                     .append(",")
-                    .append(this.weightEntry.getWeight())
+                    .append(weightEntry.getWeight())
                     .append(System.lineSeparator());
         }
 
@@ -225,26 +279,38 @@ public class Entry implements ICSVable {
             sb.append(this.getDateAsCSV())
                     .append("c")
                     .append(",")
-                    .append(this.getCalorieEntry().getCalories())
+                    .append(calorieEntry.getCalories())
                     .append(System.lineSeparator());
         }
 
-        for (FoodEntry entry : foodEntries) {
-            sb.append(this.getDateAsCSV())
-                    .append("f")
-                    .append(",")
-                    .append(entry.getFood().getName())
-                    .append(",")
+        for (FoodEntry entry : this.foodEntries) {
+            sb.append(this.getDateAsCSV());
+            if (foodIds == null) {
+                sb.append("f")
+                        .append(",")
+                        .append(entry.getFood().getName());
+            } else {
+                sb.append("F")
+                        .append(",")
+                        .append(foodIds.applyAsInt(entry.getFood()));
+            }
+            sb.append(",")
                     .append(entry.getServings())
                     .append(System.lineSeparator());
         }
 
-        for (ExerciseEntry entry : exerciseEntries) {
-            sb.append(this.getDateAsCSV())
-                    .append("e")
-                    .append(",")
-                    .append(entry.getExercise().getName())
-                    .append(",")
+        for (ExerciseEntry entry : this.exerciseEntries) {
+            sb.append(this.getDateAsCSV());
+            if (exerciseIds == null) {
+                sb.append("e")
+                        .append(",")
+                        .append(entry.getExercise().getName());
+            } else {
+                sb.append("E")
+                        .append(",")
+                        .append(exerciseIds.applyAsInt(entry.getExercise()));
+            }
+            sb.append(",")
                     .append(entry.getDuration())
                     .append(System.lineSeparator());
         }
@@ -278,29 +344,50 @@ public class Entry implements ICSVable {
      * Sets the date of the entry.
      * @param date The date to associated with the entry.
      */
-    public void setDate(GregorianCalendar date) {
+    public synchronized void setDate(GregorianCalendar date) {
         if (date != null) {
             this.date = date;
+            this.dirty = true;
         }
     }
 
     /**
      * Sets the food entries.
-     * @param foodEntries A list of food entries that will be contained in the class.
+     * @param foodEntries A list of food entries that will be contained in the class. The list is copied, later
+     * changes to it do not change the entry.
      */
-    public void setFoodEntries(ArrayList<FoodEntry> foodEntries) {
+    public synchronized void setFoodEntries(ArrayList<FoodEntry> foodEntries) {
         if (foodEntries != null) {
-            this.foodEntries = foodEntries;
+            this.foodEntries = EntryList.of(foodEntries);
+            this.dirty = true;
         }
     }
 
     /**
      * Sets the exercise entries.
-     * @param exerciseEntries A list of exercise entries that will be contained in the class.
+     * @param exerciseEntries A list of exercise entries that will be contained in the class. The list is copied,
+     * later changes to it do not change the entry.
      */
-    public void setExerciseEntries(ArrayList<ExerciseEntry> exerciseEntries) {
+    public synchronized void setExerciseEntries(ArrayList<ExerciseEntry> exerciseEntries) {
         if (exerciseEntries != null) {
-            this.exerciseEntries = exerciseEntries;
+            this.exerciseEntries = EntryList.of(exerciseEntries);
+            this.dirty = true;
         }
     }
+
+    /**
+     * Returns if the entry has been changed through one of its mutators since it was last saved.
+     * New entries start out dirty.
+     * @return True if the entry has unsaved changes.
+     */
+    public boolean isDirty() {
+        return this.dirty;
+    }
+
+    /**
+     * Marks the entry as saved. Called by EntryHandler once the entry has been written.
+     */
+    public void markClean() {
+        this.dirty = false;
+    }
 }
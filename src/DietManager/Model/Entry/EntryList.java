@@ -0,0 +1,95 @@
+package DietManager.Model.Entry;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A read only list of the rows of a day, which Entry replaces instead of changing. Adding a row returns a new list
+ * that shares the array of the old one: the old list only ever reads the slots it had, so it stays the same, and
+ * adding stays cheap. Removing a row copies the array.
+ * Only the newest list of an entry may be added to, which Entry ensures by adding under its lock.
+ * @param <T> The type of the rows.
+ */
+final class EntryList<T> extends AbstractList<T> {
+
+    private static final EntryList<?> EMPTY = new EntryList<>(new Object[0], 0);
+
+    private final Object[] items;
+    private final int size;
+
+    /**
+     * Creates a list over the first items of an array.
+     * @param items The array.
+     * @param size The number of items in the list.
+     */
+    private EntryList(Object[] items, int size) {
+        this.items = items;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty list.
+     * @param <T> The type of the rows.
+     * @return The empty list.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> EntryList<T> empty() {
+        return (EntryList<T>) EMPTY;
+    }
+
+    /**
+     * Returns a list of the items of a collection.
+     * @param items The items, which are copied.
+     * @param <T> The type of the rows.
+     * @return The list.
+     */
+    static <T> EntryList<T> of(Collection<? extends T> items) {
+        Object[] array = items.toArray();
+        return new EntryList<>(array, array.length);
+    }
+
+    /**
+     * Returns this list with an item added at the end.
+     * @param item The item.
+     * @return The new list.
+     */
+    EntryList<T> plus(T item) {
+        Object[] items = this.items;
+        if (this.size == items.length) {
+            items = Arrays.copyOf(items, Math.max(4, this.size * 2));
+        }
+        items[this.size] = item;
+        return new EntryList<>(items, this.size + 1);
+    }
+
+    /**
+     * Returns this list without the first occurrence of an item.
+     * @param item The item.
+     * @return The new list, or this list if the item is not in it.
+     */
+    EntryList<T> minus(Object item) {
+        int index = this.indexOf(item);
+        if (index < 0) {
+            return this;
+        }
+        Object[] items = new Object[this.size - 1];
+        System.arraycopy(this.items, 0, items, 0, index);
+        System.arraycopy(this.items, index + 1, items, index, this.size - index - 1);
+        return new EntryList<>(items, items.length);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+        return (T) this.items[index];
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+}
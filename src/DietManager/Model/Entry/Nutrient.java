@@ -0,0 +1,34 @@
+package DietManager.Model.Entry;
+
+/**
+ * The daily totals that are tracked for each entry.
+ * Each value reads its total from an entry, which lets the model keep one indexed column per value.
+ */
+public enum Nutrient {
+
+    CALORIES,
+    FAT,
+    CARBS,
+    PROTEIN,
+    BURNED;     // Calories burned through exercise.
+
+    /**
+     * Returns the total of this value recorded in an entry.
+     * @param entry The entry to read.
+     * @return The total for the day.
+     */
+    public double of(Entry entry) {
+        switch (this) {
+            case CALORIES:
+                return entry.getCaloriesConsumed();
+            case FAT:
+                return entry.getFatConsumed();
+            case CARBS:
+                return entry.getCarbsConsumed();
+            case PROTEIN:
+                return entry.getProtienConsumed();
+            default:
+                return entry.getCaloriesBurned();
+        }
+    }
+}
@@ -3,25 +3,75 @@ package DietManager.Model;
 import DietManager.Model.Entry.*;
 import DietManager.Model.Exercise.Exercise;
 import DietManager.Model.Food.Food;
+import DietManager.Model.Food.Recipe;
+import DietManager.Model.Util.BackgroundSaver;
+import DietManager.Model.Util.BatchedObservable;
+import DietManager.Model.Util.BinarySnapshot;
+import DietManager.Model.Util.CSVTokenizer;
+import DietManager.Model.Util.DateKey;
 import DietManager.Model.Util.IOHandler;
+import DietManager.Model.Util.Journal;
+import DietManager.Model.Util.ModelLock;
+import DietManager.Model.Util.PrefixSumIndex;
+import DietManager.Model.Util.Resolution;
+import DietManager.Model.Util.SortedIntMap;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.InvalidParameterException;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * This class loads the contents of log.csv into a calorie entry, weight entry, and food entry into various data structures.
  * The models can be retrieved from the data structures by querying EntryHandler with their unique Date key.
+ * Internally every day is keyed by its epoch-day (see DateKey), calendars are only used at the edges of the class.
  */
-public class EntryHandler extends Observable {
+public class EntryHandler extends BatchedObservable<Integer, Entry> {
+
+    private static final Nutrient[] NUTRIENTS = Nutrient.values();
+    // The number of journal records after which the journal is folded back into the log file.
+    private static final int COMPACT_AFTER = 500;
+    // Tags the binary snapshot of the entry file.
+    private static final char SNAPSHOT_KIND = LogSnapshot.KIND;
+    // The smallest part of the log worth parsing on its own thread, in bytes.
+    private static final int MIN_RANGE = 256 * 1024;
 
     private File file;
+    private boolean journaling;
+    private Journal journal;
+    private BackgroundSaver saver;
+    private boolean snapshots;
+    // True to write food and exercise rows by number, see setCompactLog.
+    private boolean compactLog;
+    // The numbered names defined by the log that is being loaded.
+    private LogNames logNames;
+    // True while the binary snapshot next to the file matches it.
+    private volatile boolean snapshotCurrent;
+    // Bumped by every change, save compares it with the version that was last written to the file.
+    private long version;
+    private volatile long savedVersion;
+    // Set when a change could not be journaled, so the next save has to rewrite the whole file.
+    private boolean journalBehind;
     private IOHandler io;
     private EntryFactory factory;
     private FoodHandler foodHandler;
     private ExerciseHandler exerciseHandler;
-    private TreeMap<GregorianCalendar, Entry> entryStorage;
+    private SortedIntMap<Entry> entryStorage;
+    // Guards the storage and the indexes that go with it, see ModelLock.
+    private final ModelLock lock = new ModelLock(this);
+    // The snapshot that days with no stored Entry are decoded from, or null if everything was loaded up front.
+    private LogSnapshot snapshot;
+    // Per-day totals for every Nutrient, plus a final column that is 1 for each day that has an entry.
+    private PrefixSumIndex dailyTotals;
+    private double[] totalsRow;
 
     /**
      * Creates an EntryHandler which depends on an IOHandler, FoodHandler, and ExerciseHandler
@@ -31,105 +81,535 @@ public class EntryHandler extends Observable {
      */
     public EntryHandler(IOHandler io,FoodHandler foodHandler,ExerciseHandler exerciseHandler) {
         this.io = io;
-        this.factory = new EntryFactory();
         this.foodHandler = foodHandler;
         this.exerciseHandler = exerciseHandler;
-        this.entryStorage = new TreeMap<>();
+        this.entryStorage = new SortedIntMap<>();
+        this.logNames = new LogNames();
+        this.factory = new EntryFactory();
+        this.dailyTotals = new PrefixSumIndex(NUTRIENTS.length + 1);
+        this.totalsRow = new double[NUTRIENTS.length + 1];
+        // A logged recipe's nutrients change when one of its ingredients does, without the log changing.
+        foodHandler.setRecipeListener(this::recipesChanged);
+    }
+
+    /**
+     * Turns journaling on or off for the next load. While journaling, every change is appended to a journal
+     * next to the loaded log file instead of waiting for the whole log to be saved.
+     * @param journaling True to journal changes.
+     */
+    public void setJournaling(boolean journaling) {
+        this.journaling = journaling;
+    }
+
+    /**
+     * Turns binary snapshots on or off. While on, every save also writes a binary copy of the entry file, and
+     * loading reads that copy instead of the csv as long as the csv has not changed since.
+     * @param snapshots True to read and write binary snapshots.
+     */
+    public void setBinarySnapshots(boolean snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Turns the compact log format on or off for the next save. A compact log starts by numbering every food and
+     * exercise it uses, one "n" row each, and its food and exercise rows then give the number instead of repeating
+     * the name. Either format can always be loaded, and loading a compact log turns the compact format on.
+     * @param compactLog True to save the log in the compact format.
+     */
+    public void setCompactLog(boolean compactLog) {
+        this.compactLog = compactLog;
     }
 
     /**
      * Loads food Entry objects from a provided csv formatted file.
+     * If binary snapshots are on and the snapshot is up to date, it is read instead of the csv.
+     * If journaling is on, any changes journaled since the file was last saved are applied on top of it.
      * @param file The file that will be read and used to create our entry objects.
      * @throws InvalidParameterException This is thrown if the provided log file contains errors.
      * @throws IOException This is thrown if the provided file cannot be read from.
      */
     public void load(File file) throws InvalidParameterException, IOException {
+        this.load(file, null);
+    }
 
-        try {
-            ArrayList<String> rawEntries = this.io.readFromFile(file);
-            for (String rawEntry : rawEntries) {
-                try {
-                    Entry entry = this.factory.makeEntry(rawEntry);
-                    if (entry != null) {
-                        this.addIfNotPresent(entry);
-                    }
-                } catch (InvalidParameterException ipe) {
-                    throw ipe;
+    /**
+     * Loads food Entry objects from a provided csv formatted file, parsing large files on several threads.
+     * The file is split into byte ranges at line boundaries, each range is parsed into its own set of days, and the
+     * sets are merged in file order, so the result is the same as reading the file on one thread.
+     * The FoodHandler and ExerciseHandler must not change while the file is being parsed.
+     * Observers are notified once, after everything has been read.
+     * @param file The file that will be read and used to create our entry objects.
+     * @param pool The pool to parse on, or null to parse on the calling thread.
+     * @throws InvalidParameterException This is thrown if the provided log file contains errors.
+     * @throws IOException This is thrown if the provided file cannot be read from.
+     */
+    public void load(File file, ForkJoinPool pool) throws InvalidParameterException, IOException {
+        this.lock.write(() -> {
+            this.beginBatch();
+            this.trackAll();
+            try {
+                // Numbers defined by a compact log only apply to that log.
+                this.logNames = new LogNames();
+                this.factory = new EntryFactory();
+                // Rows are parsed as they are read so the raw file is never held in memory alongside the model.
+                LogSnapshot snapshot = this.snapshots
+                        ? LogSnapshot.map(file, this.foodHandler, this.exerciseHandler) : null;
+                boolean fromSnapshot = snapshot != null && this.loadSnapshot(snapshot);
+                if (!fromSnapshot && (pool == null || pool.getParallelism() < 2 || !this.parse(file, pool))) {
+                    this.io.readFromFile(file, rawEntry -> {
+                        Entry entry = this.factory.makeEntry(rawEntry);
+                        if (entry != null) {
+                            this.addIfNotPresent(entry);
+                        }
+                    });
                 }
+                if (file != null) {
+                    this.file = file;
+                }
+                if (!this.logNames.isEmpty()) {
+                    this.compactLog = true;
+                }
+                if (this.journaling) {
+                    // The journal is only assigned after replaying so that replayed records are not journaled again.
+                    Journal journal = Journal.forFile(file);
+                    journal.replay(this.io, this::replay);
+                    this.journal = journal;
+                    this.massNotify();
+                }
+                // Whatever was read is either in the file or in its journal already.
+                this.markEntriesClean();
+                this.savedVersion = this.version;
+                this.journalBehind = false;
+                this.snapshotCurrent = fromSnapshot;
+            } catch (IOException ioe) {
+                throw ioe;
+            } finally {
+                this.endBatch();
             }
-            if (file != null) {
-                this.file = file;
-            }
-        } catch (IOException ioe) {
-            throw ioe;
-        }
 
+            return null;
+        });
     }
 
     /**
      * Saves entry objects to a specified file.
+     * Saving to the file the entries were loaded from is the same as save(), any other file is always written.
      * @param file The file that the food items will be written to.
      * @throws IOException Thrown in the instance that the file provided cannot be written to.
      */
     public void save(File file) throws IOException {
+        this.lock.write(() -> {
+            if (file.equals(this.file)) {
+                this.save();
+                return null;
+            }
+
+            try {
+                this.awaitBackgroundSave();
+                this.journalDirtyEntries();
+                this.io.writeLinesToFile(this.getLines(),file);
+                this.writeSnapshot(file, this.encodeSnapshot());
+            } catch (IOException ioe) {
+                throw ioe;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Saves entry objects to the file they were loaded from.
+     * Nothing is written if nothing changed since the last save. While journaling, the changed days are already in
+     * the journal, so the file is only rewritten once the journal has grown large enough to be worth folding back in.
+     * @throws IOException Thrown in the instance that the file provided cannot be written to.
+     */
+    public void save() throws IOException {
+        this.lock.write(() -> {
+            if (this.file == null) {
+               return null;
+            }
+
+            try {
+                this.awaitBackgroundSave();
+                this.journalDirtyEntries();
+                if (!this.isDirty()) {
+                    if (this.snapshots && !this.snapshotCurrent && (this.journal == null || this.journal.size() == 0)) {
+                        // Nothing changed, but the file has no snapshot yet.
+                        this.writeSnapshot(this.file, this.encodeSnapshot());
+                    }
+                    return null;
+                }
+                if (this.journal != null && !this.journalBehind && this.journal.size() < COMPACT_AFTER) {
+                    this.savedVersion = this.version;
+                    return null;
+                }
+
+                long version = this.version;
+                this.markEntriesClean();
+                this.io.writeLinesToFile(this.getLines(),this.file);
+                this.writeSnapshot(this.file, this.encodeSnapshot());
+                if (this.journal != null) {
+                    this.journal.truncate();
+                }
+                this.savedVersion = version;
+                this.journalBehind = false;
+            } catch (IOException ioe) {
+                throw ioe;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Returns if there are changes that have not been saved to the file the entries were loaded from.
+     * Changes that are only in the journal count as unsaved until the next save.
+     * @return True if save would have anything to do.
+     */
+    public boolean isDirty() {
+        return this.lock.read(() -> {
+            if (this.version != this.savedVersion || this.snapshot != null && this.snapshot.hasChanged()) {
+                return true;
+            }
+            for (int i = 0; i < this.entryStorage.size(); i++) {
+                Entry entry = this.entryStorage.storedAt(i);
+                if (entry != null && entry.isDirty()) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Returns if the file has been set.
+     * @return True if the file has been set.
+     */
+    public boolean hasFile(){
+        return this.lock.peek(() -> this.file != null);
+    }
+
+    /**
+     * Sets the saver used by saveInBackground. Without one, saveInBackground saves on the calling thread.
+     * @param saver The saver that writes snapshots of the entry file.
+     */
+    public void setSaver(BackgroundSaver saver) {
+        this.saver = saver;
+    }
+
+    /**
+     * Saves entry objects to the file they were loaded from without waiting for the file to be written.
+     * A snapshot is taken on the calling thread and written by the saver, so the model can keep changing meanwhile.
+     * @throws IOException Thrown if the journal cannot be rotated, or if there is no saver and the file cannot be
+     * written to.
+     */
+    public void saveInBackground() throws IOException {
+        this.lock.write(() -> {
+            if (this.saver == null) {
+                this.save();
+                return null;
+            }
+            if (this.file == null) {
+                return null;
+            }
+            this.journalDirtyEntries();
+            if (!this.isDirty() && (this.journal == null || this.journal.size() == 0)) {
+                return null;
+            }
+            long version = this.version;
+            this.markEntriesClean();
+            Collection<String> lines = this.getLines();
+            byte[] snapshot = this.encodeSnapshot();
+            File file = this.file;
+            Journal journal = this.journal;
+            // Records made after the snapshot go to a fresh journal, the rotated ones are dropped once it is written.
+            int generation = journal != null ? journal.rotate() : 0;
+            this.saver.save(file, lines, () -> {
+                this.writeSnapshot(file, snapshot);
+                if (journal != null) {
+                    journal.commit(generation);
+                }
+                this.savedVersion = version;
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Writes the binary snapshot of a csv file that has just been written.
+     * A snapshot that cannot be written is removed, so the next load reads the csv.
+     * @param file The csv file that was written.
+     * @param snapshot The encoded snapshot body, or null if there is none.
+     */
+    private void writeSnapshot(File file, byte[] snapshot) {
         try {
-            file.delete();
-            this.io.writeToFile(getAllCSVable(),file);
+            if (snapshot != null) {
+                BinarySnapshot.write(this.io, file, SNAPSHOT_KIND, snapshot);
+                if (file.equals(this.file)) {
+                    this.snapshotCurrent = true;
+                }
+                return;
+            }
         } catch (IOException ioe) {
-            throw ioe;
+            // Fall through and drop the stale snapshot.
+        }
+        BinarySnapshot.discard(file);
+        if (file.equals(this.file)) {
+            this.snapshotCurrent = false;
         }
     }
 
     /**
-     * Saves entry objects to a specified file.
-     * @throws IOException Thrown in the instance that the file provided cannot be written to.
+     * Encodes every entry into a binary snapshot body, see LogSnapshot.
+     * @return The encoded body, or null if snapshots are off.
      */
-    public void save() throws IOException {
-        if (this.file == null) {
-           return;
+    private byte[] encodeSnapshot() {
+        if (!this.snapshots) {
+            return null;
+        }
+        try {
+            return LogSnapshot.encode(this.entryStorage);
+        } catch (IOException | RuntimeException e) {
+            return null;
         }
+    }
 
+    /**
+     * Loads entries from a mapped binary snapshot.
+     * If the totals stored in the snapshot are still current, only its index is read: every day is added to the
+     * model with no value, and its Entry is decoded from the snapshot whenever it is read. Otherwise every day is
+     * decoded up front so that its totals are worked out from the foods as they are now.
+     * @param snapshot The mapped snapshot.
+     * @return True if the snapshot was loaded, false if it was damaged and the csv should be read instead.
+     */
+    private boolean loadSnapshot(LogSnapshot snapshot) {
+        if (snapshot.hasCurrentTotals() && this.entryStorage.isEmpty()) {
+            for (int i = 0; i < snapshot.size(); i++) {
+                int day = snapshot.dayAt(i);
+                for (Nutrient nutrient : NUTRIENTS) {
+                    this.totalsRow[nutrient.ordinal()] = snapshot.totalAt(i, nutrient);
+                }
+                this.totalsRow[NUTRIENTS.length] = 1;
+                this.entryStorage.put(day, null);
+                this.dailyTotals.set(day, this.totalsRow);
+            }
+            this.entryStorage.setLoader(snapshot::get);
+            this.snapshot = snapshot;
+            this.massNotify();
+            return true;
+        }
+
+        ArrayList<Entry> entries = new ArrayList<>();
         try {
-            this.file.delete();
-            this.io.writeToFile(getAllCSVable(),this.file);
-        } catch (IOException ioe) {
-            throw ioe;
+            for (int i = 0; i < snapshot.size(); i++) {
+                Entry entry = snapshot.materialize(i);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+        } catch (InvalidParameterException ipe) {
+            return false;
+        }
+        for (Entry entry : entries) {
+            this.addIfNotPresent(entry);
         }
+        return true;
     }
 
     /**
-     * Returns if the file has been set.
-     * @return True if the file has been set.
+     * Finds the entries that were changed through their own setters instead of through this class, for example an
+     * Entry returned by get that had a food added to it. Their days are reindexed and journaled like any other change.
+     * Changes made to a FoodEntry or ExerciseEntry inside an Entry cannot be seen.
      */
-    public boolean hasFile(){
-        return this.file == null;
+    private void journalDirtyEntries() {
+        if (this.snapshot != null) {
+            for (Map.Entry<Integer, Entry> changed : this.snapshot.takeChanged().entrySet()) {
+                int day = changed.getKey();
+                // Only keep it if the day has not been replaced since the entry was decoded.
+                int index = this.entryStorage.indexOf(day);
+                if (index >= 0 && this.entryStorage.storedAt(index) == null) {
+                    this.entryStorage.put(day, changed.getValue());
+                }
+            }
+        }
+        for (int i = 0; i < this.entryStorage.size(); i++) {
+            Entry entry = this.entryStorage.storedAt(i);
+            if (entry != null && entry.isDirty()) {
+                int day = this.entryStorage.keyAt(i);
+                this.reindex(day);
+                this.appendDay(day);
+                this.version++;
+            }
+        }
+    }
+
+    /**
+     * Marks every entry that has been loaded as saved, called just before all of them are written out.
+     */
+    private void markEntriesClean() {
+        for (int i = 0; i < this.entryStorage.size(); i++) {
+            Entry entry = this.entryStorage.storedAt(i);
+            if (entry != null) {
+                entry.markClean();
+            }
+        }
+    }
+
+    /**
+     * Parses a log file on a pool, see load.
+     * @param file The log file.
+     * @param pool The pool to parse on.
+     * @return True if the file was parsed, false if it is too small to be worth splitting.
+     * @throws InvalidParameterException Thrown if the file contains errors.
+     * @throws IOException Thrown if the file cannot be read from.
+     */
+    private boolean parse(File file, ForkJoinPool pool) throws InvalidParameterException, IOException {
+        List<ByteBuffer> ranges = this.io.split(file, pool.getParallelism() * 4, MIN_RANGE);
+        if (ranges.size() < 2) {
+            return false;
+        }
+
+        ArrayList<Future<SortedIntMap<Entry>>> parts = new ArrayList<>(ranges.size());
+        for (ByteBuffer range : ranges) {
+            if (range.get(0) == 'n') {
+                // The numbered names of a compact log are at its top and every range needs them, so the ranges that
+                // define them are read first, in order, on this thread.
+                parts.add(CompletableFuture.completedFuture(this.parseRange(range)));
+            } else {
+                parts.add(pool.submit(() -> this.parseRange(range)));
+            }
+        }
+
+        try {
+            for (Future<SortedIntMap<Entry>> part : parts) {
+                this.merge(part.get());
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Could not read required file.");
+        } catch (ExecutionException ee) {
+            for (Future<SortedIntMap<Entry>> part : parts) {
+                part.cancel(true);
+            }
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            if (ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ee.getCause();
+            }
+            throw new IOException("Could not read required file.");
+        }
+        this.massNotify();
+        return true;
+    }
+
+    /**
+     * Parses one range of a log file, see parse.
+     * @param range The range.
+     * @return The days in the range.
+     * @throws IOException Thrown if the range cannot be read.
+     */
+    private SortedIntMap<Entry> parseRange(ByteBuffer range) throws IOException {
+        // Each range gets its own days and factory, the only shared state is read-only once the names are read.
+        SortedIntMap<Entry> days = new SortedIntMap<>();
+        EntryFactory factory = new EntryFactory(days);
+        this.io.readFromRange(range, rawEntry -> {
+            Entry entry = factory.makeEntry(rawEntry);
+            if (entry != null && !days.containsKey(DateKey.of(entry.getDate()))) {
+                days.put(DateKey.of(entry.getDate()), entry);
+            }
+        });
+        return days;
+    }
+
+    /**
+     * Merges days parsed from part of the log into the model. A day that is already in the model, because it was
+     * started in an earlier part of the file, has the rows of the later part added to it in order, the same way the
+     * factory adds rows to it when the file is read on one thread.
+     * @param days The parsed days.
+     */
+    private void merge(SortedIntMap<Entry> days) {
+        for (int i = 0; i < days.size(); i++) {
+            int day = days.keyAt(i);
+            Entry parsed = days.valueAt(i);
+            Entry entry = this.entryStorage.get(day);
+            if (entry == null) {
+                this.entryStorage.put(day, parsed);
+            } else {
+                if (parsed.getWeightEntry() != null) {
+                    entry.setWeightEntry(parsed.getWeightEntry());
+                }
+                if (parsed.getCalorieEntry() != null) {
+                    entry.setCalorieEntry(parsed.getCalorieEntry());
+                }
+                for (FoodEntry foodEntry : parsed.getAllFoodEntries()) {
+                    entry.addFoodEntry(foodEntry);
+                }
+                for (ExerciseEntry exerciseEntry : parsed.getAllExerciseEntries()) {
+                    entry.addExerciseEntry(exerciseEntry);
+                }
+                // Keep the changed entry, the stored day may only have been loaded from a snapshot.
+                this.entryStorage.put(day, entry);
+            }
+            this.reindex(day);
+        }
+    }
+
+    /**
+     * Waits for any background save to finish so that it cannot overwrite a newer synchronous save.
+     */
+    private void awaitBackgroundSave() {
+        if (this.saver != null) {
+            this.saver.flush();
+        }
     }
 
     /**
      * Adds the entry even if there is one present. This can cause data lose. This can be unsafe.
      * @param entry The entry to be added.
-     * @return True if the operation was successful.
+     * @return True if the operation was successful. Returns false if the entry's date is outside of the years that can
+     * be logged, see DateKey.isLoggable.
      */
     public boolean addOverwrite(Entry entry) {
-        this.entryStorage.put(entry.getDate(),entry);
-        this.massNotify();
-        return this.hasEntry(entry);
+        return this.lock.write(() -> {
+            int day = DateKey.of(entry.getDate());
+            if (!DateKey.isLoggable(day)) {
+                return false;
+            }
+            Entry before = this.entryStorage.get(day);
+            this.entryStorage.put(day,entry);
+            this.reindex(day);
+            this.trackDay(day, before);
+            this.journalDay(day);
+            this.massNotify();
+            return this.hasEntry(entry);
+        });
     }
 
     /**
      * Adds the entry provided only if it would not overwrite an existing entry. This is considered safe.
      * @param entry The entry to add.
      * @return Returns true if the operation was successful. Returns false if the operation
-     * was not successful, or if the entry provided would have overwritten an existing entry.
+     * was not successful, if the entry provided would have overwritten an existing entry, or if its date is outside
+     * of the years that can be logged.
      */
     public boolean addIfNotPresent(Entry entry) {
-        boolean retVal = false;
-        if (!this.entryStorage.containsKey(entry.getDate())) {
-            this.entryStorage.put(entry.getDate(),entry);
-            retVal = true;
-        }
-        this.massNotify();
-        return retVal;
+        return this.lock.write(() -> {
+            boolean retVal = false;
+            int day = DateKey.of(entry.getDate());
+            if (!DateKey.isLoggable(day)) {
+                return false;
+            }
+            Entry before = this.entryStorage.get(day);
+            if (!this.entryStorage.containsKey(day)) {
+                this.entryStorage.put(day,entry);
+                retVal = true;
+            }
+            // The factory adds rows to the day's existing entry, so it may have changed even if nothing was added.
+            this.reindex(day);
+            this.trackDay(day, before);
+            this.journalDay(day);
+            this.massNotify();
+            return retVal;
+        });
     }
 
     /**
@@ -138,10 +618,17 @@ public class EntryHandler extends Observable {
      * @return True if operation was successful
      */
     public boolean addOverwrite(String rawCSV){
-        Entry entry = this.factory.makeEntry(rawCSV);
-        this.entryStorage.put(entry.getDate(),entry);
-        this.massNotify();
-        return this.hasEntry(entry);
+        return this.lock.write(() -> {
+            Entry entry = this.factory.makeEntry(rawCSV);
+            int day = DateKey.of(entry.getDate());
+            Entry before = this.entryStorage.get(day);
+            this.entryStorage.put(day,entry);
+            this.reindex(day);
+            this.trackDay(day, before);
+            this.journalDay(day);
+            this.massNotify();
+            return this.hasEntry(entry);
+        });
     }
 
     /**
@@ -151,16 +638,23 @@ public class EntryHandler extends Observable {
      * was not successful, or if the entry provided would have overwritten an existing entry.
      */
     public boolean addIfNotPresent(String rawCSV) {
-        boolean retVal = false;
+        return this.lock.write(() -> {
+            boolean retVal = false;
 
-        Entry entry = this.factory.makeEntry(rawCSV);
+            Entry entry = this.factory.makeEntry(rawCSV);
+            int day = DateKey.of(entry.getDate());
+            Entry before = this.entryStorage.get(day);
 
-        if (!this.entryStorage.containsKey(entry.getDate())) {
-            this.entryStorage.put(entry.getDate(),entry);
-            retVal = true;
-        }
-        this.massNotify();
-        return retVal;
+            if (!this.entryStorage.containsKey(day)) {
+                this.entryStorage.put(day,entry);
+                retVal = true;
+            }
+            this.reindex(day);
+            this.trackDay(day, before);
+            this.journalDay(day);
+            this.massNotify();
+            return retVal;
+        });
     }
 
     /**
@@ -169,7 +663,82 @@ public class EntryHandler extends Observable {
      * @return All of the entry objects that are in the entry storage.
      */
     public Collection<Entry> getAll() {
-        return new ArrayList<>(this.entryStorage.values());
+        return this.lock.read(() -> new ArrayList<>(this.entryStorage.values()));
+    }
+
+    /**
+     * Returns the entries between two dates, oldest first.
+     * This is a copy, so it can be read while the model changes, but only the entries inside the range are visited.
+     * @param from The first date of the range, inclusive.
+     * @param to The last date of the range, inclusive.
+     * @return The entries in the range.
+     */
+    public Collection<Entry> between(GregorianCalendar from, GregorianCalendar to) {
+        return this.copy(DateKey.of(from), DateKey.of(to));
+    }
+
+    /**
+     * Returns the entries between two dates, oldest first.
+     * This is a copy, so it can be read while the model changes, but only the entries inside the range are visited.
+     * @param from The first date of the range, inclusive.
+     * @param to The last date of the range, inclusive.
+     * @return The entries in the range.
+     */
+    public Collection<Entry> between(LocalDate from, LocalDate to) {
+        return this.copy(DateKey.of(from), DateKey.of(to));
+    }
+
+    /**
+     * Returns the entries for the last few days up to and including today, oldest first.
+     * This is a copy, see between.
+     * @param days The number of days to include.
+     * @return The entries in the range.
+     */
+    public Collection<Entry> lastNDays(int days) {
+        int today = DateKey.of(LocalDate.now());
+        return this.copy(today - days + 1, today);
+    }
+
+    /**
+     * Returns the entries in a month, oldest first.
+     * This is a copy, see between.
+     * @param year The year of the month.
+     * @param month The month, in the same form as getCal.
+     * @return The entries in the month.
+     */
+    public Collection<Entry> month(int year, int month) {
+        return this.copy(DateKey.of(year, month, 1), DateKey.of(year, month + 1, 1) - 1);
+    }
+
+    /**
+     * Returns a stream over all of the entries, oldest first.
+     * The stream is over the days logged when it is created, so it can be read while the model changes. Only the
+     * arrays of the store are copied: a day still held by the log snapshot is decoded under the read lock when the
+     * stream reaches it, from the entry logged for it at that time, and skipped if it has been removed since.
+     * @return A stream of every entry in the model.
+     */
+    public Stream<Entry> stream() {
+        SortedIntMap<Entry> days = this.lock.read(this.entryStorage::copy);
+        return IntStream.range(0, days.size())
+                .mapToObj(index -> {
+                    Entry entry = days.storedAt(index);
+                    if (entry != null) {
+                        return entry;
+                    }
+                    int day = days.keyAt(index);
+                    return this.lock.read(() -> this.entryStorage.get(day));
+                })
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Copies the entries between two epoch-days under the read lock.
+     * @param from The first epoch-day, inclusive.
+     * @param to The last epoch-day, inclusive.
+     * @return The entries in the range, oldest first.
+     */
+    private Collection<Entry> copy(int from, int to) {
+        return this.lock.read(() -> new ArrayList<>(this.entryStorage.values(from, to)));
     }
 
     /**
@@ -177,7 +746,44 @@ public class EntryHandler extends Observable {
      * @return an unordered list of all of the entries.
      */
     Collection<ICSVable> getAllCSVable() {
-        return new ArrayList<>(this.entryStorage.values());
+        return this.lock.read(() -> new ArrayList<>(this.entryStorage.values()));
+    }
+
+    /**
+     * Returns the lines of the log file, in the compact format if it is on.
+     * @return The lines to write.
+     */
+    private Collection<String> getLines() {
+        if (!this.compactLog) {
+            return this.io.toLines(getAllCSVable());
+        }
+
+        // Foods and exercises are numbered in the order they are first used.
+        IdentityHashMap<Food, Integer> foods = new IdentityHashMap<>();
+        IdentityHashMap<Exercise, Integer> exercises = new IdentityHashMap<>();
+        ArrayList<String> lines = new ArrayList<>();
+        ArrayList<String> rows = new ArrayList<>(this.entryStorage.size());
+        for (Entry entry : this.entryStorage.values()) {
+            rows.add(entry.getCSV(food -> {
+                Integer id = foods.get(food);
+                if (id == null) {
+                    id = foods.size();
+                    foods.put(food, id);
+                    lines.add("n,f," + id + "," + food.getName());
+                }
+                return id;
+            }, exercise -> {
+                Integer id = exercises.get(exercise);
+                if (id == null) {
+                    id = exercises.size();
+                    exercises.put(exercise, id);
+                    lines.add("n,e," + id + "," + exercise.getName());
+                }
+                return id;
+            }));
+        }
+        lines.addAll(rows);
+        return lines;
     }
 
     /**
@@ -186,7 +792,7 @@ public class EntryHandler extends Observable {
      * @return The entry provided.
      */
     public Entry get(Entry entry) {
-        return this.entryStorage.get(entry.getDate());
+        return this.entryOn(DateKey.of(entry.getDate()));
     }
 
     /**
@@ -195,9 +801,23 @@ public class EntryHandler extends Observable {
      * @return The entry provided.
      */
     public Entry get(GregorianCalendar date) {
-        return this.entryStorage.get(date);
+        return this.entryOn(DateKey.of(date));
+    }
+
+    /**
+     * Returns the entry from the model.
+     * @param date The date of the entry to be returned.
+     * @return The entry on the date, or null if there is none.
+     */
+    public Entry get(LocalDate date) {
+        return this.entryOn(DateKey.of(date));
     }
 
+    /**
+     * Returns the entry from the model.
+     * @param date The date of the entry formatted as day-month-year.
+     * @return The entry on the date, or null if there is none.
+     */
     public Entry get(String date) {
 
         String[] splitDate = date.split("-");
@@ -206,17 +826,31 @@ public class EntryHandler extends Observable {
         int month = Integer.parseInt(splitDate[1]);
         int year = Integer.parseInt(splitDate[2]);
 
-        return entryStorage.get(getCal(year,month,day));
+        return this.entryOn(DateKey.of(year,month,day));
 
     }
 
+    /**
+     * Returns the entry logged on a day. An entry that is stored is read without the lock; a day that is still held by
+     * the log snapshot is decoded under the read lock, since decoding it goes through the snapshot's cache.
+     * @param day The epoch-day.
+     * @return The entry on the day, or null if there is none.
+     */
+    private Entry entryOn(int day) {
+        Entry entry = this.lock.peek(() -> this.entryStorage.getStored(day));
+        if (entry != null || !this.lock.peek(() -> this.entryStorage.containsKey(day))) {
+            return entry;
+        }
+        return this.lock.read(() -> this.entryStorage.get(day));
+    }
+
     /**
      * Test if an entry is contained in the model.
      * @param entry The entry to test for existence.
      * @return True if the entry exists.
      */
     public boolean hasEntry(Entry entry) {
-        return this.entryStorage.containsKey(entry.getDate());
+        return this.lock.peek(() -> this.entryStorage.containsKey(DateKey.of(entry.getDate())));
     }
 
     /**
@@ -225,7 +859,16 @@ public class EntryHandler extends Observable {
      * @return True if the entry exists.
      */
     public boolean hasEntry(GregorianCalendar date) {
-        return this.entryStorage.containsKey(date);
+        return this.lock.peek(() -> this.entryStorage.containsKey(DateKey.of(date)));
+    }
+
+    /**
+     * Test if an entry is contained in the model.
+     * @param date The date to test for entry existence.
+     * @return True if the entry exists.
+     */
+    public boolean hasEntry(LocalDate date) {
+        return this.lock.peek(() -> this.entryStorage.containsKey(DateKey.of(date)));
     }
 
     /**
@@ -234,21 +877,39 @@ public class EntryHandler extends Observable {
      * @return True if the operation was successful.
      */
     public boolean delete(GregorianCalendar date) {
-        this.entryStorage.remove(date);
-        this.massNotify();
-        return !this.hasEntry(date);
+        return this.lock.write(() -> {
+            int day = DateKey.of(date);
+            Entry before = this.entryStorage.get(day);
+            this.entryStorage.remove(day);
+            this.reindex(day);
+            this.trackDay(day, before);
+            this.journalDay(day);
+            this.massNotify();
+            return !this.hasEntry(date);
+        });
     }
 
     /**
      * Updates an entire entry
      * @param date the entry date to remove.
      * @param newEntry the updated entry
+     * @return True if the operation was successful. Returns false if either date is outside of the years that can be
+     * logged, see DateKey.isLoggable.
      */
     public boolean update(GregorianCalendar date,Entry newEntry){
-        this.entryStorage.remove(date);
-        this.entryStorage.put(date,newEntry);
-        this.massNotify();
-        return this.hasEntry(newEntry);
+        return this.lock.write(() -> {
+            int day = DateKey.of(date);
+            if (!DateKey.isLoggable(day) || !DateKey.isLoggable(DateKey.of(newEntry.getDate()))) {
+                return false;
+            }
+            Entry before = this.entryStorage.get(day);
+            this.entryStorage.put(day,newEntry);
+            this.reindex(day);
+            this.trackDay(day, before);
+            this.journalDay(day);
+            this.massNotify();
+            return this.hasEntry(newEntry);
+        });
     }
 
     /**
@@ -256,9 +917,16 @@ public class EntryHandler extends Observable {
      * @param date The date on which all entries will be removed.
      */
     public boolean deleteAllEntriesOnDay(GregorianCalendar date) {
-        this.entryStorage.remove(date);
-        this.massNotify();
-        return hasEntry(date);
+        return this.lock.write(() -> {
+            int day = DateKey.of(date);
+            Entry before = this.entryStorage.get(day);
+            this.entryStorage.remove(day);
+            this.reindex(day);
+            this.trackDay(day, before);
+            this.journalDay(day);
+            this.massNotify();
+            return hasEntry(date);
+        });
     }
 
     /**
@@ -269,7 +937,7 @@ public class EntryHandler extends Observable {
      * @return The calories consume on a specific day. Will return 0 if no calories were consumed.
      */
     public double caloriesConsumedOnDay(int year, int month, int day_of_month) {
-        return this.caloriesConsumedOnDay(getCal(year,month,day_of_month));
+        return this.dayTotal(Nutrient.CALORIES, DateKey.of(year,month,day_of_month));
     }
 
     /**
@@ -278,12 +946,7 @@ public class EntryHandler extends Observable {
      * @return The calories consume on a specific day. Will return 0 if no calories were consumed.
      */
     public double caloriesConsumedOnDay(GregorianCalendar date) {
-        Collection<FoodEntry> foodEntries = entryStorage.get(date).getAllFoodEntries();
-        double calories = 0.0;
-        for (FoodEntry entry : foodEntries) {
-            calories += entry.getTotalCalories();
-        }
-        return calories;
+        return this.dayTotal(Nutrient.CALORIES, DateKey.of(date));
     }
 
     /**
@@ -294,7 +957,7 @@ public class EntryHandler extends Observable {
      * @return The protein consume on a specific day. Will return 0 if no calories were consumed.
      */
     public double proteinConsumedOnDay(int year, int month, int day_of_month) {
-        return this.proteinConsumedOnDay(getCal(year,month,day_of_month));
+        return this.dayTotal(Nutrient.PROTEIN, DateKey.of(year,month,day_of_month));
     }
 
     /**
@@ -303,12 +966,7 @@ public class EntryHandler extends Observable {
      * @return The protein consume on a specific day. Will return 0 if no calories were consumed.
      */
     public double proteinConsumedOnDay(GregorianCalendar date) {
-        Collection<FoodEntry> foodEntries = entryStorage.get(date).getAllFoodEntries();
-        double protein = 0.0;
-        for (FoodEntry entry : foodEntries) {
-            protein += entry.getTotalProtein();
-        }
-        return protein;
+        return this.dayTotal(Nutrient.PROTEIN, DateKey.of(date));
     }
 
     /**
@@ -319,7 +977,7 @@ public class EntryHandler extends Observable {
      * @return The carbs consumed on a specific day. Will return 0 if no calories were consumed.
      */
     public double carbsConsumedOnDay(int year, int month, int day_of_month) {
-        return this.carbsConsumedOnDay(getCal(year,month,day_of_month));
+        return this.dayTotal(Nutrient.CARBS, DateKey.of(year,month,day_of_month));
     }
 
     /**
@@ -328,12 +986,7 @@ public class EntryHandler extends Observable {
      * @return The carbs consumed on a specific day. Will return 0 if no calories were consumed.
      */
     public double carbsConsumedOnDay(GregorianCalendar date) {
-        Collection<FoodEntry> foodEntries = entryStorage.get(date).getAllFoodEntries();
-        double protein = 0.0;
-        for (FoodEntry entry : foodEntries) {
-            protein += entry.getTotalCarbs();
-        }
-        return protein;
+        return this.dayTotal(Nutrient.CARBS, DateKey.of(date));
     }
 
     /**
@@ -344,7 +997,7 @@ public class EntryHandler extends Observable {
      * @return How much fat was consume on a specific day. Will return 0 if no calories were consumed.
      */
     public double fatConsumedOnDay(int year, int month, int day_of_month) {
-        return this.fatConsumedOnDay(getCal(year,month,day_of_month));
+        return this.dayTotal(Nutrient.FAT, DateKey.of(year,month,day_of_month));
     }
 
     /**
@@ -353,12 +1006,320 @@ public class EntryHandler extends Observable {
      * @return How much fat was consumed on a specific day. Will return 0 if no calories were consumed.
      */
     public double fatConsumedOnDay(GregorianCalendar date) {
-        Collection<FoodEntry> foodEntries = entryStorage.get(date).getAllFoodEntries();
-        double protein = 0.0;
-        for (FoodEntry entry : foodEntries) {
-            protein += entry.getTotalCarbs();
+        return this.dayTotal(Nutrient.FAT, DateKey.of(date));
+    }
+
+    /**
+     * Computes the total of a nutrient over a range of days using the daily totals index.
+     * @param nutrient The nutrient to total.
+     * @param from The first date of the range, inclusive.
+     * @param to The last date of the range, inclusive.
+     * @return The total over the range. Days without an entry count as 0.
+     */
+    public double total(Nutrient nutrient, GregorianCalendar from, GregorianCalendar to) {
+        return this.lock.peek(() -> this.dailyTotals.sum(nutrient.ordinal(), DateKey.of(from), DateKey.of(to)));
+    }
+
+    /**
+     * Computes the total of a nutrient over a range of days using the daily totals index.
+     * @param nutrient The nutrient to total.
+     * @param from The first date of the range, inclusive.
+     * @param to The last date of the range, inclusive.
+     * @return The total over the range. Days without an entry count as 0.
+     */
+    public double total(Nutrient nutrient, LocalDate from, LocalDate to) {
+        return this.lock.peek(() -> this.dailyTotals.sum(nutrient.ordinal(), DateKey.of(from), DateKey.of(to)));
+    }
+
+    /**
+     * Computes the average daily amount of a nutrient over a range of days.
+     * Only days that have an entry are counted, so a week with three logged days is averaged over three days.
+     * @param nutrient The nutrient to average.
+     * @param from The first date of the range, inclusive.
+     * @param to The last date of the range, inclusive.
+     * @return The average per logged day, or 0 if no days in the range have an entry.
+     */
+    public double average(Nutrient nutrient, GregorianCalendar from, GregorianCalendar to) {
+        return this.average(nutrient, DateKey.of(from), DateKey.of(to));
+    }
+
+    /**
+     * Computes the average daily amount of a nutrient over a range of days.
+     * Only days that have an entry are counted, so a week with three logged days is averaged over three days.
+     * @param nutrient The nutrient to average.
+     * @param from The first date of the range, inclusive.
+     * @param to The last date of the range, inclusive.
+     * @return The average per logged day, or 0 if no days in the range have an entry.
+     */
+    public double average(Nutrient nutrient, LocalDate from, LocalDate to) {
+        return this.average(nutrient, DateKey.of(from), DateKey.of(to));
+    }
+
+    /**
+     * Computes the average daily amount of a nutrient over a month.
+     * @param nutrient The nutrient to average.
+     * @param year The year of the month.
+     * @param month The month, in the same form as getCal.
+     * @return The average per logged day, or 0 if no days in the month have an entry.
+     */
+    public double monthlyAverage(Nutrient nutrient, int year, int month) {
+        return this.average(nutrient, DateKey.of(year, month, 1), DateKey.of(year, month + 1, 1) - 1);
+    }
+
+    /**
+     * Counts the days in a range that have an entry.
+     * @param from The first date of the range, inclusive.
+     * @param to The last date of the range, inclusive.
+     * @return The number of logged days in the range.
+     */
+    public int daysLogged(GregorianCalendar from, GregorianCalendar to) {
+        return this.lock.peek(() ->
+                (int) Math.round(this.dailyTotals.sum(NUTRIENTS.length, DateKey.of(from), DateKey.of(to))));
+    }
+
+    /**
+     * Returns the earliest day that has an entry.
+     * @return The first logged day, or null if there are no entries.
+     */
+    public LocalDate firstDay() {
+        return this.lock.peek(() -> this.entryStorage.isEmpty() ? null
+                : DateKey.toLocalDate(this.entryStorage.keyAt(0)));
+    }
+
+    /**
+     * Returns the latest day that has an entry.
+     * @return The last logged day, or null if there are no entries.
+     */
+    public LocalDate lastDay() {
+        return this.lock.peek(() -> this.entryStorage.isEmpty() ? null
+                : DateKey.toLocalDate(this.entryStorage.keyAt(this.entryStorage.size() - 1)));
+    }
+
+    /**
+     * Summarises the bucket of time a day falls in, using the daily totals index.
+     * This takes O(log n) however many days the bucket or the log cover.
+     * @param resolution The span of the bucket.
+     * @param day Any day in the bucket.
+     * @return The bucket, with no logged days if none of its days have an entry.
+     */
+    public NutritionBucket bucket(Resolution resolution, LocalDate day) {
+        return this.lock.peek(() -> this.summarise(resolution, day));
+    }
+
+    /**
+     * Summarises a range of days in no more than a number of buckets, for charting a long history.
+     * The finest resolution that fits is used, so a short range is returned day by day and a long one by week,
+     * month or year. Buckets without a logged day are left out.
+     * @param from The first day of the range, inclusive.
+     * @param to The last day of the range, inclusive.
+     * @param maxBuckets The most buckets wanted.
+     * @return The buckets that have a logged day, oldest first.
+     */
+    public List<NutritionBucket> buckets(LocalDate from, LocalDate to, int maxBuckets) {
+        Resolution resolution = Resolution.fit(from, to, maxBuckets);
+        return this.lock.peek(() -> {
+            ArrayList<NutritionBucket> buckets = new ArrayList<>();
+            for (LocalDate start = resolution.start(from); !start.isAfter(to); start = resolution.next(start)) {
+                NutritionBucket bucket = this.summarise(resolution, start);
+                if (bucket.getDaysLogged() > 0) {
+                    buckets.add(bucket);
+                }
+            }
+            return buckets;
+        });
+    }
+
+    /**
+     * Summarises the bucket of time a day falls in, see bucket.
+     * @param resolution The span of the bucket.
+     * @param day Any day in the bucket.
+     * @return The bucket.
+     */
+    private NutritionBucket summarise(Resolution resolution, LocalDate day) {
+        LocalDate start = resolution.start(day);
+        int from = DateKey.of(start);
+        int to = DateKey.of(resolution.next(start)) - 1;
+        int days = (int) Math.round(this.dailyTotals.sum(NUTRIENTS.length, from, to));
+        double[] averages = new double[NUTRIENTS.length];
+        if (days > 0) {
+            for (Nutrient nutrient : NUTRIENTS) {
+                averages[nutrient.ordinal()] = this.dailyTotals.sum(nutrient.ordinal(), from, to) / days;
+            }
+        }
+        return new NutritionBucket(resolution, start, days, averages);
+    }
+
+    /**
+     * Computes the average daily amount of a nutrient between two epoch-days.
+     * @param nutrient The nutrient to average.
+     * @param from The first epoch-day, inclusive.
+     * @param to The last epoch-day, inclusive.
+     * @return The average per logged day, or 0 if there are none.
+     */
+    private double average(Nutrient nutrient, int from, int to) {
+        return this.lock.peek(() -> {
+            double days = Math.round(this.dailyTotals.sum(NUTRIENTS.length, from, to));
+            if (days == 0) {
+                return 0.0;
+            }
+            return this.dailyTotals.sum(nutrient.ordinal(), from, to) / days;
+        });
+    }
+
+    /**
+     * Returns the indexed total of a nutrient on a single day.
+     * @param nutrient The nutrient to read.
+     * @param day The epoch-day to read.
+     * @return The total on the day, or 0 if there is no entry.
+     */
+    private double dayTotal(Nutrient nutrient, int day) {
+        return this.lock.peek(() -> this.dailyTotals.get(nutrient.ordinal(), day));
+    }
+
+    /**
+     * Recomputes the daily totals of a single day after it has been changed.
+     * @param day The epoch-day that changed.
+     */
+    private void reindex(int day) {
+        Entry entry = this.entryStorage.get(day);
+        if (entry == null) {
+            this.dailyTotals.clear(day);
+            return;
+        }
+        for (Nutrient nutrient : NUTRIENTS) {
+            this.totalsRow[nutrient.ordinal()] = nutrient.of(entry);
+        }
+        this.totalsRow[NUTRIENTS.length] = 1;
+        this.dailyTotals.set(day, this.totalsRow);
+    }
+
+    /**
+     * Works out the totals of the days that log a recipe whose nutrients changed again, and tells observers those
+     * days were updated. Days that are only in the snapshot are checked without decoding them. Nothing is journaled
+     * and the log is not dirty, its rows are the same.
+     * @param recipes The recipes that changed.
+     */
+    private void recipesChanged(Collection<Recipe> recipes) {
+        Set<Food> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+        changed.addAll(recipes);
+        this.lock.write(() -> {
+            boolean inSnapshot = this.snapshot != null && this.snapshot.mayLog(changed);
+            boolean any = false;
+            for (int i = 0; i < this.entryStorage.size(); i++) {
+                int day = this.entryStorage.keyAt(i);
+                Entry stored = this.entryStorage.storedAt(i);
+                if (stored != null ? logs(stored, changed) : inSnapshot && this.snapshot.logs(day, changed)) {
+                    Entry entry = this.entryStorage.get(day);
+                    this.reindex(day);
+                    this.track(day, entry, entry);
+                    any = true;
+                }
+            }
+            if (any) {
+                this.changed();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Returns if an entry logs any of some foods.
+     * @param entry The entry.
+     * @param foods The foods, compared by identity.
+     * @return True if the entry has a food entry for one of the foods.
+     */
+    private static boolean logs(Entry entry, Set<Food> foods) {
+        for (FoodEntry foodEntry : entry.getAllFoodEntries()) {
+            if (foods.contains(foodEntry.getFood())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tracks the change to a day for the observers.
+     * @param day The epoch-day that changed.
+     * @param before The entry stored for the day before the change, or null if there was none.
+     */
+    private void trackDay(int day, Entry before) {
+        this.track(day, before, this.entryStorage.get(day));
+    }
+
+    /**
+     * Appends the current state of a day to the journal, and folds the journal back into the log file in the
+     * background once it has grown large enough.
+     * @param day The epoch-day that changed.
+     */
+    private void journalDay(int day) {
+        if (this.appendDay(day) && this.journal.size() >= COMPACT_AFTER) {
+            try {
+                this.saveInBackground();
+            } catch (IOException ioe) {
+                System.out.println("Could not write journal. Reason: " + ioe.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Appends the current state of a day to the journal. A day is journaled as a record that drops the day,
+     * followed by one record for each of its rows, so replaying the records always rebuilds the latest version.
+     * @param day The epoch-day that changed.
+     * @return True if the day was journaled, false if there is no journal or it could not be written to.
+     */
+    private boolean appendDay(int day) {
+        if (this.journal == null) {
+            return false;
+        }
+        ArrayList<String> records = new ArrayList<>();
+        records.add("x," + day);
+        Entry entry = this.entryStorage.get(day);
+        if (entry != null) {
+            for (String row : entry.getCSV().split("\\R")) {
+                if (!row.isEmpty()) {
+                    records.add("a," + row);
+                }
+            }
+        }
+
+        try {
+            this.journal.append(records.toArray(new String[0]));
+            if (entry != null) {
+                entry.markClean();
+            }
+            return true;
+        } catch (IOException ioe) {
+            this.journalBehind = true;
+            System.out.println("Could not write journal. Reason: " + ioe.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Applies a single journal record while loading.
+     * @param record The record, either "x,epoch-day" to drop a day or "a," followed by a log row.
+     */
+    private void replay(CharSequence record) {
+        CharSequence payload = record.subSequence(2, record.length());
+        switch (record.charAt(0)) {
+            case 'x':
+                int dropped = Integer.parseInt(payload.toString());
+                this.entryStorage.remove(dropped);
+                this.reindex(dropped);
+                break;
+            case 'a':
+                Entry entry = this.factory.makeEntry(payload);
+                if (entry != null) {
+                    int day = DateKey.of(entry.getDate());
+                    if (!this.entryStorage.containsKey(day)) {
+                        this.entryStorage.put(day, entry);
+                    }
+                    this.reindex(day);
+                }
+                break;
+            default:
+                throw new InvalidParameterException("Journal contained malformed data.");
         }
-        return protein;
     }
 
     /**
@@ -369,7 +1330,7 @@ public class EntryHandler extends Observable {
      * @return overUnder the amount of calories that were over or under the calorie goal
      */
     public double goalCheck(int year, int month, int day_of_month) {
-        return this.goalCheck(getCal(year,month,day_of_month));
+        return this.goalCheck(DateKey.of(year,month,day_of_month));
     }
 
     /**
@@ -378,56 +1339,67 @@ public class EntryHandler extends Observable {
      * @return overUnder the amount of calories that were over or under the calorie goal
      */
     public double goalCheck(GregorianCalendar date){
-        // The over/under of calories for calorie goal.
-        double overUnder;
-        // retrieves entry on given date.
-        Entry entry = entryStorage.get(date);
-        // The calorie goal listed in the Entry.
-        double calorieGoal;
-        // Accumulates calories.
-        double calories = 0;
-
-        // Check for that calorie entry exists.
-        if (entry.getCalorieEntry()!= null && entry.getWeightEntry() != null) {
-            calorieGoal = entry.getCalorieEntry().getCalories();
-
-            // Foods consumed on given date
-            Collection<FoodEntry> foodsConsumed = entry.getAllFoodEntries();
-            // Exercises performed on given date
-            Collection<ExerciseEntry> exerciseRoutines = entry.getAllExerciseEntries();
-
-            // Totals calories for foods consumed on given date.
-            for (FoodEntry foodEntry : foodsConsumed) {
-                calories += foodEntry.getTotalCalories();
-            }
-
-            // Subtracts calories for each exercise based on exercise calorie burn.
-            for (ExerciseEntry exerciseEntry : exerciseRoutines) {
-                double caloriesPerHour = exerciseEntry.getCaloriesFromExercise();
-                double fractionalWeight = entry.getWeightEntry().getWeight()/100;
-                double fractionalHours = exerciseEntry.getDuration()/60;
-                double calorieBurn = caloriesPerHour * fractionalWeight * fractionalHours;
-                calories -= calorieBurn;
-            }
-
-            // Check for negative calories.
-            if (calories < 0) {
-                overUnder = calorieGoal += calories;
+        return this.goalCheck(DateKey.of(date));
+    }
+
+    /**
+     * Checks if the a calorie goal was a achieved on a specific day
+     * @param day The epoch-day to be checked.
+     * @return overUnder the amount of calories that were over or under the calorie goal
+     */
+    private double goalCheck(int day){
+        return this.lock.read(() -> {
+            // The over/under of calories for calorie goal.
+            double overUnder;
+            // retrieves entry on given date.
+            Entry entry = entryStorage.get(day);
+            // The calorie goal listed in the Entry.
+            double calorieGoal;
+            // Accumulates calories.
+            double calories = 0;
+
+            // Check for that calorie entry exists.
+            if (entry.getCalorieEntry()!= null && entry.getWeightEntry() != null) {
+                calorieGoal = entry.getCalorieEntry().getCalories();
+
+                // Foods consumed on given date
+                Collection<FoodEntry> foodsConsumed = entry.getAllFoodEntries();
+                // Exercises performed on given date
+                Collection<ExerciseEntry> exerciseRoutines = entry.getAllExerciseEntries();
+
+                // Totals calories for foods consumed on given date.
+                for (FoodEntry foodEntry : foodsConsumed) {
+                    calories += foodEntry.getTotalCalories();
+                }
+
+                // Subtracts calories for each exercise based on exercise calorie burn.
+                for (ExerciseEntry exerciseEntry : exerciseRoutines) {
+                    double caloriesPerHour = exerciseEntry.getCaloriesFromExercise();
+                    double fractionalWeight = entry.getWeightEntry().getWeight()/100;
+                    double fractionalHours = exerciseEntry.getDuration()/60;
+                    double calorieBurn = caloriesPerHour * fractionalWeight * fractionalHours;
+                    calories -= calorieBurn;
+                }
+
+                // Check for negative calories.
+                if (calories < 0) {
+                    overUnder = calorieGoal += calories;
+                } else {
+                    overUnder = calorieGoal -= calories;
+                }
             } else {
-                overUnder = calorieGoal -= calories;
+                overUnder = 0;
             }
-        } else {
-            overUnder = 0;
-        }
-        return Math.round(overUnder);
+            return Math.round(overUnder);
+        });
     }
 
     /**
      * This is a helper method to update all observers.
      */
     private void massNotify(){
-        this.setChanged();
-        this.notifyObservers();
+        this.version++;
+        this.changed();
     }
 
     /**
@@ -458,34 +1430,66 @@ public class EntryHandler extends Observable {
      */
     class EntryFactory {
 
+        // Reused for every row so that parsing does not allocate per field.
+        private CSVTokenizer tokenizer = new CSVTokenizer();
+        // The days that rows are added to when their day already has an entry.
+        private SortedIntMap<Entry> days;
+        // The numbered names that compact rows refer to.
+        private LogNames names;
+
+        /**
+         * Creates a factory that adds rows to the entries in the model.
+         */
+        EntryFactory() {
+            this(entryStorage);
+        }
+
+        /**
+         * Creates a factory that adds rows to a separate set of days, used to parse part of a file on its own thread.
+         * @param days The days to add rows to.
+         */
+        EntryFactory(SortedIntMap<Entry> days) {
+            this.days = days;
+            this.names = logNames;
+        }
+
         /**
          * Create a new Entry object based on specified Type
          *
          * @param csv The raw csv of an entry;
          * @return Entry
          */
-        Entry makeEntry(String csv) {
+        Entry makeEntry(CharSequence csv) {
             Entry entry = null;
 
-            String[] entryDetails = csv.split(",");
-
-            switch (entryDetails[3]) {
-                case "w":
+            // The type column decides how the row is read, so look at it first and then start over.
+            tokenizer.reset(csv);
+            if (csv.length() > 0 && csv.charAt(0) == 'n') {
+                this.defineName();
+                return null;
+            }
+            tokenizer.skip();
+            tokenizer.skip();
+            tokenizer.skip();
+            char type = tokenizer.nextChar();
+            tokenizer.rewind();
+
+            switch (type) {
+                case 'w':
                     try {
                         //Get the date.
-                        int yyyy = Integer.parseInt(entryDetails[0]);
-                        int MM = Integer.parseInt(entryDetails[1]);
-                        int dd = Integer.parseInt(entryDetails[2]);
+                        int day = this.nextDay();
+                        tokenizer.skip();
                         //Get the weight.
-                        double weight = Double.parseDouble(entryDetails[4]);
+                        double weight = tokenizer.nextDouble();
 
-                        GregorianCalendar date = getCal(yyyy,MM,dd);
-
-                        if (hasEntry(date)) {
-                            entry = get(date);
+                        if (days.containsKey(day)) {
+                            entry = days.get(day);
                             entry.setWeightEntry(new WeightEntry(weight));
+                            // Keep the changed entry, the stored day may only have been loaded from a snapshot.
+                            days.put(day, entry);
                         } else {
-                            entry = new Entry(date);
+                            entry = new Entry(DateKey.toCalendar(day));
                             entry.setWeightEntry(new WeightEntry(weight));
                         }
 
@@ -494,22 +1498,21 @@ public class EntryHandler extends Observable {
                     }
                     break;
 
-                case "c":
+                case 'c':
                     try {
                         //Get the date.
-                        int yyyy = Integer.parseInt(entryDetails[0]);
-                        int MM = Integer.parseInt(entryDetails[1]);
-                        int dd = Integer.parseInt(entryDetails[2]);
+                        int day = this.nextDay();
+                        tokenizer.skip();
                         //Get the calories.
-                        double calories = Double.parseDouble(entryDetails[4]);
-
-                        GregorianCalendar date = getCal(yyyy,MM,dd);
+                        double calories = tokenizer.nextDouble();
 
-                        if (hasEntry(date)) {
-                            entry = get(date);
+                        if (days.containsKey(day)) {
+                            entry = days.get(day);
                             entry.setCalorieEntry(new CalorieEntry(calories));
+                            // Keep the changed entry, the stored day may only have been loaded from a snapshot.
+                            days.put(day, entry);
                         } else {
-                            entry = new Entry(date);
+                            entry = new Entry(DateKey.toCalendar(day));
                             entry.setCalorieEntry(new CalorieEntry(calories));
                         }
 
@@ -518,27 +1521,27 @@ public class EntryHandler extends Observable {
                     }
                     break;
 
-                case "f":
+                case 'f':
+                case 'F':
                     try {
                         //Get the date.
-                        int yyyy = Integer.parseInt(entryDetails[0]);
-                        int MM = Integer.parseInt(entryDetails[1]);
-                        int dd = Integer.parseInt(entryDetails[2]);
-
-                        //Get the food and servings associated.
-                        String rawFood = entryDetails[4];
-                        double servings = Double.parseDouble(entryDetails[5]);
-
-                        GregorianCalendar date = getCal(yyyy,MM,dd);
-
-                        if (foodHandler.hasFood(rawFood)) {
-                            if (hasEntry(date)) {
-                                Food food = foodHandler.get(rawFood);
-                                entry = get(date);
+                        int day = this.nextDay();
+                        tokenizer.skip();
+
+                        //Get the food and servings associated, looking the name up without copying it.
+                        Food food = type == 'f'
+                                ? foodHandler.get(tokenizer.nextName(foodHandler.getNames()))
+                                : names.food(tokenizer.nextInt());
+                        double servings = tokenizer.nextDouble();
+
+                        if (food != null) {
+                            if (days.containsKey(day)) {
+                                entry = days.get(day);
                                 entry.addFoodEntry(new FoodEntry(food,servings));
+                                // Keep the changed entry, the stored day may only have been loaded from a snapshot.
+                                days.put(day, entry);
                             } else {
-                                Food food = foodHandler.get(rawFood);
-                                entry = new Entry(date);
+                                entry = new Entry(DateKey.toCalendar(day));
                                 entry.addFoodEntry(new FoodEntry(food,servings));
                             }
                         }
@@ -548,27 +1551,27 @@ public class EntryHandler extends Observable {
                     }
                     break;
 
-                case "e":
+                case 'e':
+                case 'E':
                     try {
                         //Get the date.
-                        int yyyy = Integer.parseInt(entryDetails[0]);
-                        int MM = Integer.parseInt(entryDetails[1]);
-                        int dd = Integer.parseInt(entryDetails[2]);
-
-                        //Get the food and servings associated.
-                        String rawExercise = entryDetails[4];
-                        double duration = Double.parseDouble(entryDetails[5]);
-
-                        GregorianCalendar date = getCal(yyyy,MM,dd);
-
-                        if (exerciseHandler.hasExercise(rawExercise)) {
-                            if (hasEntry(date)) {
-                                Exercise exercise = exerciseHandler.get(rawExercise);
-                                entry = get(date);
+                        int day = this.nextDay();
+                        tokenizer.skip();
+
+                        //Get the exercise and duration associated, looking the name up without copying it.
+                        Exercise exercise = type == 'e'
+                                ? exerciseHandler.get(tokenizer.nextName(exerciseHandler.getNames()))
+                                : names.exercise(tokenizer.nextInt());
+                        double duration = tokenizer.nextDouble();
+
+                        if (exercise != null) {
+                            if (days.containsKey(day)) {
+                                entry = days.get(day);
                                 entry.addExerciseEntry(new ExerciseEntry(exercise, duration));
+                                // Keep the changed entry, the stored day may only have been loaded from a snapshot.
+                                days.put(day, entry);
                             } else {
-                                Exercise exercise = exerciseHandler.get(rawExercise);
-                                entry = new Entry(date);
+                                entry = new Entry(DateKey.toCalendar(day));
                                 entry.addExerciseEntry(new ExerciseEntry(exercise, duration));
                             }
                         }
@@ -579,5 +1582,121 @@ public class EntryHandler extends Observable {
             }
             return entry;
         }
+
+        /**
+         * Reads the date a row starts with.
+         * @return The epoch-day of the date.
+         * @throws InvalidParameterException Thrown if the date is outside of the years that can be logged.
+         */
+        private int nextDay() throws InvalidParameterException {
+            int day = DateKey.of(tokenizer.nextInt(), tokenizer.nextInt(), tokenizer.nextInt());
+            if (!DateKey.isLoggable(day)) {
+                throw new InvalidParameterException("Entry contained a date outside of the years that can be logged.");
+            }
+            return day;
+        }
+
+        /**
+         * Reads a row that numbers a food or exercise, "n,f,number,name" or "n,e,number,name". A name that is not
+         * stored leaves the number undefined, so the rows that use it are skipped like rows that name it.
+         * @throws InvalidParameterException Thrown if the row is malformed.
+         */
+        private void defineName() throws InvalidParameterException {
+            try {
+                tokenizer.skip();
+                char kind = tokenizer.nextChar();
+                int id = tokenizer.nextInt();
+                if (kind == 'f') {
+                    names.define(id, foodHandler.get(tokenizer.nextName(foodHandler.getNames())));
+                } else if (kind == 'e') {
+                    names.define(id, exerciseHandler.get(tokenizer.nextName(exerciseHandler.getNames())));
+                } else {
+                    throw new InvalidParameterException("Log file contained a malformed name.");
+                }
+            } catch (NumberFormatException | NoSuchElementException e) {
+                throw new InvalidParameterException("Log file contained a malformed name.");
+            }
+        }
+    }
+
+    /**
+     * The foods and exercises numbered at the top of a compact log, by number.
+     */
+    private static class LogNames {
+
+        private final ArrayList<Food> foods = new ArrayList<>();
+        private final ArrayList<Exercise> exercises = new ArrayList<>();
+        // The number of "n" rows read for foods and for exercises, which no number can reach.
+        private int foodRows;
+        private int exerciseRows;
+
+        /**
+         * Numbers a food.
+         * @param id The number.
+         * @param food The food, or null if it is not stored.
+         * @throws InvalidParameterException Thrown if the number is negative or not below the number of food rows.
+         */
+        void define(int id, Food food) throws InvalidParameterException {
+            define(this.foods, id, food, ++this.foodRows);
+        }
+
+        /**
+         * Numbers an exercise.
+         * @param id The number.
+         * @param exercise The exercise, or null if it is not stored.
+         * @throws InvalidParameterException Thrown if the number is negative or not below the number of exercise
+         * rows.
+         */
+        void define(int id, Exercise exercise) throws InvalidParameterException {
+            define(this.exercises, id, exercise, ++this.exerciseRows);
+        }
+
+        /**
+         * Returns a numbered food.
+         * @param id The number.
+         * @return The food, or null if the number is not defined.
+         */
+        Food food(int id) {
+            return id >= 0 && id < this.foods.size() ? this.foods.get(id) : null;
+        }
+
+        /**
+         * Returns a numbered exercise.
+         * @param id The number.
+         * @return The exercise, or null if the number is not defined.
+         */
+        Exercise exercise(int id) {
+            return id >= 0 && id < this.exercises.size() ? this.exercises.get(id) : null;
+        }
+
+        /**
+         * Tests if anything has been numbered.
+         * @return True if no names have been read.
+         */
+        boolean isEmpty() {
+            return this.foods.isEmpty() && this.exercises.isEmpty();
+        }
+
+        /**
+         * Puts an item at a number, growing the list as needed. Saved logs number their names 0, 1, 2 and so on, so
+         * a number is only accepted if there have been more rows of its kind than it, which stops one corrupt row
+         * from growing the list to the size of the number.
+         * @param items The list.
+         * @param id The number.
+         * @param item The item.
+         * @param rows The number of rows of this kind read so far, including this one.
+         * @param <T> The type of item.
+         * @throws InvalidParameterException Thrown if the number is out of range.
+         */
+        private static <T> void define(ArrayList<T> items, int id, T item, int rows)
+                throws InvalidParameterException {
+            if (id < 0 || id >= rows) {
+                throw new InvalidParameterException("Log file contained a malformed name.");
+            }
+            while (items.size() <= id) {
+                items.add(null);
+            }
+            items.set(id, item);
+        }
     }
 }
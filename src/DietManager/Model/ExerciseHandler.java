@@ -1,26 +1,61 @@
 package DietManager.Model;
 
 import DietManager.Model.Exercise.Exercise;
+import DietManager.Model.Util.BackgroundSaver;
+import DietManager.Model.Util.BatchedObservable;
+import DietManager.Model.Util.BinarySnapshot;
+import DietManager.Model.Util.CSVTokenizer;
 import DietManager.Model.Util.IOHandler;
+import DietManager.Model.Util.Journal;
+import DietManager.Model.Util.ModelLock;
+import DietManager.Model.Util.NameIndex;
+import DietManager.Model.Util.NameTable;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.Observable;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * This class handles all interaction with the dal for exercise objects.
  * Exercises can be loaded, updated, deleted, or added here.
  */
-public class ExerciseHandler extends Observable {
+public class ExerciseHandler extends BatchedObservable<String, Exercise> {
+
+    // The number of journal records after which the journal is folded back into the exercise file.
+    private static final int COMPACT_AFTER = 500;
+    // Tags the binary snapshot of the exercise file.
+    private static final char SNAPSHOT_KIND = 'e';
 
     private File file;
+    private boolean journaling;
+    private Journal journal;
+    private BackgroundSaver saver;
+    private boolean snapshots;
+    // True while the binary snapshot next to the file matches it.
+    private volatile boolean snapshotCurrent;
+    // Bumped by every change, save compares it with the version that was last written to the file.
+    private long version;
+    private volatile long savedVersion;
+    // Set when a change could not be journaled, so the next save has to rewrite the whole file.
+    private boolean journalBehind;
     private IOHandler io;
     private ExerciseFactory factory;
     private HashMap<String, Exercise> exerciseStorage;
+    // The names of the stored exercises, for searching.
+    private NameIndex index;
+    // Gives every name an exercise has been stored under an id, and the stored exercise by that id.
+    private NameTable names;
+    private ArrayList<Exercise> byId;
+    // Guards everything above, see ModelLock.
+    private final ModelLock lock = new ModelLock(this);
 
     /**
      * Creates and object that can be used to interact with the exercises that are in the dal.
@@ -30,71 +65,275 @@ public class ExerciseHandler extends Observable {
         this.io = io;
         this.factory = new ExerciseFactory();
         exerciseStorage = new HashMap<>();
+        index = new NameIndex();
+        names = new NameTable();
+        byId = new ArrayList<>();
+    }
+
+    /**
+     * Turns journaling on or off for the next load. While journaling, every change is appended to a journal
+     * next to the loaded exercise file instead of waiting for the whole file to be saved.
+     * @param journaling True to journal changes.
+     */
+    public void setJournaling(boolean journaling) {
+        this.journaling = journaling;
+    }
+
+    /**
+     * Turns binary snapshots on or off. While on, every save also writes a binary copy of the exercise file, and
+     * loading reads that copy instead of the csv as long as the csv has not changed since.
+     * @param snapshots True to read and write binary snapshots.
+     */
+    public void setBinarySnapshots(boolean snapshots) {
+        this.snapshots = snapshots;
     }
 
     /**
      * Loads exercise object from a provided csv formatted file into the dal.
+     * If binary snapshots are on and the snapshot is up to date, it is read instead of the csv.
+     * If journaling is on, any changes journaled since the file was last saved are applied on top of it.
+     * Observers are notified once, after everything has been read.
      * @param file The file that will be read and used to create our exercise objects.
      * @throws InvalidParameterException This is thrown if the provided log file contains errors.
      * @throws IOException This is thrown if the provided file cannot be read from.
      */
     public void load(File file) throws InvalidParameterException, IOException {
-        try{
-            ArrayList<String> rawExercises = io.readFromFile(file);
-            for(String rawExercise : rawExercises) {
-                try {
-                    Exercise exercise = factory.makeExercise(rawExercise);
-                    if(exercise != null) {
-                        add(exercise);
-                    }
-                } catch (InvalidParameterException ipe){
-                    throw ipe;
+        this.lock.write(() -> {
+            this.beginBatch();
+            this.trackAll();
+            try{
+                DataInputStream snapshot = this.snapshots ? BinarySnapshot.open(file, SNAPSHOT_KIND) : null;
+                boolean fromSnapshot = snapshot != null && this.loadSnapshot(snapshot);
+                if (!fromSnapshot) {
+                    io.readFromFile(file, rawExercise -> {
+                        Exercise exercise = factory.makeExercise(rawExercise);
+                        if (exercise != null) {
+                            add(exercise);
+                        }
+                    });
                 }
+                if (file != null) {
+                    this.file = file;
+                }
+                if (this.journaling) {
+                    // The journal is only assigned after replaying so that replayed records are not journaled again.
+                    Journal journal = Journal.forFile(file);
+                    journal.replay(io, this::replay);
+                    this.journal = journal;
+                    this.massNotify();
+                }
+                // Whatever was read is either in the file or in its journal already.
+                this.savedVersion = this.version;
+                this.journalBehind = false;
+                this.snapshotCurrent = fromSnapshot;
+            } catch (IOException ioe) {
+                throw ioe;
+            } finally {
+                this.endBatch();
             }
-            if (file != null) {
-                this.file = file;
-            }
-        } catch (IOException ioe) {
-            throw ioe;
-        }
+            return null;
+        });
     }
 
     /**
      * Saves exercise objects from the exercise dal to a specified file.
+     * Saving to the file the exercises were loaded from is the same as save(), any other file is always written.
      * @param file The file that the exercise items will be written to.
      * @throws IOException Thrown in the instance that the file privided cannot be written to.
      */
     public void save(File file) throws IOException {
+        this.lock.write(() -> {
+            if (file.equals(this.file)) {
+                this.save();
+                return null;
+            }
+
+            try {
+                this.awaitBackgroundSave();
+                io.writeToFile(getAllCSVAble(),file);
+                this.writeSnapshot(file, this.encodeSnapshot());
+            } catch (IOException ioe) {
+                throw ioe;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Saves exercise objects to the file they were loaded from.
+     * Nothing is written if nothing changed since the last save, or if every change is already in the journal and
+     * the journal is still small.
+     * @throws IOException Thrown in the instance that the file privided cannot be written to.
+     */
+    public void save() throws IOException {
+        this.lock.write(() -> {
+            if (this.file == null) {
+                return null;
+            }
+            try {
+                this.awaitBackgroundSave();
+                if (!this.isDirty()) {
+                    if (this.snapshots && !this.snapshotCurrent && (this.journal == null || this.journal.size() == 0)) {
+                        // Nothing changed, but the file has no snapshot yet.
+                        this.writeSnapshot(this.file, this.encodeSnapshot());
+                    }
+                    return null;
+                }
+                if (this.journal != null && !this.journalBehind && this.journal.size() < COMPACT_AFTER) {
+                    // The changes are already in the journal, which is replayed on load.
+                    this.savedVersion = this.version;
+                    return null;
+                }
+
+                long version = this.version;
+                io.writeToFile(getAllCSVAble(),this.file);
+                this.writeSnapshot(this.file, this.encodeSnapshot());
+                if (this.journal != null) {
+                    this.journal.truncate();
+                }
+                this.savedVersion = version;
+                this.journalBehind = false;
+            } catch (IOException ioe) {
+                throw ioe;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Returns if there are changes that have not been saved to the file the exercises were loaded from.
+     * Changes that are only in the journal count as unsaved until the next save.
+     * @return True if save would have anything to do.
+     */
+    public boolean isDirty() {
+        return this.lock.read(() -> this.version != this.savedVersion);
+    }
+
+    /**
+     * Returns if the file has been set.
+     * @return True if the file has been set.
+     */
+    public boolean hasFile(){
+        return this.lock.peek(() -> this.file != null);
+    }
+
+    /**
+     * Sets the saver used by saveInBackground. Without one, saveInBackground saves on the calling thread.
+     * @param saver The saver that writes snapshots of the exercise file.
+     */
+    public void setSaver(BackgroundSaver saver) {
+        this.saver = saver;
+    }
+
+    /**
+     * Saves exercise objects to the file they were loaded from without waiting for the file to be written.
+     * A snapshot is taken on the calling thread and written by the saver, so the model can keep changing meanwhile.
+     * @throws IOException Thrown if the journal cannot be rotated, or if there is no saver and the file cannot be
+     * written to.
+     */
+    public void saveInBackground() throws IOException {
+        this.lock.write(() -> {
+            if (this.saver == null) {
+                this.save();
+                return null;
+            }
+            if (this.file == null) {
+                return null;
+            }
+            if (!this.isDirty() && (this.journal == null || this.journal.size() == 0)) {
+                return null;
+            }
+            long version = this.version;
+            Collection<String> lines = io.toLines(getAllCSVAble());
+            byte[] snapshot = this.encodeSnapshot();
+            File file = this.file;
+            Journal journal = this.journal;
+            // Records made after the snapshot go to a fresh journal, the rotated ones are dropped once it is written.
+            int generation = journal != null ? journal.rotate() : 0;
+            this.saver.save(file, lines, () -> {
+                this.writeSnapshot(file, snapshot);
+                if (journal != null) {
+                    journal.commit(generation);
+                }
+                this.savedVersion = version;
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Writes the binary snapshot of a csv file that has just been written.
+     * A snapshot that cannot be written is removed, so the next load reads the csv.
+     * @param file The csv file that was written.
+     * @param snapshot The encoded snapshot body, or null if there is none.
+     */
+    private void writeSnapshot(File file, byte[] snapshot) {
         try {
-            file.delete();
-            io.writeToFile(getAllCSVAble(),file);
+            if (snapshot != null) {
+                BinarySnapshot.write(io, file, SNAPSHOT_KIND, snapshot);
+                if (file.equals(this.file)) {
+                    this.snapshotCurrent = true;
+                }
+                return;
+            }
         } catch (IOException ioe) {
-            throw ioe;
+            // Fall through and drop the stale snapshot.
+        }
+        BinarySnapshot.discard(file);
+        if (file.equals(this.file)) {
+            this.snapshotCurrent = false;
         }
     }
 
     /**
-     * Saves exercise objects from the exercise dal to a specified file.
-     * @throws IOException Thrown in the instance that the file privided cannot be written to.
+     * Encodes every exercise into a binary snapshot body: a count followed by the name and calories of each exercise.
+     * @return The encoded body, or null if snapshots are off.
      */
-    public void save() throws IOException {
-        if (this.file == null) {
-            return;
+    private byte[] encodeSnapshot() {
+        if (!this.snapshots) {
+            return null;
         }
-        try {
-            this.file.delete();
-            io.writeToFile(getAllCSVAble(),this.file);
+        ByteArrayOutputStream bytes = BinarySnapshot.newBody();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(exerciseStorage.size());
+            for (Exercise exercise : exerciseStorage.values()) {
+                out.writeUTF(exercise.getName());
+                out.writeDouble(exercise.getCalories());
+            }
         } catch (IOException ioe) {
-            throw ioe;
+            return null;
         }
+        return bytes.toByteArray();
     }
 
     /**
-     * Returns if the file has been set.
-     * @return True if the file has been set.
+     * Loads exercises from a binary snapshot body.
+     * @param in The body, as returned by BinarySnapshot.open.
+     * @return True if the snapshot was loaded, false if it was damaged and the csv should be read instead.
      */
-    public boolean hasFile(){
-        return this.file == null;
+    private boolean loadSnapshot(DataInputStream in) {
+        ArrayList<Exercise> exercises = new ArrayList<>();
+        try {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                exercises.add(new Exercise(in.readUTF(), in.readDouble()));
+            }
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+        for (Exercise exercise : exercises) {
+            add(exercise);
+        }
+        return true;
+    }
+
+    /**
+     * Waits for any background save to finish so that it cannot overwrite a newer synchronous save.
+     */
+    private void awaitBackgroundSave() {
+        if (this.saver != null) {
+            this.saver.flush();
+        }
     }
 
     /**
@@ -103,9 +342,14 @@ public class ExerciseHandler extends Observable {
      * @return True if the operation was successful.
      */
     public boolean add(Exercise exercise) {
-        exerciseStorage.putIfAbsent(exercise.getName().trim(),exercise);
-        this.massNotify();
-        return hasExercise(exercise);
+        return this.lock.write(() -> {
+            if (exerciseStorage.putIfAbsent(exercise.getName().trim(),exercise) == null) {
+                this.list(exercise);
+                this.record("a," + exercise.getCSV());
+            }
+            this.massNotify();
+            return hasExercise(exercise);
+        });
     }
 
     /**
@@ -114,19 +358,42 @@ public class ExerciseHandler extends Observable {
      * @return True if the operation was successful.
      */
     public boolean add(String rawCSV) {
-        Exercise exercise = factory.makeExercise(rawCSV);
-        exerciseStorage.putIfAbsent(exercise.getName().trim(),exercise);
-        this.massNotify();
-        return hasExercise(exercise);
+        return this.lock.write(() -> {
+            Exercise exercise = factory.makeExercise(rawCSV);
+            if (exerciseStorage.putIfAbsent(exercise.getName().trim(),exercise) == null) {
+                this.list(exercise);
+                this.record("a," + exercise.getCSV());
+            }
+            this.massNotify();
+            return hasExercise(exercise);
+        });
     }
 
     /**
      * Returns an unordered collection of all of the exercises that are present in the dal.
-     * This does not remove exercises from the model. Data duplication is possible, be smart here.
+     * This is a copy taken when it is called, so it can be read while the model changes. The exercises in it are not
+     * copied, be smart here.
      * @return An unordered collection of all of the exercises that are present in the dal.
      */
     public Collection<Exercise> getAll() {
-        return exerciseStorage.values();
+        return this.lock.read(() -> new ArrayList<>(exerciseStorage.values()));
+    }
+
+    /**
+     * Finds the exercises whose names best match what the user typed, ignoring case. An exercise matches if its name,
+     * or a word in it, starts with the query, allowing for a typo or two in longer queries.
+     * @param query What the user typed.
+     * @param count The most exercises to return.
+     * @return The matching exercises, best first.
+     */
+    public List<Exercise> search(String query, int count) {
+        return this.lock.read(() -> {
+            ArrayList<Exercise> found = new ArrayList<>();
+            for (String name : index.search(query, count)) {
+                found.add(exerciseStorage.get(name));
+            }
+            return found;
+        });
     }
 
     /**
@@ -135,7 +402,7 @@ public class ExerciseHandler extends Observable {
      * @return An unordered collection of all of the exercises that are present in the dal.
      */
     Collection<ICSVable> getAllCSVAble(){
-        return new ArrayList<>(exerciseStorage.values());
+        return this.lock.read(() -> new ArrayList<>(exerciseStorage.values()));
     }
 
     /**
@@ -144,7 +411,7 @@ public class ExerciseHandler extends Observable {
      * @return The exercise object in the dal. Returns null if not found.
      */
     public Exercise get(Exercise exercise) {
-        return exerciseStorage.get(exercise.getName().trim());
+        return this.lock.read(() -> exerciseStorage.get(exercise.getName().trim()));
     }
 
     /**
@@ -153,7 +420,34 @@ public class ExerciseHandler extends Observable {
      * @return The exercise object in the dal. Returns null if not found.
      */
     public Exercise get(String exercise) {
-        return exerciseStorage.get(exercise);
+        return this.lock.read(() -> exerciseStorage.get(exercise));
+    }
+
+    /**
+     * Returns the id of an exercise's name. A name keeps its id for as long as the ExerciseHandler exists, even if
+     * the exercise is deleted and added again.
+     * @param exercise The name of the exercise.
+     * @return The id, or -1 if no exercise has been stored under the name.
+     */
+    public int idOf(String exercise) {
+        return names.find(exercise);
+    }
+
+    /**
+     * Returns the exercise stored under a name id.
+     * @param id The id of the name, as returned by idOf.
+     * @return The exercise, or null if there is none.
+     */
+    public Exercise get(int id) {
+        return this.lock.peek(() -> id >= 0 && id < byId.size() ? byId.get(id) : null);
+    }
+
+    /**
+     * Returns the table that gives exercise names their ids, for looking names up while parsing.
+     * @return The table.
+     */
+    NameTable getNames() {
+        return names;
     }
 
     /**
@@ -162,7 +456,7 @@ public class ExerciseHandler extends Observable {
      * @return True if the exercise is present in the dal.
      */
     public boolean hasExercise(Exercise exercise) {
-        return exerciseStorage.containsKey(exercise.getName().trim());
+        return this.lock.read(() -> exerciseStorage.containsKey(exercise.getName().trim()));
     }
 
     /**
@@ -171,7 +465,7 @@ public class ExerciseHandler extends Observable {
      * @return True if the exercise is present in the dal.
      */
     public boolean hasExercise(String exercise) {
-        return exerciseStorage.containsKey(exercise);
+        return this.lock.read(() -> exerciseStorage.containsKey(exercise));
     }
 
     /**
@@ -180,9 +474,14 @@ public class ExerciseHandler extends Observable {
      * @return True if the operation was successful.
      */
     public boolean delete(String exercise) {
-        exerciseStorage.remove(exercise);
-        this.massNotify();
-        return !hasExercise(exercise);
+        return this.lock.write(() -> {
+            if (exerciseStorage.remove(exercise) != null) {
+                this.unlist(exercise);
+                this.record("x," + exercise);
+            }
+            this.massNotify();
+            return !hasExercise(exercise);
+        });
     }
 
     /**
@@ -191,9 +490,14 @@ public class ExerciseHandler extends Observable {
      * @return True if the operation was successful.
      */
     public boolean delete(Exercise exercise) {
-        exerciseStorage.remove(exercise.getName());
-        this.massNotify();
-        return !hasExercise(exercise);
+        return this.lock.write(() -> {
+            if (exerciseStorage.remove(exercise.getName()) != null) {
+                this.unlist(exercise.getName());
+                this.record("x," + exercise.getName());
+            }
+            this.massNotify();
+            return !hasExercise(exercise);
+        });
     }
 
     /**
@@ -203,9 +507,12 @@ public class ExerciseHandler extends Observable {
      * @return Returns true if update is successful.
      */
     public boolean update(String name,String exerciseCSV){
-        boolean success = this.delete(name) && this.add(exerciseCSV);
-        this.massNotify();
-        return success;
+        // Observers see the delete and the add as a single update, since the lock holds announcements back.
+        return this.lock.write(() -> {
+            boolean success = this.delete(name) && this.add(exerciseCSV);
+            this.massNotify();
+            return success;
+        });
     }
 
     /**
@@ -214,17 +521,86 @@ public class ExerciseHandler extends Observable {
      * @return Returns true if update is successful.
      */
     public boolean update(Exercise exercise){
-        boolean success = delete(exercise) && add(exercise);
-        this.massNotify();
-        return success;
+        // Observers see the delete and the add as a single update, since the lock holds announcements back.
+        return this.lock.write(() -> {
+            boolean success = delete(exercise) && add(exercise);
+            this.massNotify();
+            return success;
+        });
+    }
+
+    /**
+     * Appends records to the journal, folding the journal back into the exercise file once it grows large enough.
+     * @param records The records describing a single change.
+     */
+    private void record(String... records) {
+        if (this.journal == null) {
+            return;
+        }
+        try {
+            this.journal.append(records);
+            if (this.journal.size() >= COMPACT_AFTER) {
+                this.saveInBackground();
+            }
+        } catch (IOException ioe) {
+            this.journalBehind = true;
+            System.out.println("Could not write journal. Reason: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Applies a single journal record while loading.
+     * @param record The record, either "x,name" to remove a exercise or "a," followed by a exercise row.
+     */
+    private void replay(CharSequence record) {
+        CharSequence payload = record.subSequence(2, record.length());
+        switch (record.charAt(0)) {
+            case 'x':
+                exerciseStorage.remove(payload.toString());
+                this.unlist(payload.toString());
+                break;
+            case 'a':
+                Exercise exercise = factory.makeExercise(payload);
+                exerciseStorage.put(exercise.getName().trim(), exercise);
+                this.list(exercise);
+                break;
+            default:
+                throw new InvalidParameterException("Journal contained malformed data.");
+        }
+    }
+
+    /**
+     * Adds a stored exercise to the name index and the id table.
+     * @param exercise The exercise that was stored.
+     */
+    private void list(Exercise exercise) {
+        String name = exercise.getName().trim();
+        index.add(name);
+        int id = names.intern(name);
+        while (byId.size() <= id) {
+            byId.add(null);
+        }
+        this.track(name, byId.set(id, exercise), exercise);
+    }
+
+    /**
+     * Takes an exercise that is no longer stored out of the name index and the id table.
+     * @param name The name the exercise was stored under.
+     */
+    private void unlist(String name) {
+        index.remove(name);
+        int id = names.find(name);
+        if (id >= 0) {
+            this.track(name, byId.set(id, null), null);
+        }
     }
 
     /**
      * This is a helper method to simplify updating all observers.
      */
     private void massNotify(){
-        this.setChanged();
-        this.notifyObservers();
+        this.version++;
+        this.changed();
     }
 
     /**
@@ -235,27 +611,30 @@ public class ExerciseHandler extends Observable {
      */
     class ExerciseFactory {
 
+        // Reused for every row so that parsing does not allocate per field.
+        private CSVTokenizer tokenizer = new CSVTokenizer();
+
         /**
          * This will take raw csv and make Exercise type objects.
          * @param csv Raw csc, most likely read in from a file.
          * @return A exercise object.
          * @throws InvalidParameterException Thrown in the event that an invalid value is found.
          */
-        Exercise makeExercise(String csv) throws InvalidParameterException {
+        Exercise makeExercise(CharSequence csv) throws InvalidParameterException {
             Exercise exercise = null;
-            String[] exerciseDetails = csv.split(",");
+            tokenizer.reset(csv);
 
             // This switch is un-needed, but follows the pattern we have in other classes.
-            switch (exerciseDetails[0]) {
-                case "e":
+            switch (tokenizer.nextChar()) {
+                case 'e':
                         try {
                             exercise = new Exercise(
-                                    exerciseDetails[1],                     // Exercise name.
-                                    Double.parseDouble(exerciseDetails[2])  // Calories per 100lbs/hr.
+                                    tokenizer.nextString(),                 // Exercise name.
+                                    tokenizer.nextDouble()                  // Calories per 100lbs/hr.
                             );
                         }catch (InvalidParameterException ipe) {
                             throw ipe;
-                        } catch (ArrayIndexOutOfBoundsException aiob){
+                        } catch (NoSuchElementException nse){
                             throw new InvalidParameterException("Exercise contained invalid length.");
                         } catch (NumberFormatException nfe) {
                             throw new InvalidParameterException("Invalid value found in exercise file");
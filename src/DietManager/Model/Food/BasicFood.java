@@ -1,15 +1,33 @@
 package DietManager.Model.Food;
 
+import DietManager.Model.Entry.Nutrient;
+
 import java.security.InvalidParameterException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class is a representation of a concrete food object.
  * This object is used in a composite pattern with recipe objects.
+ * While the food is in a FoodHandler, its nutrients are not held by the object itself but by a row of a FoodTable,
+ * so that a catalog of many foods keeps its nutrients in a few dense arrays, and the object is a view of that row.
+ * Otherwise the food holds its nutrients itself.
  */
 public class BasicFood extends Food {
 
+   // How many times a nutrient of any basic food has been written, so that a recipe can tell its totals are stale.
+   private static final AtomicLong WRITES = new AtomicLong();
+
+   // The row the nutrients of the food are kept at, or null while the food holds them itself.
+   private volatile FoodTable.Row row;
+   // The nutrients of the food while it is in no table.
+   private volatile double calories;
+   private volatile double fat;
+   private volatile double carbs;
+   private volatile double protein;
+
    /**
     * Constructs a BasicFood object with the required parameters.
+    * The food holds its own nutrients until it is added to a FoodHandler.
     * @param name The name of the food that is being instantiated.
     * @param calories The calories that the food has.
     * @param fat The fat that the food has.
@@ -25,29 +43,190 @@ public class BasicFood extends Food {
          throw new InvalidParameterException("Invalid food name.");
       }
 
-      if (calories >= 0) {
-         this.calories = calories;
-      } else {
+      if (calories < 0) {
          throw new InvalidParameterException("Invalid calorie value.");
       }
 
-      if (fat >= 0) {
-         this.fat = fat;
-      } else {
+      if (fat < 0) {
          throw new InvalidParameterException("Invalid fat value.");
       }
 
-      if (carbs >= 0) {
-         this.carbs = carbs;
-      } else {
+      if (carbs < 0) {
          throw new InvalidParameterException("Invalid carbohydrates value." + this.name);
       }
 
-      if (protein >= 0) {
-         this.protein = protein;
-      } else {
+      if (protein < 0) {
          throw new InvalidParameterException("Invalid protein value.");
       }
+
+      this.calories = calories;
+      this.fat = fat;
+      this.carbs = carbs;
+      this.protein = protein;
+   }
+
+   /**
+    * Accessor for the row the nutrients of the food are kept at.
+    *
+    * @return The row, or null if the food is in no table.
+    */
+   FoodTable.Row getRow() {
+      return this.row;
+   }
+
+   /**
+    * Returns how many times a nutrient of any basic food has been written. Counted after each write, so totals worked
+    * out after reading the count include every write it counts.
+    *
+    * @return The number of writes.
+    */
+   static long writes() {
+      return WRITES.get();
+   }
+
+   /**
+    * Points the food at a different row. Called by FoodTable, holding the lock of the food, when the food is moved
+    * into or out of it. When the food leaves its row, the nutrients in the row are copied back into the food.
+    *
+    * @param row The row the nutrients are now kept at, or null to keep them in the food.
+    */
+   void moveTo(FoodTable.Row row) {
+      FoodTable.Row previous = this.row;
+      if (row == null && previous != null) {
+         this.calories = previous.table.calories[previous.id];
+         this.fat = previous.table.fat[previous.id];
+         this.carbs = previous.table.carbs[previous.id];
+         this.protein = previous.table.protein[previous.id];
+      }
+      this.row = row;
+   }
+
+   /**
+    * Writes a nutrient to wherever the food keeps it at the moment. Tried again if the food moves in or out of a
+    * table while it is being written.
+    *
+    * @param nutrient The nutrient.
+    * @param value The new value.
+    */
+   private void set(Nutrient nutrient, double value) {
+      while (true) {
+         FoodTable.Row row = this.row;
+         if (row != null) {
+            if (row.table.set(this, row, nutrient, value)) {
+               WRITES.incrementAndGet();
+               return;
+            }
+            continue;
+         }
+         synchronized (this) {
+            if (this.row == null) {
+               switch (nutrient) {
+                  case CALORIES:
+                     this.calories = value;
+                     break;
+                  case FAT:
+                     this.fat = value;
+                     break;
+                  case CARBS:
+                     this.carbs = value;
+                     break;
+                  case PROTEIN:
+                     this.protein = value;
+                     break;
+               }
+               WRITES.incrementAndGet();
+               return;
+            }
+         }
+      }
+   }
+
+   /**
+    * Accessor for calories.
+    *
+    * @return number of calories in food
+    */
+   @Override
+   public double getCalories() {
+      FoodTable.Row row = this.row;
+      return row == null ? this.calories : row.table.calories[row.id];
+   }
+
+   /**
+    * Mutator for calories.
+    *
+    * @param calories The amount of calories.
+    */
+   public void setCalories(double calories) {
+      if (calories > 0) {
+         this.set(Nutrient.CALORIES, calories);
+      }
+   }
+
+   /**
+    * Accessor for fat.
+    *
+    * @return Amount of fat in food
+    */
+   @Override
+   public double getFat() {
+      FoodTable.Row row = this.row;
+      return row == null ? this.fat : row.table.fat[row.id];
+   }
+
+   /**
+    * Mutator for fat.
+    *
+    * @param fat The amount of fat.
+    */
+   public void setFat(double fat) {
+      if (fat > 0) {
+         this.set(Nutrient.FAT, fat);
+      }
+   }
+
+   /**
+    * Accessor for carbs.
+    *
+    * @return number of carbs in food
+    */
+   @Override
+   public double getCarbs() {
+      FoodTable.Row row = this.row;
+      return row == null ? this.carbs : row.table.carbs[row.id];
+   }
+
+   /**
+    * Mutator for carbs.
+    *
+    * @param carbs The amount of carbs.
+    */
+   public void setCarbs(double carbs) {
+      if (carbs > 0) {
+         this.set(Nutrient.CARBS, carbs);
+      }
+   }
+
+   /**
+    * Accessor for protein.
+    *
+    * @return Amount of protein in food
+    */
+   @Override
+   public double getProtein() {
+      FoodTable.Row row = this.row;
+      return row == null ? this.protein : row.table.protein[row.id];
+   }
+
+   /**
+    * Mutator for protein.
+    *
+    * @param protein The amount of protein.
+    */
+   public void setProtein(double protein) {
+      if (protein > 0) {
+         this.set(Nutrient.PROTEIN, protein);
+      }
    }
 
    /**
@@ -61,13 +240,13 @@ public class BasicFood extends Food {
               .append(",")
               .append(this.name)
               .append(",")
-              .append(this.calories)
+              .append(this.getCalories())
               .append(",")
-              .append(this.carbs)
+              .append(this.getFat())
               .append(",")
-              .append(this.protein)
+              .append(this.getCarbs())
               .append(",")
-              .append(this.fat);
+              .append(this.getProtein());
       return sb.toString();
    }
 }
@@ -0,0 +1,181 @@
+package DietManager.Model.Food;
+
+import javafx.util.Pair;
+
+import java.util.Arrays;
+
+/**
+ * A recipe flattened into the basic foods it is ultimately made of. Nested recipes are expanded and the servings
+ * along the way multiplied out, so however deep the recipe is, totalling it is a single pass over two primitive
+ * arrays: the ids of the basic foods in a FoodTable, and how many servings of each go into one serving of the recipe.
+ * The generation of each row is kept alongside, so a row that has since been given to another food is noticed.
+ */
+final class CompiledRecipe {
+
+    private final FoodTable table;
+    private final int[] ids;
+    private final double[] weights;
+    private final int[] generations;
+
+    /**
+     * Creates a compiled recipe.
+     * @param table The table the ids refer to.
+     * @param ids The ids of the basic foods.
+     * @param weights The servings of each basic food.
+     */
+    private CompiledRecipe(FoodTable table, int[] ids, double[] weights) {
+        this.table = table;
+        this.ids = ids;
+        this.weights = weights;
+        this.generations = new int[ids.length];
+        int[] current = table.generations;
+        for (int i = 0; i < ids.length; i++) {
+            this.generations[i] = current[ids[i]];
+        }
+    }
+
+    /**
+     * Flattens a recipe. Nested recipes are flattened through their own compiled form, so each one is only ever
+     * expanded once.
+     * @param recipe The recipe to flatten.
+     * @param table The table the basic foods are kept in.
+     * @return The compiled recipe, or null if the recipe holds a food that is not in the table.
+     */
+    static CompiledRecipe compile(Recipe recipe, FoodTable table) {
+        int[] ids = new int[8];
+        double[] weights = new double[8];
+        int size = 0;
+        // Position of each id in the arrays being built, so that a food used twice is only listed once. Sized by the
+        // recipe rather than by the table, so compiling a small recipe stays cheap however many foods there are.
+        int[] slots = slots(ids, size, 16);
+
+        for (Pair<Food, Double> ingredient : recipe.getIngredients()) {
+            Food food = ingredient.getKey();
+            double servings = ingredient.getValue();
+            int[] foodIds;
+            double[] foodWeights;
+            if (food instanceof BasicFood) {
+                int id = table.idOf((BasicFood) food);
+                if (id < 0) {
+                    return null;
+                }
+                foodIds = new int[] {id};
+                foodWeights = new double[] {1};
+            } else if (food instanceof Recipe) {
+                CompiledRecipe nested = ((Recipe) food).compiled(table);
+                if (nested == null) {
+                    return null;
+                }
+                foodIds = nested.ids;
+                foodWeights = nested.weights;
+            } else {
+                return null;
+            }
+
+            for (int i = 0; i < foodIds.length; i++) {
+                int id = foodIds[i];
+                int slot = slotOf(slots, ids, id);
+                int position = slots[slot];
+                if (position < 0) {
+                    if (size == ids.length) {
+                        ids = Arrays.copyOf(ids, size * 2);
+                        weights = Arrays.copyOf(weights, size * 2);
+                    }
+                    position = size++;
+                    slots[slot] = position;
+                    ids[position] = id;
+                    weights[position] = 0;
+                    if (size * 2 > slots.length) {
+                        slots = slots(ids, size, slots.length * 2);
+                    }
+                }
+                weights[position] += foodWeights[i] * servings;
+            }
+        }
+        return new CompiledRecipe(table, Arrays.copyOf(ids, size), Arrays.copyOf(weights, size));
+    }
+
+    /**
+     * Builds an open addressing table of the positions of ids, with -1 in the empty slots.
+     * @param ids The ids.
+     * @param size The number of ids to add.
+     * @param capacity The number of slots, a power of two larger than size.
+     * @return The slots.
+     */
+    private static int[] slots(int[] ids, int size, int capacity) {
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, -1);
+        for (int position = 0; position < size; position++) {
+            slots[slotOf(slots, ids, ids[position])] = position;
+        }
+        return slots;
+    }
+
+    /**
+     * Finds the slot holding the position of an id, or the empty slot it would go in.
+     * @param slots The slots.
+     * @param ids The ids the positions refer to.
+     * @param id The id to find.
+     * @return The slot.
+     */
+    private static int slotOf(int[] slots, int[] ids, int id) {
+        int mask = slots.length - 1;
+        int hash = id * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (slots[slot] >= 0 && ids[slots[slot]] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Tests if every row the recipe was compiled against still belongs to the food it did then.
+     * @return True if the compiled recipe can still be used.
+     */
+    boolean isCurrent() {
+        int[] current = this.table.generations;
+        for (int i = 0; i < this.ids.length; i++) {
+            if (current[this.ids[i]] != this.generations[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Totals the recipe from the current nutrients in the table.
+     * @return The nutrients of one serving of the recipe, or null if a row has been given to another food since the
+     * recipe was compiled.
+     */
+    NutrientVector evaluate() {
+        double[] calories = this.table.calories;
+        double[] fat = this.table.fat;
+        double[] carbs = this.table.carbs;
+        double[] protein = this.table.protein;
+        int[] current = this.table.generations;
+        double totalCalories = 0;
+        double totalFat = 0;
+        double totalCarbs = 0;
+        double totalProtein = 0;
+        for (int i = 0; i < this.ids.length; i++) {
+            int id = this.ids[i];
+            if (current[id] != this.generations[i]) {
+                return null;
+            }
+            double weight = this.weights[i];
+            totalCalories += calories[id] * weight;
+            totalFat += fat[id] * weight;
+            totalCarbs += carbs[id] * weight;
+            totalProtein += protein[id] * weight;
+        }
+        return new NutrientVector(totalCalories, totalFat, totalCarbs, totalProtein);
+    }
+
+    /**
+     * Returns the number of distinct basic foods the recipe is made of.
+     * @return The length of the flattened vector.
+     */
+    int size() {
+        return this.ids.length;
+    }
+}
@@ -11,10 +11,6 @@ public abstract class Food implements ICSVable {
    //Variables to hold food name and amount of servings.
    String name = "INVALID FOOD";
    double servings = 0;
-   double calories = 0;
-   double fat = 0;
-   double protein = 0;
-   double carbs = 0;
 
    /**
     * Accessor for name.
@@ -61,78 +57,35 @@ public abstract class Food implements ICSVable {
     *
     * @return number of calories in food
     */
-   public double getCalories() {
-      return this.calories;
-   }
-
-   /**
-    * Mutator for calories defined by sub-class
-    *
-    * @param calories The amount of protein.
-    */
-   public void setCalories(double calories) {
-      if (calories > 0) {
-         this.calories = calories;
-      }
-   }
+   public abstract double getCalories();
 
    /**
     * Accessor for fat defined by sub-class
     *
     * @return Amount of fat in food
     */
-   public double getFat() {
-      return this.fat;
-   }
-
-   /**
-    * Mutator for fat defined by sub-class
-    *
-    * @param fat The amount of fat.
-    */
-   public void setFat(double fat) {
-      if (fat > 0) {
-         this.fat = fat;
-      }
-   }
+   public abstract double getFat();
 
    /**
     * Accessor for carbs defined by sub-class
     *
     * @return number of carbs in food
     */
-   public double getCarbs() {
-      return this.carbs;
-   }
-
-   /**
-    * Mutator for carbs defined by sub-class
-    *
-    * @param carbs The amount of carbs.
-    */
-   public void setCarbs(double carbs) {
-      if (carbs > 0) {
-         this.carbs = carbs;
-      }
-   }
+   public abstract double getCarbs();
 
    /**
     * Accessor for protein defined by sub-class
     *
     * @return Amount of protein in food
     */
-   public double getProtein() {
-      return this.protein;
-   }
+   public abstract double getProtein();
 
    /**
-    * Mutator for protein defined by sub-class
+    * Returns the calories, fat, carbs and protein of the food as a single value.
     *
-    * @param protein The amount of protein.
+    * @return The nutrients of one serving of the food.
     */
-   public void setProtein(double protein) {
-      if (protein > 0) {
-         this.protein = protein;
-      }
+   public NutrientVector getNutrients() {
+      return new NutrientVector(this.getCalories(), this.getFat(), this.getCarbs(), this.getProtein());
    }
 }
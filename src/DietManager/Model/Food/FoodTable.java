@@ -0,0 +1,270 @@
+package DietManager.Model.Food;
+
+import DietManager.Model.Entry.Nutrient;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A dense table of basic foods. The nutrients of every basic food in the catalog are kept in one array per nutrient,
+ * at the row the food was given, and BasicFood objects are views of their row. Scans over the whole catalog, and
+ * compiled recipes, walk these arrays instead of following references from food to food.
+ * A food only has a row while FoodHandler keeps it in the catalog. When it is taken out, its nutrients are copied
+ * back into the food and the row is given to the next food that is added, so replacing foods does not grow the table.
+ * Each row counts how many times it has been given back, so that a compiled recipe can tell that a row it was
+ * compiled against now belongs to another food.
+ */
+public class FoodTable {
+
+    /**
+     * The place a food's nutrients are kept at. A food holds on to one of these for as long as it is in a table, so
+     * that the table and the row are always read together.
+     */
+    static final class Row {
+
+        final FoodTable table;
+        final int id;
+
+        /**
+         * Creates a row.
+         * @param table The table.
+         * @param id The row in the table.
+         */
+        private Row(FoodTable table, int id) {
+            this.table = table;
+            this.id = id;
+        }
+    }
+
+    volatile double[] calories;
+    volatile double[] fat;
+    volatile double[] carbs;
+    volatile double[] protein;
+    // How many times each row has been given back.
+    volatile int[] generations;
+    private BasicFood[] foods;
+    private int size;
+    // The rows that belong to a food.
+    private final BitSet listed;
+    // The rows that have been given back, to be handed out again before the table grows.
+    private int[] free;
+    private int freeCount;
+
+    /**
+     * Creates an empty table.
+     */
+    public FoodTable() {
+        this(64);
+    }
+
+    /**
+     * Creates an empty table with room for a number of foods before it has to grow.
+     * @param capacity The number of foods.
+     */
+    public FoodTable(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.calories = new double[capacity];
+        this.fat = new double[capacity];
+        this.carbs = new double[capacity];
+        this.protein = new double[capacity];
+        this.generations = new int[capacity];
+        this.foods = new BasicFood[capacity];
+        this.listed = new BitSet();
+        this.free = new int[16];
+    }
+
+    /**
+     * Gives a food a row and adds it to the catalog. The nutrients the food holds are copied into the row, and from
+     * then on the food reads and writes the row instead. A food that is in another table is taken out of it first.
+     * Does nothing if the food is already in the table.
+     * @param food The food.
+     */
+    public void adopt(BasicFood food) {
+        Row row = food.getRow();
+        if (row != null && row.table != this) {
+            row.table.release(food);
+        }
+        synchronized (this) {
+            this.place(food);
+        }
+    }
+
+    /**
+     * Gives a food that is in no table a row of this one.
+     * @param food The food.
+     */
+    private void place(BasicFood food) {
+        synchronized (food) {
+            if (food.getRow() != null) {
+                return;
+            }
+            int id = this.freeCount > 0 ? this.free[--this.freeCount] : this.grow();
+            this.calories[id] = food.getCalories();
+            this.fat[id] = food.getFat();
+            this.carbs[id] = food.getCarbs();
+            this.protein[id] = food.getProtein();
+            this.foods[id] = food;
+            this.listed.set(id);
+            food.moveTo(new Row(this, id));
+        }
+    }
+
+    /**
+     * Takes a food out of the catalog and gives its row back. The nutrients in the row are copied back into the food
+     * first, so the food keeps them. Does nothing if the food is not in the table.
+     * @param food The food.
+     */
+    public synchronized void release(BasicFood food) {
+        synchronized (food) {
+            Row row = food.getRow();
+            if (row == null || row.table != this) {
+                return;
+            }
+            int id = row.id;
+            food.moveTo(null);
+            this.foods[id] = null;
+            this.listed.clear(id);
+            this.generations[id]++;
+            if (this.freeCount == this.free.length) {
+                this.free = Arrays.copyOf(this.free, this.freeCount * 2);
+            }
+            this.free[this.freeCount++] = id;
+        }
+    }
+
+    /**
+     * Adds a row at the end of the table, growing the arrays if they are full.
+     * @return The new row.
+     */
+    private int grow() {
+        if (this.size == this.foods.length) {
+            int capacity = this.size * 2;
+            this.calories = Arrays.copyOf(this.calories, capacity);
+            this.fat = Arrays.copyOf(this.fat, capacity);
+            this.carbs = Arrays.copyOf(this.carbs, capacity);
+            this.protein = Arrays.copyOf(this.protein, capacity);
+            this.generations = Arrays.copyOf(this.generations, capacity);
+            this.foods = Arrays.copyOf(this.foods, capacity);
+        }
+        return this.size++;
+    }
+
+    /**
+     * Writes one of the nutrients of a food. Done here, under the lock of the table, so the write cannot be lost to
+     * the arrays growing at the same time.
+     * @param food The food.
+     * @param row The row the food was last seen at.
+     * @param nutrient The nutrient.
+     * @param value The new value.
+     * @return True if the value was written, false if the food has since moved and the write has to be tried again.
+     */
+    synchronized boolean set(BasicFood food, Row row, Nutrient nutrient, double value) {
+        if (food.getRow() != row) {
+            return false;
+        }
+        this.column(nutrient)[row.id] = value;
+        return true;
+    }
+
+    /**
+     * Returns the row of a food.
+     * @param food The food.
+     * @return The row, or -1 if the food is not in the table.
+     */
+    int idOf(BasicFood food) {
+        Row row = food.getRow();
+        return row != null && row.table == this ? row.id : -1;
+    }
+
+    /**
+     * Returns the number of rows in the table, including the ones that have been given back.
+     * @return The number of rows.
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of foods in the catalog.
+     * @return The number of listed rows.
+     */
+    public synchronized int count() {
+        return this.listed.cardinality();
+    }
+
+    /**
+     * Adds up the nutrients of every food in the catalog.
+     * @return The sum of one serving of every listed food.
+     */
+    public synchronized NutrientVector total() {
+        double totalCalories = 0;
+        double totalFat = 0;
+        double totalCarbs = 0;
+        double totalProtein = 0;
+        for (int id = this.listed.nextSetBit(0); id >= 0; id = this.listed.nextSetBit(id + 1)) {
+            totalCalories += this.calories[id];
+            totalFat += this.fat[id];
+            totalCarbs += this.carbs[id];
+            totalProtein += this.protein[id];
+        }
+        return new NutrientVector(totalCalories, totalFat, totalCarbs, totalProtein);
+    }
+
+    /**
+     * Finds the foods in the catalog that have the most of a nutrient per serving.
+     * @param nutrient The nutrient to rank by.
+     * @param count The most foods to return.
+     * @return The foods, starting with the one that has the most.
+     * @throws InvalidParameterException Thrown if the nutrient is not one that foods have.
+     */
+    public synchronized List<BasicFood> top(Nutrient nutrient, int count) throws InvalidParameterException {
+        double[] column = this.column(nutrient);
+        ArrayList<BasicFood> top = new ArrayList<>();
+        if (count <= 0) {
+            return top;
+        }
+
+        // Holds the best rows seen so far, with the worst of them at the head. Ties go to the earlier row.
+        PriorityQueue<Integer> best = new PriorityQueue<>(count, (a, b) ->
+                column[a] != column[b] ? Double.compare(column[a], column[b]) : Integer.compare(b, a));
+        for (int id = this.listed.nextSetBit(0); id >= 0; id = this.listed.nextSetBit(id + 1)) {
+            if (best.size() < count) {
+                best.add(id);
+            } else if (column[id] > column[best.peek()]) {
+                best.poll();
+                best.add(id);
+            }
+        }
+        while (!best.isEmpty()) {
+            top.add(this.foods[best.poll()]);
+        }
+        Collections.reverse(top);
+        return top;
+    }
+
+    /**
+     * Returns the array a nutrient is kept in.
+     * @param nutrient The nutrient.
+     * @return The array.
+     * @throws InvalidParameterException Thrown if the nutrient is not one that foods have.
+     */
+    private double[] column(Nutrient nutrient) throws InvalidParameterException {
+        switch (nutrient) {
+            case CALORIES:
+                return this.calories;
+            case FAT:
+                return this.fat;
+            case CARBS:
+                return this.carbs;
+            case PROTEIN:
+                return this.protein;
+            default:
+                throw new InvalidParameterException("Foods do not have " + nutrient + ".");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package DietManager.Model.Food;
+
+/**
+ * The calories, fat, carbs and protein of a serving of food, as a single immutable value.
+ * Recipes build their totals out of these so that the totals can be worked out once and shared.
+ */
+public final class NutrientVector {
+
+    public static final NutrientVector ZERO = new NutrientVector(0, 0, 0, 0);
+
+    private final double calories;
+    private final double fat;
+    private final double carbs;
+    private final double protein;
+
+    /**
+     * Creates a nutrient vector.
+     * @param calories The calories.
+     * @param fat The fat.
+     * @param carbs The carbs.
+     * @param protein The protein.
+     */
+    public NutrientVector(double calories, double fat, double carbs, double protein) {
+        this.calories = calories;
+        this.fat = fat;
+        this.carbs = carbs;
+        this.protein = protein;
+    }
+
+    /**
+     * Accessor for calories.
+     * @return The calories.
+     */
+    public double getCalories() {
+        return this.calories;
+    }
+
+    /**
+     * Accessor for fat.
+     * @return The fat.
+     */
+    public double getFat() {
+        return this.fat;
+    }
+
+    /**
+     * Accessor for carbs.
+     * @return The carbs.
+     */
+    public double getCarbs() {
+        return this.carbs;
+    }
+
+    /**
+     * Accessor for protein.
+     * @return The protein.
+     */
+    public double getProtein() {
+        return this.protein;
+    }
+
+    /**
+     * Adds a number of servings of another vector to this one.
+     * @param other The nutrients of one serving.
+     * @param servings The number of servings to add.
+     * @return A new vector holding the sum.
+     */
+    public NutrientVector plus(NutrientVector other, double servings) {
+        return new NutrientVector(
+                this.calories + other.calories * servings,
+                this.fat + other.fat * servings,
+                this.carbs + other.carbs * servings,
+                this.protein + other.protein * servings);
+    }
+}
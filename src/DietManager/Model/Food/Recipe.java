@@ -5,6 +5,7 @@ import javafx.util.Pair;
 import java.lang.reflect.Array;
 import java.security.InvalidParameterException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 /**
@@ -15,6 +16,40 @@ public class Recipe extends Food {
 
     // Data structure to store what composes this recipe.
     private ArrayList<Pair<Food,Double>> ingredients = new ArrayList<>();
+    // The table the recipe is compiled against, or null to always walk the ingredients. See getNutrients.
+    private volatile FoodTable table;
+    // What has been worked out about the recipe so far. Replaced as a whole, see getNutrients.
+    private final AtomicReference<Memo> memo = new AtomicReference<>(new Memo(0, null, 0, null));
+
+    /**
+     * The totals and compiled form of a recipe, together with the generation of the recipe they were worked out for.
+     * Invalidating the recipe replaces the memo with an empty one of the next generation, so a thread that was still
+     * working from the old ingredients cannot store its result over it.
+     */
+    private static final class Memo {
+
+        final long generation;
+        // The totals of the ingredients, or null until they are needed.
+        final NutrientVector totals;
+        // How many nutrients of basic foods had been written when the totals were worked out.
+        final long writes;
+        // The recipe flattened over the table, or null until it is needed.
+        final CompiledRecipe compiled;
+
+        /**
+         * Creates a memo.
+         * @param generation How many times the recipe had been invalidated.
+         * @param totals The totals, or null.
+         * @param writes The count of written nutrients the totals were worked out at.
+         * @param compiled The compiled recipe, or null.
+         */
+        Memo(long generation, NutrientVector totals, long writes, CompiledRecipe compiled) {
+            this.generation = generation;
+            this.totals = totals;
+            this.writes = writes;
+            this.compiled = compiled;
+        }
+    }
 
     /**
      * Creates a new Recipe.
@@ -27,6 +62,125 @@ public class Recipe extends Food {
         this.ingredients = ingredients;
     }
 
+    /**
+     * Returns the foods that make up the recipe and the servings of each.
+     * @return A read-only view of the ingredients, in the order they were added.
+     */
+    public List<Pair<Food,Double>> getIngredients() {
+        return Collections.unmodifiableList(this.ingredients);
+    }
+
+    /**
+     * Returns the totals of the recipe, working them out the first time they are needed.
+     * When the recipe is attached to a FoodTable, it is first flattened into the basic foods it is made of, so the
+     * totals are a single pass over the table however deeply the recipes are nested. Otherwise, nested recipes keep
+     * their own totals, so each recipe is only ever walked once until it is invalidated.
+     * The totals are worked out again once a nutrient of any basic food has been written since, and are only kept if
+     * the recipe was not invalidated while they were being worked out.
+     * @return The nutrients of one serving of the recipe.
+     */
+    @Override
+    public NutrientVector getNutrients() {
+        Memo memo = this.memo.get();
+        long writes = BasicFood.writes();
+        if (memo.totals != null && memo.writes == writes) {
+            return memo.totals;
+        }
+
+        FoodTable table = this.table;
+        CompiledRecipe compiled = table == null ? null : this.compiled(table, memo);
+        NutrientVector totals = compiled == null ? null : compiled.evaluate();
+        if (totals == null) {
+            totals = NutrientVector.ZERO;
+            for (Pair<Food,Double> food : ingredients) {
+                totals = totals.plus(food.getKey().getNutrients(), food.getValue());
+            }
+        }
+        this.memo.compareAndSet(memo, new Memo(memo.generation, totals, writes, compiled));
+        return totals;
+    }
+
+    /**
+     * Attaches the recipe to the table it is compiled against. Called by FoodHandler when the recipe is added.
+     * @param table The table, or null to detach the recipe.
+     */
+    public void setTable(FoodTable table) {
+        this.table = table;
+        this.invalidate();
+    }
+
+    /**
+     * Returns the recipe flattened over a table, compiling it the first time it is needed.
+     * @param table The table to compile against.
+     * @return The compiled recipe, or null if the recipe cannot be flattened.
+     */
+    CompiledRecipe compiled(FoodTable table) {
+        Memo memo = this.memo.get();
+        CompiledRecipe compiled = this.compiled(table, memo);
+        if (compiled != memo.compiled && this.table == table) {
+            this.memo.compareAndSet(memo, new Memo(memo.generation, memo.totals, memo.writes, compiled));
+        }
+        return compiled;
+    }
+
+    /**
+     * Returns the compiled recipe of a memo if it can still be used, or compiles the recipe again without storing it.
+     * @param table The table to compile against.
+     * @param memo The memo read before.
+     * @return The compiled recipe, or null if the recipe cannot be flattened.
+     */
+    private CompiledRecipe compiled(FoodTable table, Memo memo) {
+        CompiledRecipe compiled = memo.compiled;
+        if (compiled == null || this.table != table || !compiled.isCurrent()) {
+            compiled = CompiledRecipe.compile(this, table);
+        }
+        return compiled;
+    }
+
+    /**
+     * Drops the stored totals and compiled form so that they are worked out again the next time they are needed.
+     * Called by FoodHandler when an ingredient of the recipe, or of a recipe inside it, is replaced or removed.
+     * Changing a basic food through its own setters does not need this, the recipe notices it by itself.
+     */
+    public void invalidate() {
+        this.memo.getAndUpdate(memo -> new Memo(memo.generation + 1, null, 0, null));
+    }
+
+    /**
+     * Tests if the recipe uses a food, either directly or through one of the recipes it is made from.
+     * @param food The food to look for.
+     * @return True if the food is one of the ingredients, at any depth.
+     */
+    public boolean uses(Food food) {
+        for (Pair<Food,Double> ingredient : ingredients) {
+            Food used = ingredient.getKey();
+            if (used == food || used instanceof Recipe && ((Recipe) used).uses(food)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Swaps one ingredient for another, keeping the servings. Only direct ingredients are swapped.
+     * @param previous The ingredient to replace.
+     * @param replacement The food to use instead.
+     * @return True if the recipe used the ingredient.
+     */
+    public boolean replaceIngredient(Food previous, Food replacement) {
+        boolean replaced = false;
+        for (int i = 0; i < ingredients.size(); i++) {
+            if (ingredients.get(i).getKey() == previous) {
+                ingredients.set(i, new Pair<>(replacement, ingredients.get(i).getValue()));
+                replaced = true;
+            }
+        }
+        if (replaced) {
+            this.invalidate();
+        }
+        return replaced;
+    }
+
     /**
      * Returns the total calories in the recipe as a function of the food calories per serving
      * calories and the servings of that food in this recipe.
@@ -34,11 +188,7 @@ public class Recipe extends Food {
      */
     @Override
     public double getCalories(){
-        this.calories = 0;
-        for (Pair<Food,Double> food : ingredients) {
-            this.calories+= food.getKey().getCalories() * food.getValue();
-        }
-        return this.calories;
+        return this.getNutrients().getCalories();
     }
 
     /**
@@ -48,11 +198,7 @@ public class Recipe extends Food {
      */
     @Override
     public double getFat(){
-        this.fat = 0;
-        for (Pair<Food,Double> food : ingredients) {
-            this.fat += food.getKey().getFat() * food.getValue();
-        }
-        return this.fat;
+        return this.getNutrients().getFat();
     }
 
     /**
@@ -62,11 +208,7 @@ public class Recipe extends Food {
      */
     @Override
     public double getCarbs(){
-        this.carbs = 0;
-        for (Pair<Food,Double> food : ingredients) {
-            this.carbs += food.getKey().getCarbs() * food.getValue();
-        }
-        return this.carbs;
+        return this.getNutrients().getCarbs();
     }
 
     /**
@@ -76,12 +218,9 @@ public class Recipe extends Food {
      */
     @Override
     public double getProtein(){
-        this.protein = 0;
-        for (Pair<Food,Double> food : ingredients) {
-            this.protein += food.getKey().getProtein() * food.getValue();
-        }
-        return this.protein;
+        return this.getNutrients().getProtein();
     }
+
     /**
      * Returns a string that is a CSV representations of the object.
      *
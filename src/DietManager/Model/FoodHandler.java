@@ -1,30 +1,93 @@
 package DietManager.Model;
 
+import DietManager.Model.Entry.Nutrient;
 import DietManager.Model.Food.BasicFood;
 import DietManager.Model.Food.Food;
+import DietManager.Model.Food.FoodTable;
+import DietManager.Model.Food.NutrientVector;
 import DietManager.Model.Food.Recipe;
+import DietManager.Model.Util.BackgroundSaver;
+import DietManager.Model.Util.BatchedObservable;
+import DietManager.Model.Util.BinarySnapshot;
+import DietManager.Model.Util.CSVTokenizer;
+import DietManager.Model.Util.ILineVisitor;
 import DietManager.Model.Util.IOHandler;
+import DietManager.Model.Util.Journal;
+import DietManager.Model.Util.ModelLock;
+import DietManager.Model.Util.NameIndex;
+import DietManager.Model.Util.NameTable;
 import javafx.util.Pair;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
 import java.security.InvalidParameterException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Observable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 
 /**
  * This class handles all interaction with the dal for food objects.
  * Food can be loaded, updated, deleted or added here.
  */
-public class FoodHandler extends Observable {
+public class FoodHandler extends BatchedObservable<String, Food> {
+
+    // The number of journal records after which the journal is folded back into the food file.
+    private static final int COMPACT_AFTER = 500;
+    // Tags the binary snapshot of the food file.
+    private static final char SNAPSHOT_KIND = 'f';
 
     private File file;
+    private boolean journaling;
+    private Journal journal;
+    private BackgroundSaver saver;
+    private boolean snapshots;
+    // True while the binary snapshot next to the file matches it.
+    private volatile boolean snapshotCurrent;
+    // Bumped by every change, save compares it with the version that was last written to the file.
+    private long version;
+    private volatile long savedVersion;
+    // Set when a change could not be journaled, so the next save has to rewrite the whole file.
+    private boolean journalBehind;
     private IOHandler io;
     private FoodFactory factory;
-    private HashMap<String, Food> foodStorage;
+    // Kept in insertion order so that recipes are saved after the foods they are made from.
+    private LinkedHashMap<String, Food> foodStorage;
+    // The recipes that use each food directly, so that a change only visits the recipes it affects.
+    private IdentityHashMap<Food, Set<Recipe>> usedBy;
+    // Foods that have been deleted while recipes still use them, by name.
+    private HashMap<String, Food> dropped;
+    // The names of the stored foods, for searching.
+    private NameIndex index;
+    // Gives every name a food has been stored under an id, and the stored food by that id.
+    private NameTable names;
+    private ArrayList<Food> byId;
+    // Keeps the nutrients of the basic foods, which stored recipes are compiled against.
+    private FoodTable table;
+    // True while foods are being read in bulk, which are not journaled one by one.
+    private boolean bulk;
+    // The names stored while in bulk, which are added to the name index all at once when it ends.
+    private ArrayList<String> unindexed;
+    // The recipes whose nutrients changed because an ingredient did, since they were last handed to the listener.
+    private final ArrayList<Recipe> changedRecipes = new ArrayList<>();
+    private Consumer<Collection<Recipe>> recipeListener;
+    // Guards everything above, see ModelLock.
+    private final ModelLock lock = new ModelLock(this, this::recipesChanged);
 
     /**
      * Creates an object that can be used to interact with the food that is in the dal.
@@ -33,72 +96,420 @@ public class FoodHandler extends Observable {
     public FoodHandler(IOHandler io) {
         this.io = io;
         this.factory = new FoodFactory();
-        this.foodStorage = new HashMap<>();
+        this.foodStorage = new LinkedHashMap<>();
+        this.usedBy = new IdentityHashMap<>();
+        this.dropped = new HashMap<>();
+        this.table = new FoodTable();
+        this.index = new NameIndex();
+        this.names = new NameTable();
+        this.byId = new ArrayList<>();
+        this.unindexed = new ArrayList<>();
+    }
+
+    /**
+     * Turns journaling on or off for the next load. While journaling, every change is appended to a journal
+     * next to the loaded food file instead of waiting for the whole file to be saved.
+     * @param journaling True to journal changes.
+     */
+    public void setJournaling(boolean journaling) {
+        this.journaling = journaling;
+    }
+
+    /**
+     * Turns binary snapshots on or off. While on, every save also writes a binary copy of the food file, and
+     * loading reads that copy instead of the csv as long as the csv has not changed since.
+     * @param snapshots True to read and write binary snapshots.
+     */
+    public void setBinarySnapshots(boolean snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Sets who is told about recipes whose nutrients change because one of their ingredients is updated, replaced or
+     * deleted. The recipe objects stay the same, so anything that keeps totals of them has to work them out again.
+     * The listener is called on the thread that made the change, once the FoodHandler is no longer locked.
+     * @param listener Told about the recipes that changed, or null.
+     */
+    void setRecipeListener(Consumer<Collection<Recipe>> listener) {
+        this.recipeListener = listener;
     }
 
     /**
      * Loads food objects from a provided csv formatted file.
+     * If binary snapshots are on and the snapshot is up to date, it is read instead of the csv.
+     * If journaling is on, any changes journaled since the file was last saved are applied on top of it.
+     * Observers are notified once, after everything has been read.
      * @param file The file that will be read and used to create our food objects.
      * @throws InvalidParameterException This is thrown if the provided log file contains errors.
      * @throws IOException This is thrown if the provided file cannot be read from.
      */
     public void load(File file) throws InvalidParameterException, IOException {
-        try {
-            ArrayList<String> rawFoods = io.readFromFile(file);
-            for(String rawFood : rawFoods) {
-                try {
-                    Food food = factory.makeFood(rawFood);
-                    if( food != null) {
-                        add(food);
+        this.lock.write(() -> {
+            boolean fromSnapshot = false;
+            this.beginBatch();
+            this.trackAll();
+            this.bulk = true;
+            try {
+                DataInputStream snapshot = this.snapshots ? BinarySnapshot.open(file, SNAPSHOT_KIND) : null;
+                fromSnapshot = snapshot != null && this.loadSnapshot(snapshot);
+                if (!fromSnapshot) {
+                    // Recipes that come before one of their ingredients wait for it, keyed by the name they wait for.
+                    HashMap<String, ArrayList<String>> waiting = new HashMap<>();
+                    io.readFromFile(file, rawFood -> this.loadRow(rawFood, waiting, this::add, (row, ipe) -> {
+                        throw ipe;
+                    }));
+                    if (!waiting.isEmpty()) {
+                        throw new InvalidParameterException("Food required for recipe does not exist.");
                     }
-                } catch (InvalidParameterException ipe) {
-                    throw ipe;
                 }
+                if (file != null) {
+                    this.file = file;
+                }
+                if (this.journaling) {
+                    // The journal is only assigned after replaying so that replayed records are not journaled again.
+                    Journal journal = Journal.forFile(file);
+                    journal.replay(io, this::replay);
+                    this.journal = journal;
+                }
+            } catch (IOException io) {
+                throw io;
+            } finally {
+                this.endBulk();
+                this.massNotify();
+                // Observers hear about the whole file at once instead of once per food.
+                this.endBatch();
             }
-            if (file != null) {
-                this.file = file;
+            // Whatever was read is either in the file or in its journal already.
+            this.savedVersion = this.version;
+            this.journalBehind = false;
+            this.snapshotCurrent = fromSnapshot;
+            return null;
+        });
+    }
+
+    /**
+     * Adds a row of the food file, or holds it back if it is a recipe that uses a food that has not been read yet.
+     * Adding a food releases the recipes that were waiting for it, so rows can come in any order as long as every
+     * ingredient is somewhere in the file. Recipes that are still waiting at the end use a food that does not exist,
+     * or are made from each other.
+     * @param rawFood The row.
+     * @param waiting The rows held back so far, by the name of the food they are waiting for.
+     * @param store Stores a food that was read.
+     * @param reject Handles a row, the given one or one it released, that is not a valid food or could not be stored.
+     */
+    private void loadRow(CharSequence rawFood, Map<String, ArrayList<String>> waiting, Consumer<Food> store,
+                         BiConsumer<CharSequence, InvalidParameterException> reject) {
+        ArrayDeque<CharSequence> ready = new ArrayDeque<>();
+        ready.add(rawFood);
+        while (!ready.isEmpty()) {
+            CharSequence row = ready.poll();
+            String missing = factory.missingIngredient(row);
+            if (missing != null) {
+                waiting.computeIfAbsent(missing, name -> new ArrayList<>()).add(row.toString());
+                continue;
+            }
+            Food food;
+            try {
+                food = factory.makeFood(row);
+                if (food == null) {
+                    continue;
+                }
+                store.accept(food);
+            } catch (InvalidParameterException ipe) {
+                reject.accept(row, ipe);
+                continue;
+            }
+            ArrayList<String> released = waiting.remove(food.getName());
+            if (released != null) {
+                ready.addAll(released);
             }
-        } catch (IOException io) {
-            throw io;
         }
     }
 
+    /**
+     * Imports every food in a csv file, such as a reference catalog, on top of the foods that are stored already.
+     * See importFoods(Reader, ConflictPolicy, IImportProgress).
+     * @param file The file to import.
+     * @param policy What to do with a food whose name is already stored.
+     * @param progress Told about every batch of rows, or null.
+     * @return What was done with the rows.
+     * @throws InvalidParameterException Thrown if the policy is FAIL and a food is already stored.
+     * @throws IOException Thrown if the file cannot be read.
+     */
+    public ImportResult importFoods(File file, ConflictPolicy policy, IImportProgress progress)
+            throws InvalidParameterException, IOException {
+        Import session = new Import(policy, progress);
+        try {
+            io.readFromFile(file, session);
+        } finally {
+            session.finish();
+        }
+        return session.result;
+    }
+
+    /**
+     * Imports every food in a stream of csv rows on top of the foods that are stored already.
+     * Rows are stored as they are read, so the catalog never has to fit in memory as text, and recipes may come
+     * before their ingredients the same way as in load. Nothing is journaled and observers are not told about each
+     * row: they are notified once at the end, and the next save rewrites the whole food file.
+     * Rows that are not valid foods, and recipes whose ingredients never turn up, are rejected and counted without
+     * stopping the import.
+     * @param reader The rows to import, read until it ends.
+     * @param policy What to do with a food whose name is already stored.
+     * @param progress Told about every batch of rows, or null.
+     * @return What was done with the rows.
+     * @throws InvalidParameterException Thrown if the policy is FAIL and a food is already stored. The rows before it
+     * stay imported.
+     * @throws IOException Thrown if the reader fails.
+     */
+    public ImportResult importFoods(Reader reader, ConflictPolicy policy, IImportProgress progress)
+            throws InvalidParameterException, IOException {
+        Import session = new Import(policy, progress);
+        try {
+            io.readFromReader(reader, session);
+        } finally {
+            session.finish();
+        }
+        return session.result;
+    }
+
     /**
      * Saves food objects to a specified file.
+     * Saving to the file the foods were loaded from is the same as save(), any other file is always written.
      * @param file The file that the food items will be written to.
      * @throws IOException Thrown in the instance that the file provided cannot be written to.
      */
     public void save(File file) throws IOException {
+        this.lock.write(() -> {
+            if (file.equals(this.file)) {
+                this.save();
+                return null;
+            }
+
+            try {
+                this.awaitBackgroundSave();
+                io.writeToFile(getAllCSVAble(), file);
+                this.writeSnapshot(file, this.encodeSnapshot());
+            } catch (IOException ioe) {
+                throw ioe;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Saves food objects to the file they were loaded from.
+     * Nothing is written if nothing changed since the last save, or if every change is already in the journal and
+     * the journal is still small.
+     * @throws IOException Thrown in the instance that the file provided cannot be written to.
+     */
+    public void save() throws IOException {
+        this.lock.write(() -> {
+            if (this.file == null) {
+                return null;
+            }
+            try {
+                this.awaitBackgroundSave();
+                if (!this.isDirty()) {
+                    if (this.snapshots && !this.snapshotCurrent && (this.journal == null || this.journal.size() == 0)) {
+                        // Nothing changed, but the file has no snapshot yet.
+                        this.writeSnapshot(this.file, this.encodeSnapshot());
+                    }
+                    return null;
+                }
+                if (this.journal != null && !this.journalBehind && this.journal.size() < COMPACT_AFTER) {
+                    // The changes are already in the journal, which is replayed on load.
+                    this.savedVersion = this.version;
+                    return null;
+                }
+
+                long version = this.version;
+                io.writeToFile(getAllCSVAble(), this.file);
+                this.writeSnapshot(this.file, this.encodeSnapshot());
+                if (this.journal != null) {
+                    this.journal.truncate();
+                }
+                this.savedVersion = version;
+                this.journalBehind = false;
+            } catch (IOException ioe) {
+                throw ioe;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Returns if there are changes that have not been saved to the file the foods were loaded from.
+     * Changes that are only in the journal count as unsaved until the next save.
+     * @return True if save would have anything to do.
+     */
+    public boolean isDirty() {
+        return this.lock.read(() -> this.version != this.savedVersion);
+    }
+
+    /**
+     * Returns if the file has been set.
+     * @return True if the file has been set.
+     */
+    public boolean hasFile(){
+        return this.lock.peek(() -> this.file != null);
+    }
+
+    /**
+     * Sets the saver used by saveInBackground. Without one, saveInBackground saves on the calling thread.
+     * @param saver The saver that writes snapshots of the food file.
+     */
+    public void setSaver(BackgroundSaver saver) {
+        this.saver = saver;
+    }
+
+    /**
+     * Saves food objects to the file they were loaded from without waiting for the file to be written.
+     * A snapshot is taken on the calling thread and written by the saver, so the model can keep changing meanwhile.
+     * @throws IOException Thrown if the journal cannot be rotated, or if there is no saver and the file cannot be
+     * written to.
+     */
+    public void saveInBackground() throws IOException {
+        this.lock.write(() -> {
+            if (this.saver == null) {
+                this.save();
+                return null;
+            }
+            if (this.file == null) {
+                return null;
+            }
+            if (!this.isDirty() && (this.journal == null || this.journal.size() == 0)) {
+                return null;
+            }
+            long version = this.version;
+            Collection<String> lines = io.toLines(getAllCSVAble());
+            byte[] snapshot = this.encodeSnapshot();
+            File file = this.file;
+            Journal journal = this.journal;
+            // Records made after the snapshot go to a fresh journal, the rotated ones are dropped once it is written.
+            int generation = journal != null ? journal.rotate() : 0;
+            this.saver.save(file, lines, () -> {
+                this.writeSnapshot(file, snapshot);
+                if (journal != null) {
+                    journal.commit(generation);
+                }
+                this.savedVersion = version;
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Writes the binary snapshot of a csv file that has just been written.
+     * A snapshot that cannot be written is removed, so the next load reads the csv.
+     * @param file The csv file that was written.
+     * @param snapshot The encoded snapshot body, or null if there is none.
+     */
+    private void writeSnapshot(File file, byte[] snapshot) {
         try {
-            file.delete();
-            io.writeToFile(getAllCSVAble(), file);
+            if (snapshot != null) {
+                BinarySnapshot.write(io, file, SNAPSHOT_KIND, snapshot);
+                if (file.equals(this.file)) {
+                    this.snapshotCurrent = true;
+                }
+                return;
+            }
         } catch (IOException ioe) {
-            throw ioe;
+            // Fall through and drop the stale snapshot.
+        }
+        BinarySnapshot.discard(file);
+        if (file.equals(this.file)) {
+            this.snapshotCurrent = false;
         }
     }
 
     /**
-     * Saves food objects to a specified file.
-     * @throws IOException Thrown in the instance that the file provided cannot be written to.
+     * Encodes every food into a binary snapshot body. Foods are written in save order, so a recipe always comes after
+     * its ingredients and refers to them by their position instead of by name.
+     * @return The encoded body, or null if snapshots are off or a recipe refers to a food that is not stored.
      */
-    public void save() throws IOException {
-        if (this.file == null) {
-            return;
+    private byte[] encodeSnapshot() {
+        if (!this.snapshots) {
+            return null;
         }
-        try {
-            this.file.delete();
-            io.writeToFile(getAllCSVAble(), this.file);
+        ByteArrayOutputStream bytes = BinarySnapshot.newBody();
+        IdentityHashMap<Food, Integer> positions = new IdentityHashMap<>();
+        Collection<ICSVable> foods = getAllCSVAble();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(foods.size());
+            for (ICSVable item : foods) {
+                Food food = (Food) item;
+                if (food instanceof Recipe) {
+                    Collection<Pair<Food, Double>> ingredients = ((Recipe) food).getIngredients();
+                    out.writeChar('r');
+                    out.writeUTF(food.getName());
+                    out.writeInt(ingredients.size());
+                    for (Pair<Food, Double> ingredient : ingredients) {
+                        Integer position = positions.get(ingredient.getKey());
+                        if (position == null) {
+                            return null;
+                        }
+                        out.writeInt(position);
+                        out.writeDouble(ingredient.getValue());
+                    }
+                } else {
+                    out.writeChar('b');
+                    out.writeUTF(food.getName());
+                    out.writeDouble(food.getCalories());
+                    out.writeDouble(food.getFat());
+                    out.writeDouble(food.getCarbs());
+                    out.writeDouble(food.getProtein());
+                }
+                positions.put(food, positions.size());
+            }
         } catch (IOException ioe) {
-            throw ioe;
+            return null;
         }
+        return bytes.toByteArray();
     }
 
     /**
-     * Returns if the file has been set.
-     * @return True if the file has been set.
+     * Loads foods from a binary snapshot body.
+     * @param in The body, as returned by BinarySnapshot.open.
+     * @return True if the snapshot was loaded, false if it was damaged and the csv should be read instead.
      */
-    public boolean hasFile(){
-        return this.file == null;
+    private boolean loadSnapshot(DataInputStream in) {
+        Food[] foods;
+        try {
+            foods = new Food[in.readInt()];
+            for (int i = 0; i < foods.length; i++) {
+                char type = in.readChar();
+                String name = in.readUTF();
+                if (type == 'r') {
+                    int count = in.readInt();
+                    ArrayList<Pair<Food, Double>> recipeItems = new ArrayList<>(count);
+                    for (int j = 0; j < count; j++) {
+                        Food ingredient = foods[in.readInt()];
+                        recipeItems.add(new Pair<>(ingredient, in.readDouble()));
+                    }
+                    foods[i] = new Recipe(name, recipeItems);
+                } else if (type == 'b') {
+                    foods[i] = new BasicFood(name, in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+                } else {
+                    return false;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+        for (Food food : foods) {
+            add(food);
+        }
+        return true;
+    }
+
+    /**
+     * Waits for any background save to finish so that it cannot overwrite a newer synchronous save.
+     */
+    private void awaitBackgroundSave() {
+        if (this.saver != null) {
+            this.saver.flush();
+        }
     }
 
     /**
@@ -107,55 +518,133 @@ public class FoodHandler extends Observable {
      * @return True if the operation was successful.
      */
     public boolean add(Food food) {
-        foodStorage.putIfAbsent(food.getName(), food);
-        this.massNotify();
-        return hasFood(food);
+        return this.lock.write(() -> {
+            if (foodStorage.putIfAbsent(food.getName(), food) == null) {
+                this.list(food);
+                this.link(food);
+                this.recordAdd(food);
+            }
+            this.massNotify();
+            return hasFood(food);
+        });
     }
 
     /**
-     * Adds a food object to the foodHandler
+     * Adds a food object to the foodHandler, replacing any food with the same name.
      * @param rawCSV a food CSV string
      * @return True if the operation was successful.
+     * @throws InvalidParameterException Thrown if the food is a recipe that would end up containing itself.
      */
-    public boolean add(String rawCSV) {
-        Food food = factory.makeFood(rawCSV);
-        foodStorage.put(food.getName(),food);
-        this.massNotify();
-        return hasFood(food);
+    public boolean add(String rawCSV) throws InvalidParameterException {
+        return this.lock.write(() -> {
+            Food food = factory.makeFood(rawCSV);
+            this.insert(food);
+            this.massNotify();
+            return hasFood(food);
+        });
     }
 
     /**
      * Returns a unordered collection all of the food that is in the dal.
-     * This does not remove the food from the model. Data duplication is possible, be smart here.
+     * This is a copy taken when it is called, so it can be read while the model changes. The foods in it are not
+     * copied, be smart here.
      * @return All of the food objects that are in the food storage.
      */
     public Collection<Food> getAll() {
-        return foodStorage.values();
+        return this.lock.read(() -> new ArrayList<>(foodStorage.values()));
+    }
+
+    /**
+     * Finds the foods whose names best match what the user typed, ignoring case. A food matches if its name, or a word
+     * in it, starts with the query, allowing for a typo or two in longer queries.
+     * @param query What the user typed.
+     * @param count The most foods to return.
+     * @return The matching foods, best first.
+     */
+    public List<Food> search(String query, int count) {
+        return this.lock.read(() -> {
+            ArrayList<Food> found = new ArrayList<>();
+            for (String name : index.search(query, count)) {
+                found.add(foodStorage.get(name));
+            }
+            return found;
+        });
+    }
+
+    /**
+     * Returns the average nutrients of a serving of a basic food, across every basic food in the dal.
+     * Worked out from the table the nutrients are kept in rather than by visiting each food.
+     * @return The average nutrients, or all zeroes if there are no basic foods.
+     */
+    public NutrientVector getAverage() {
+        return this.lock.read(() -> {
+            int count = table.count();
+            NutrientVector total = table.total();
+            if (count == 0) {
+                return NutrientVector.ZERO;
+            }
+            return NutrientVector.ZERO.plus(total, 1.0 / count);
+        });
+    }
+
+    /**
+     * Returns the basic foods that have the most of a nutrient per serving.
+     * @param nutrient The nutrient to rank by.
+     * @param count The most foods to return.
+     * @return The foods, starting with the one that has the most.
+     * @throws InvalidParameterException Thrown if the nutrient is not one that foods have.
+     */
+    public List<BasicFood> top(Nutrient nutrient, int count) throws InvalidParameterException {
+        return this.lock.read(() -> table.top(nutrient, count));
     }
 
     /**
      * Returns a ordered collection all of the food that is in the dal with the BasicFoods first and Recipes last.
+     * Recipes are in dependency order, every recipe comes after the recipes it is made from, so the foods can be
+     * read back in a single pass.
      * This does not remove the food from the model. Data duplication is possible, be smart here.
      * @return All of the food objects that are in the food storage ordered by BasicFoods then Recipes.
      */
     Collection<ICSVable> getAllCSVAble() {
-        ArrayList<Food> foods = new ArrayList<>(foodStorage.values());
-        ArrayList<ICSVable> output = new ArrayList<>();
+        return this.lock.read(() -> {
+            ArrayList<ICSVable> output = new ArrayList<>();
+            Set<Food> placed = Collections.newSetFromMap(new IdentityHashMap<>());
 
-        //Put foods in first
-        for(Food food: foods) {
-            if (food instanceof BasicFood) {
-                output.add(food);
+            //Put foods in first
+            for(Food food: foodStorage.values()) {
+                if (food instanceof BasicFood) {
+                    output.add(food);
+                    placed.add(food);
+                }
             }
-        }
 
-        //Put recipes at the end.
-        for(Food food: foods) {
-            if (food instanceof Recipe) {
-                output.add(food);
+            //Put recipes at the end, each after the stored recipes it uses.
+            for(Food food: foodStorage.values()) {
+                if (food instanceof Recipe) {
+                    this.place((Recipe) food, placed, output);
+                }
+            }
+            return output;
+        });
+    }
+
+    /**
+     * Adds a recipe to the save order after the stored recipes it is made from.
+     * @param recipe The recipe to place.
+     * @param placed The foods that have been placed already.
+     * @param output The save order.
+     */
+    private void place(Recipe recipe, Set<Food> placed, List<ICSVable> output) {
+        if (!placed.add(recipe)) {
+            return;
+        }
+        for (Pair<Food, Double> ingredient : recipe.getIngredients()) {
+            Food food = ingredient.getKey();
+            if (food instanceof Recipe && foodStorage.get(food.getName()) == food) {
+                this.place((Recipe) food, placed, output);
             }
         }
-        return output;
+        output.add(recipe);
     }
 
     /**
@@ -164,7 +653,34 @@ public class FoodHandler extends Observable {
      * @return The food object in the dal. Returns null if not found.
      */
     public Food get(Food food) {
-        return foodStorage.get(food.getName());
+        return this.lock.read(() -> foodStorage.get(food.getName()));
+    }
+
+    /**
+     * Returns the id of a food's name. A name keeps its id for as long as the FoodHandler exists, even if the food is
+     * deleted and added again.
+     * @param food The name of the food.
+     * @return The id, or -1 if no food has been stored under the name.
+     */
+    public int idOf(String food) {
+        return names.find(food);
+    }
+
+    /**
+     * Returns the food stored under a name id.
+     * @param id The id of the name, as returned by idOf.
+     * @return The food, or null if there is none.
+     */
+    public Food get(int id) {
+        return this.lock.peek(() -> id >= 0 && id < byId.size() ? byId.get(id) : null);
+    }
+
+    /**
+     * Returns the table that gives food names their ids, for looking names up while parsing.
+     * @return The table.
+     */
+    NameTable getNames() {
+        return names;
     }
 
     /**
@@ -173,7 +689,7 @@ public class FoodHandler extends Observable {
      * @return The food object in the storage. Returns null if not found.
      */
     public Food get(String food) {
-        return foodStorage.get(food);
+        return this.lock.read(() -> foodStorage.get(food));
     }
 
     /**
@@ -182,7 +698,7 @@ public class FoodHandler extends Observable {
      * @return True if the food is present in the dal.
      */
     public boolean hasFood(Food food) {
-        return foodStorage.containsKey(food.getName());
+        return this.lock.read(() -> foodStorage.containsKey(food.getName()));
     }
 
     /**
@@ -191,49 +707,432 @@ public class FoodHandler extends Observable {
      * @return Returns true if the food object was in the model.
      */
     public boolean hasFood(String food) {
-        return foodStorage.containsKey(food);
+        return this.lock.read(() -> foodStorage.containsKey(food));
     }
 
     /**
      * Deletes Food from the model.
+     * Recipes that were made with the food keep it, until a food with the same name is added.
      * @param food The food name that needs to be removed from the model.
      * @return True if the operation was successful.
      */
     public boolean delete(String food) {
-        foodStorage.remove(food);
-        this.massNotify();
-        return !hasFood(food);
+        return this.lock.write(() -> {
+            this.remove(food);
+            this.massNotify();
+            return !hasFood(food);
+        });
     }
 
     /**
      * Deletes Food from the model.
+     * Recipes that were made with the food keep it, until a food with the same name is added.
      * @param food The food name that needs to be removed from the model.
      * @return True if the operation was successful.
      */
     public boolean delete(Food food) {
-        foodStorage.remove(food.getName());
-        this.massNotify();
-        return !hasFood(food);
+        return this.lock.write(() -> {
+            this.remove(food.getName());
+            this.massNotify();
+            return !hasFood(food);
+        });
     }
 
     /**
      * Updates a food
+     * Recipes made with the old food are made with the new one from now on, as long as the name stays the same.
      * @param name name of the food to be updated
      * @param newFood updated food CSV string
      * @return success true if update is successful
+     * @throws InvalidParameterException Thrown if the food is a recipe that would end up containing itself.
      */
-    public boolean update(String name,String newFood){
-        boolean success = delete(name) && add(newFood);
-        this.massNotify();
-        return success;
+    public boolean update(String name,String newFood) throws InvalidParameterException {
+        return this.lock.write(() -> {
+            Food food = factory.makeFood(newFood);
+            this.checkCycle(foodStorage.get(name), food);
+            this.remove(name);
+            this.insert(food);
+            this.massNotify();
+            return hasFood(food);
+        });
+    }
+
+    /**
+     * Stores a food, replacing any food with the same name. A food with the same name that was deleted while recipes
+     * still used it is replaced as well, so recipes always end up made with the food their csv names.
+     * @param food The food to store.
+     * @throws InvalidParameterException Thrown if the food is a recipe that would end up containing itself.
+     */
+    private void insert(Food food) throws InvalidParameterException {
+        Food previous = foodStorage.get(food.getName());
+        if (previous == null) {
+            previous = dropped.get(food.getName());
+        }
+        this.checkCycle(previous, food);
+
+        if (foodStorage.put(food.getName(), food) != null) {
+            this.unlist(previous);
+            this.unlink(previous);
+        }
+        this.list(food);
+        dropped.remove(food.getName());
+        this.link(food);
+        if (previous != null) {
+            this.replaced(previous, food);
+        }
+        this.recordAdd(food);
+    }
+
+    /**
+     * Removes a food from storage. Recipes that use it keep it, so it is remembered until a food with the same name
+     * takes its place.
+     * @param name The name of the food.
+     */
+    private void remove(String name) {
+        Food removed = foodStorage.remove(name);
+        if (removed == null) {
+            return;
+        }
+        this.unlist(removed);
+        this.unlink(removed);
+        if (usedBy.containsKey(removed)) {
+            dropped.put(name, removed);
+            this.invalidateUsers(removed);
+        }
+        this.record("x," + name);
+    }
+
+    /**
+     * Makes sure that replacing a food cannot make a recipe contain itself.
+     * @param previous The food being replaced, or null.
+     * @param replacement The food replacing it.
+     * @throws InvalidParameterException Thrown if the replacement is made from the food it replaces, at any depth.
+     */
+    private void checkCycle(Food previous, Food replacement) throws InvalidParameterException {
+        if (previous != null && replacement instanceof Recipe && ((Recipe) replacement).uses(previous)) {
+            throw new InvalidParameterException("Recipe cannot be made from itself.");
+        }
+    }
+
+    /**
+     * Adds a stored food to the name index and the id table. A basic food is also moved into the nutrient table and
+     * added to the catalog.
+     * @param food The food that was stored.
+     */
+    private void list(Food food) {
+        if (this.bulk) {
+            unindexed.add(food.getName());
+        } else {
+            index.add(food.getName());
+        }
+        int id = names.intern(food.getName());
+        while (byId.size() <= id) {
+            byId.add(null);
+        }
+        this.track(food.getName(), byId.set(id, food), food);
+        if (food instanceof BasicFood) {
+            table.adopt((BasicFood) food);
+        }
+    }
+
+    /**
+     * Leaves bulk mode, adding the names stored meanwhile to the name index. Names that were removed again before the
+     * end are left out.
+     */
+    private void endBulk() {
+        this.bulk = false;
+        ArrayList<String> stored = new ArrayList<>(unindexed.size());
+        for (String name : unindexed) {
+            if (foodStorage.containsKey(name)) {
+                stored.add(name);
+            }
+        }
+        unindexed = new ArrayList<>();
+        index.addAll(stored);
+    }
+
+    /**
+     * Takes a food that is no longer stored out of the name index, the id table and the catalog. A basic food gives
+     * its row of the nutrient table back and keeps its nutrients itself.
+     * @param food The food that was removed or replaced.
+     */
+    private void unlist(Food food) {
+        index.remove(food.getName());
+        byId.set(names.find(food.getName()), null);
+        this.track(food.getName(), food, null);
+        if (food instanceof BasicFood) {
+            table.release((BasicFood) food);
+        }
+    }
+
+    /**
+     * Records a stored recipe as a user of each of its ingredients, and attaches it to the table it is compiled
+     * against.
+     * @param food The food that was stored.
+     */
+    private void link(Food food) {
+        if (food instanceof Recipe) {
+            ((Recipe) food).setTable(this.table);
+            for (Pair<Food, Double> ingredient : ((Recipe) food).getIngredients()) {
+                usedBy.computeIfAbsent(ingredient.getKey(), key -> new LinkedHashSet<>()).add((Recipe) food);
+            }
+        }
+    }
+
+    /**
+     * Forgets a recipe that is no longer stored as a user of its ingredients.
+     * @param food The food that was removed or replaced.
+     */
+    private void unlink(Food food) {
+        if (food instanceof Recipe) {
+            for (Pair<Food, Double> ingredient : ((Recipe) food).getIngredients()) {
+                Food used = ingredient.getKey();
+                Set<Recipe> users = usedBy.get(used);
+                if (users != null && users.remove(food) && users.isEmpty()) {
+                    usedBy.remove(used);
+                    dropped.remove(used.getName(), used);
+                }
+            }
+        }
+    }
+
+    /**
+     * Points the recipes that used a food at its replacement, and drops the stored totals of every recipe that uses
+     * it at any depth. Only the recipes that are affected are visited.
+     * @param previous The food that was replaced.
+     * @param replacement The food that replaced it.
+     */
+    private void replaced(Food previous, Food replacement) {
+        Set<Recipe> users = usedBy.remove(previous);
+        if (users == null) {
+            return;
+        }
+        for (Recipe recipe : users) {
+            recipe.replaceIngredient(previous, replacement);
+        }
+        usedBy.computeIfAbsent(replacement, key -> new LinkedHashSet<>()).addAll(users);
+        this.invalidateUsers(replacement);
+    }
+
+    /**
+     * Drops the stored totals of every recipe that uses a food, directly or through other recipes.
+     * @param food The food that changed.
+     */
+    private void invalidateUsers(Food food) {
+        Set<Recipe> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<Food> changed = new ArrayDeque<>();
+        changed.add(food);
+        while (!changed.isEmpty()) {
+            Set<Recipe> users = usedBy.get(changed.poll());
+            if (users != null) {
+                for (Recipe recipe : users) {
+                    if (visited.add(recipe)) {
+                        recipe.invalidate();
+                        changed.add(recipe);
+                        synchronized (this.changedRecipes) {
+                            this.changedRecipes.add(recipe);
+                        }
+                        if (foodStorage.get(recipe.getName()) == recipe) {
+                            // Its nutrients changed.
+                            this.track(recipe.getName(), recipe, recipe);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the recipes that changed to the listener. Run by the lock after every change, once it is released.
+     */
+    private void recipesChanged() {
+        ArrayList<Recipe> changed;
+        synchronized (this.changedRecipes) {
+            if (this.changedRecipes.isEmpty()) {
+                return;
+            }
+            changed = new ArrayList<>(this.changedRecipes);
+            this.changedRecipes.clear();
+        }
+        Consumer<Collection<Recipe>> listener = this.recipeListener;
+        if (listener != null) {
+            listener.accept(changed);
+        }
+    }
+
+    /**
+     * Appends records to the journal, folding the journal back into the food file once it grows large enough.
+     * @param records The records describing a single change.
+     */
+    private void record(String... records) {
+        if (this.journal == null) {
+            return;
+        }
+        if (this.bulk) {
+            // Foods stored in bulk reach the file through a full save instead.
+            this.journalBehind = true;
+            return;
+        }
+        try {
+            this.journal.append(records);
+            if (this.journal.size() >= COMPACT_AFTER) {
+                this.saveInBackground();
+            }
+        } catch (IOException ioe) {
+            this.journalBehind = true;
+            System.out.println("Could not write journal. Reason: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Journals a food that was stored. The food is only written out as csv if the record is going to be appended.
+     * @param food The food.
+     */
+    private void recordAdd(Food food) {
+        if (this.bulk) {
+            this.record();
+        } else if (this.journal != null) {
+            this.record("a," + food.getCSV());
+        }
+    }
+
+    /**
+     * Applies a single journal record while loading.
+     * An update is journaled as a removal followed by an add, which rebinds recipes the same way update does.
+     * @param record The record, either "x,name" to remove a food or "a," followed by a food row.
+     */
+    private void replay(CharSequence record) {
+        CharSequence payload = record.subSequence(2, record.length());
+        switch (record.charAt(0)) {
+            case 'x':
+                this.remove(payload.toString());
+                break;
+            case 'a':
+                this.insert(factory.makeFood(payload));
+                break;
+            default:
+                throw new InvalidParameterException("Journal contained malformed data.");
+        }
     }
 
     /**
      * This is a helper method to update all observers.
      */
     private void massNotify(){
-        this.setChanged();
-        this.notifyObservers();
+        this.version++;
+        this.changed();
+    }
+
+    /**
+     * A single bulk import. Reads rows handed to it as a line visitor and stores them under the import's conflict
+     * policy, keeping the handler in bulk mode until it is finished.
+     */
+    private class Import implements ILineVisitor {
+
+        // The number of rows between progress reports.
+        private static final int BATCH = 10000;
+
+        private final ConflictPolicy policy;
+        private final IImportProgress progress;
+        private final ImportResult result = new ImportResult();
+        // Recipes that came before one of their ingredients, as in load.
+        private final HashMap<String, ArrayList<String>> waiting = new HashMap<>();
+        // Set when a food is already stored and the policy is FAIL, so that the row stops the import.
+        private boolean failed;
+
+        /**
+         * Starts an import.
+         * @param policy What to do with a food whose name is already stored.
+         * @param progress Told about every batch of rows, or null.
+         */
+        Import(ConflictPolicy policy, IImportProgress progress) {
+            this.policy = policy;
+            this.progress = progress;
+            beginBatch();
+            lock.write(() -> bulk = true);
+        }
+
+        @Override
+        public void visit(CharSequence line) {
+            if (line.length() == 0) {
+                return;
+            }
+            result.read();
+            // Each row takes the lock for itself, so the model can be read between rows.
+            lock.write(() -> {
+                if (policy == ConflictPolicy.SKIP && hasFood(factory.nameOf(line))) {
+                    // Dropped before the row is parsed, so that no food is built only to be thrown away.
+                    result.skipped();
+                } else {
+                    loadRow(line, waiting, this::store, this::reject);
+                }
+                return null;
+            });
+            if (progress != null && result.getRead() % BATCH == 0) {
+                progress.progress(result);
+            }
+        }
+
+        /**
+         * Stores a food that was read, following the conflict policy.
+         * @param food The food.
+         * @throws InvalidParameterException Thrown if the food could not be stored.
+         */
+        private void store(Food food) throws InvalidParameterException {
+            if (!hasFood(food)) {
+                insert(food);
+                result.added();
+                return;
+            }
+            switch (policy) {
+                case SKIP:
+                    result.skipped();
+                    break;
+                case REPLACE:
+                    insert(food);
+                    result.replaced();
+                    break;
+                default:
+                    this.failed = true;
+                    throw new InvalidParameterException("Food already exists: " + food.getName());
+            }
+        }
+
+        /**
+         * Counts a row that could not be imported, or stops the import if the policy says so.
+         * @param row The row.
+         * @param ipe Why it could not be imported.
+         * @throws InvalidParameterException Thrown if the row was a food that is already stored and the policy is FAIL.
+         */
+        private void reject(CharSequence row, InvalidParameterException ipe) throws InvalidParameterException {
+            if (this.failed) {
+                throw ipe;
+            }
+            result.rejected(1, "Row " + row + ": " + ipe.getMessage());
+        }
+
+        /**
+         * Ends the import, rejecting the recipes that are still waiting for an ingredient, and tells observers and
+         * the progress callback about everything that was stored.
+         */
+        void finish() {
+            lock.write(() -> {
+                endBulk();
+                for (Map.Entry<String, ArrayList<String>> held : waiting.entrySet()) {
+                    result.rejected(held.getValue().size(),
+                            "Food required for recipe does not exist: " + held.getKey());
+                }
+                waiting.clear();
+                if (result.changed()) {
+                    massNotify();
+                }
+                return null;
+            });
+            if (progress != null) {
+                progress.progress(result);
+            }
+            endBatch();
+        }
     }
 
     /**
@@ -244,56 +1143,99 @@ public class FoodHandler extends Observable {
      */
     class FoodFactory {
 
+        // Reused for every row so that parsing does not allocate per field.
+        private CSVTokenizer tokenizer = new CSVTokenizer();
+
+        /**
+         * Finds the first ingredient of a recipe row that is not stored yet.
+         * @param csv Raw csv, most likely read in from a file.
+         * @return The name of the missing ingredient, or null if the row is not a recipe or has every ingredient.
+         */
+        String missingIngredient(CharSequence csv) {
+            tokenizer.reset(csv);
+            if (!tokenizer.hasNext() || tokenizer.nextChar() != 'r' || !tokenizer.hasNext()) {
+                return null;
+            }
+            tokenizer.skip();   // Recipe name.
+            while (tokenizer.hasNext()) {
+                String ingredient = tokenizer.nextString();
+                if (!hasFood(ingredient)) {
+                    return ingredient;
+                }
+                if (!tokenizer.hasNext()) {
+                    return null;
+                }
+                tokenizer.skip();   // Servings.
+            }
+            return null;
+        }
+
+        /**
+         * Reads the name of the food in a row without parsing the rest of it.
+         * @param csv Raw csv, most likely read in from a file.
+         * @return The name, or an empty string if the row has none.
+         */
+        String nameOf(CharSequence csv) {
+            tokenizer.reset(csv);
+            if (!tokenizer.hasNext()) {
+                return "";
+            }
+            tokenizer.skip();   // Type.
+            return tokenizer.hasNext() ? tokenizer.nextString() : "";
+        }
+
         /**
          * This will take raw csv and make Food type objects.
          * @param csv Raw csv, most likely read in from a file.
          * @return A Food object.
          * @throws InvalidParameterException Thrown in the event that an invalid value is found.
          */
-        Food makeFood(String csv) throws InvalidParameterException {
+        Food makeFood(CharSequence csv) throws InvalidParameterException {
             Food food = null;
-            String[] foodDetails = csv.split(",");
+            tokenizer.reset(csv);
 
-            switch (foodDetails[0]) {
-                case "r":
+            switch (tokenizer.nextChar()) {
+                case 'r':
                     try {
                         ArrayList<Pair<Food,Double>> recipeItems = new ArrayList<>();
+                        String recipeName = tokenizer.nextString();
 
-                        for (int i=2; i < foodDetails.length; i+=2) { //Start at one and get every pair.
+                        while (tokenizer.hasNext()) { //Get every food and servings pair.
+                            String ingredient = tokenizer.nextString();
 
-                            if (hasFood(foodDetails[i])) {
+                            if (hasFood(ingredient)) {
                                 Pair<Food, Double> recipeItem = new Pair<>(
-                                        get(foodDetails[i]),
-                                        Double.parseDouble(foodDetails[i + 1])    // Servings
+                                        get(ingredient),
+                                        tokenizer.nextDouble()    // Servings
                                 );
                                 recipeItems.add(recipeItem);
                             } else {
                                throw new InvalidParameterException("Food required for recipe does not exist.");
                             }
                         }
-                        food = new Recipe(foodDetails[1], recipeItems);
+                        food = new Recipe(recipeName, recipeItems);
 
                     } catch (InvalidParameterException ipe) {
                         throw ipe;
-                    } catch (ArrayIndexOutOfBoundsException aiob) {
+                    } catch (NoSuchElementException nse) {
                         throw new InvalidParameterException("Recipe file contained invalid line.");
                     } catch (NumberFormatException nfe) {
                         throw new InvalidParameterException("Invalid value found in recipe file.");
                     }
                     break;
 
-                case "b":
+                case 'b':
                     try {
                         food = new BasicFood(
-                                foodDetails[1],                            // Food name.
-                                Double.parseDouble(foodDetails[2]),        // calories.
-                                Double.parseDouble(foodDetails[3]),        // fat.
-                                Double.parseDouble(foodDetails[4]),        // carbs.
-                                Double.parseDouble(foodDetails[5])         // protein.
+                                tokenizer.nextString(),                    // Food name.
+                                tokenizer.nextDouble(),                    // calories.
+                                tokenizer.nextDouble(),                    // fat.
+                                tokenizer.nextDouble(),                    // carbs.
+                                tokenizer.nextDouble()                     // protein.
                         );
                     } catch (InvalidParameterException ipe) {
                         throw ipe;
-                    } catch (ArrayIndexOutOfBoundsException aiob) {
+                    } catch (NoSuchElementException nse) {
                         throw new InvalidParameterException("Basic foods file contained invalid line.");
                     } catch (NumberFormatException nfe) {
                         throw new InvalidParameterException("Invalid value found in food file.");
@@ -0,0 +1,16 @@
+package DietManager.Model;
+
+
+/**
+ * IImportProgress is implemented by objects that want to follow a bulk import while it runs.
+ */
+public interface IImportProgress {
+
+    /**
+     * Called every time another batch of rows has been imported, and once more when the import is done.
+     * Called on the thread that runs the import, so it should return quickly.
+     *
+     * @param result The counts so far. The same object keeps changing until the import is done, so it must not be kept.
+     */
+    void progress(ImportResult result);
+}
@@ -0,0 +1,117 @@
+package DietManager.Model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counts what a bulk import did with the rows it read, and why rows were rejected.
+ */
+public class ImportResult {
+
+    // The most reasons kept, a catalog full of bad rows would otherwise keep one string per row.
+    private static final int MAX_ERRORS = 100;
+
+    private long read;
+    private long added;
+    private long replaced;
+    private long skipped;
+    private long rejected;
+    private ArrayList<String> errors = new ArrayList<>();
+
+    /**
+     * Returns the number of rows read so far.
+     * @return The number of rows.
+     */
+    public long getRead() {
+        return this.read;
+    }
+
+    /**
+     * Returns the number of foods that were stored under a new name.
+     * @return The number of foods.
+     */
+    public long getAdded() {
+        return this.added;
+    }
+
+    /**
+     * Returns the number of foods that took the place of a food with the same name.
+     * @return The number of foods.
+     */
+    public long getReplaced() {
+        return this.replaced;
+    }
+
+    /**
+     * Returns the number of rows dropped because a food with the same name was already stored.
+     * @return The number of rows.
+     */
+    public long getSkipped() {
+        return this.skipped;
+    }
+
+    /**
+     * Returns the number of rows that could not be imported, see getErrors.
+     * @return The number of rows.
+     */
+    public long getRejected() {
+        return this.rejected;
+    }
+
+    /**
+     * Returns why rows were rejected, for the first rows that were.
+     * @return The reasons, in the order the rows were read.
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(this.errors);
+    }
+
+    /**
+     * Counts a row that was read.
+     */
+    void read() {
+        this.read++;
+    }
+
+    /**
+     * Counts a food that was stored under a new name.
+     */
+    void added() {
+        this.added++;
+    }
+
+    /**
+     * Counts a food that replaced a stored one.
+     */
+    void replaced() {
+        this.replaced++;
+    }
+
+    /**
+     * Counts a row that was dropped in favour of the stored food.
+     */
+    void skipped() {
+        this.skipped++;
+    }
+
+    /**
+     * Counts rows that could not be imported.
+     * @param rows The number of rows.
+     * @param reason Why they were rejected.
+     */
+    void rejected(long rows, String reason) {
+        this.rejected += rows;
+        if (this.errors.size() < MAX_ERRORS) {
+            this.errors.add(reason);
+        }
+    }
+
+    /**
+     * Returns if anything was stored.
+     * @return True if a food was added or replaced.
+     */
+    boolean changed() {
+        return this.added + this.replaced > 0;
+    }
+}
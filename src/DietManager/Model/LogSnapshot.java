@@ -0,0 +1,395 @@
+package DietManager.Model;
+
+import DietManager.Model.Entry.*;
+import DietManager.Model.Exercise.Exercise;
+import DietManager.Model.Food.Food;
+import DietManager.Model.Util.BinarySnapshot;
+import DietManager.Model.Util.DateKey;
+import DietManager.Model.Util.SortedIntMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.InvalidParameterException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The binary snapshot of the log file, read through a memory map so that days are only decoded when they are used.
+ * The body holds the food and exercise tables, then a fixed-width index with the epoch-day, record offset and
+ * nutrient totals of every day, then one record per day. Opening a snapshot only reads the tables; EntryHandler
+ * builds its daily totals from the index, and an Entry is decoded from its record the first time its day is read.
+ * Recently read days are kept in a small cache so that scrolling back and forth does not decode them again.
+ * Reading a day can change the cache, so the cache is only used while holding the snapshot's monitor.
+ * An entry that is changed through its own setters stays in the cache until EntryHandler picks it up with changed.
+ */
+class LogSnapshot {
+
+    static final char KIND = 'l';
+
+    private static final Nutrient[] NUTRIENTS = Nutrient.values();
+    // Epoch-day, record offset and one total per nutrient.
+    private static final int INDEX_WIDTH = 4 + 4 + 8 * NUTRIENTS.length;
+    private static final int CACHE_SIZE = 366;
+
+    private final ByteBuffer body;
+    private final Food[] foods;
+    private final Exercise[] exercises;
+    private final boolean totalsCurrent;
+    private final int days;
+    private final int index;    // Position of the index in the body.
+    private final int records;  // Position of the first day record in the body.
+    private final LinkedHashMap<Integer, Entry> cache;
+
+    /**
+     * Reads the tables of a mapped snapshot body.
+     * @param body The body, positioned at 0.
+     * @param foodHandler Used to find the foods named in the food table.
+     * @param exerciseHandler Used to find the exercises named in the exercise table.
+     * @throws IOException Thrown if the tables cannot be read.
+     */
+    private LogSnapshot(ByteBuffer body, FoodHandler foodHandler, ExerciseHandler exerciseHandler) throws IOException {
+        this.body = body;
+        ByteBuffer tables = body.duplicate();
+        DataInputStream in = new DataInputStream(new InputStream() {
+            @Override
+            public int read() {
+                return tables.hasRemaining() ? tables.get() & 0xFF : -1;
+            }
+        });
+
+        if (in.readInt() != NUTRIENTS.length) {
+            throw new IOException("Log snapshot was written with different nutrients.");
+        }
+
+        // The totals in the index are only right if every food and exercise still has the values it was saved with.
+        boolean current = true;
+        this.foods = new Food[in.readInt()];
+        for (int i = 0; i < this.foods.length; i++) {
+            Food food = foodHandler.get(in.readUTF());
+            double calories = in.readDouble();
+            double fat = in.readDouble();
+            double carbs = in.readDouble();
+            double protein = in.readDouble();
+            current &= food != null && food.getCalories() == calories && food.getFat() == fat
+                    && food.getCarbs() == carbs && food.getProtein() == protein;
+            this.foods[i] = food;
+        }
+        this.exercises = new Exercise[in.readInt()];
+        for (int i = 0; i < this.exercises.length; i++) {
+            Exercise exercise = exerciseHandler.get(in.readUTF());
+            double calories = in.readDouble();
+            current &= exercise != null && exercise.getCalories() == calories;
+            this.exercises[i] = exercise;
+        }
+        this.totalsCurrent = current;
+
+        this.days = in.readInt();
+        this.index = tables.position();
+        this.records = this.index + this.days * INDEX_WIDTH;
+        if (this.days < 0 || this.records > body.limit()) {
+            throw new IOException("Log snapshot index is damaged.");
+        }
+
+        this.cache = new LinkedHashMap<Integer, Entry>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return this.size() > CACHE_SIZE && !eldest.getValue().isDirty();
+            }
+        };
+    }
+
+    /**
+     * Maps the snapshot of a log file.
+     * @param csv The log file.
+     * @param foodHandler Used to find the foods the log refers to.
+     * @param exerciseHandler Used to find the exercises the log refers to.
+     * @return The snapshot, or null if there is no up to date snapshot and the csv should be read instead.
+     */
+    static LogSnapshot map(File csv, FoodHandler foodHandler, ExerciseHandler exerciseHandler) {
+        ByteBuffer body = BinarySnapshot.map(csv, KIND);
+        if (body == null) {
+            return null;
+        }
+        try {
+            return new LogSnapshot(body, foodHandler, exerciseHandler);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns if the totals stored in the index still match the foods and exercises that are loaded.
+     * If not, every day has to be decoded to work the totals out again.
+     * @return True if the stored totals can be used as they are.
+     */
+    boolean hasCurrentTotals() {
+        return this.totalsCurrent;
+    }
+
+    /**
+     * Returns the number of days in the snapshot.
+     * @return The number of days.
+     */
+    int size() {
+        return this.days;
+    }
+
+    /**
+     * Returns the epoch-day at a position in the index.
+     * @param position The position, from 0 to size() - 1. Days are in ascending order.
+     * @return The epoch-day.
+     */
+    int dayAt(int position) {
+        return this.body.getInt(this.index + position * INDEX_WIDTH);
+    }
+
+    /**
+     * Returns a stored total of a day.
+     * @param position The position of the day in the index.
+     * @param nutrient The nutrient.
+     * @return The total of the nutrient on the day when the snapshot was written.
+     */
+    double totalAt(int position, Nutrient nutrient) {
+        return this.body.getDouble(this.index + position * INDEX_WIDTH + 8 + 8 * nutrient.ordinal());
+    }
+
+    /**
+     * Returns the entry for a day, decoding it if it is not in the cache. The entry is not kept anywhere else, so
+     * anything that changes it has to store it in the model.
+     * @param day The epoch-day.
+     * @return The entry, or null if the day is not in the snapshot.
+     * @throws InvalidParameterException Thrown if the record of the day is damaged.
+     */
+    synchronized Entry get(int day) throws InvalidParameterException {
+        Entry entry = this.cache.get(day);
+        if (entry == null) {
+            int position = this.find(day);
+            if (position < 0) {
+                return null;
+            }
+            entry = this.materialize(position);
+            if (entry == null) {
+                // The day is in the model already, so it needs an entry even if all of its rows were dropped.
+                entry = new Entry(DateKey.toCalendar(day));
+                entry.markClean();
+            }
+            this.cache.put(day, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns if any cached entry has been changed through its own setters since it was decoded.
+     * @return True if takeChanged would return anything.
+     */
+    synchronized boolean hasChanged() {
+        for (Entry entry : this.cache.values()) {
+            if (entry.isDirty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the cached entries that have been changed through their own setters since they were decoded, and
+     * drops them from the cache. The caller has to store them in the model.
+     * @return The changed entries, keyed by epoch-day.
+     */
+    synchronized Map<Integer, Entry> takeChanged() {
+        LinkedHashMap<Integer, Entry> changed = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Entry> cached : this.cache.entrySet()) {
+            if (cached.getValue().isDirty()) {
+                changed.put(cached.getKey(), cached.getValue());
+            }
+        }
+        this.cache.keySet().removeAll(changed.keySet());
+        return changed;
+    }
+
+    /**
+     * Returns if any of some foods are in the snapshot's food table, so that no record can log them if they are not.
+     * @param foods The foods, compared by identity.
+     * @return True if a record may log one of the foods.
+     */
+    boolean mayLog(Set<Food> foods) {
+        for (Food food : this.foods) {
+            if (food != null && foods.contains(food)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns if the record of a day logs any of some foods, reading only its food rows instead of decoding it.
+     * @param day The epoch-day.
+     * @param foods The foods, compared by identity.
+     * @return True if the day logs one of the foods, false if it does not or is not in the snapshot.
+     * @throws InvalidParameterException Thrown if the record of the day is damaged.
+     */
+    boolean logs(int day, Set<Food> foods) throws InvalidParameterException {
+        int position = this.find(day);
+        if (position < 0) {
+            return false;
+        }
+        try {
+            ByteBuffer record = this.body.duplicate();
+            record.position(this.records + this.body.getInt(this.index + position * INDEX_WIDTH + 4));
+            // Skip the weight and calories, whichever are present.
+            int flags = record.get();
+            record.position(record.position() + 8 * Integer.bitCount(flags & 3));
+            for (int count = record.getInt(); count > 0; count--) {
+                Food food = this.foods[record.getInt()];
+                if (food != null && foods.contains(food)) {
+                    return true;
+                }
+                record.getDouble();
+            }
+            return false;
+        } catch (RuntimeException e) {
+            throw new InvalidParameterException("Log snapshot contained malformed data.");
+        }
+    }
+
+    /**
+     * Decodes the entry at a position in the index.
+     * Rows that refer to a food or exercise that no longer exists are dropped, the same as when reading the csv.
+     * @param position The position of the day in the index.
+     * @return The entry, or null if none of its rows could be kept.
+     * @throws InvalidParameterException Thrown if the record is damaged.
+     */
+    Entry materialize(int position) throws InvalidParameterException {
+        try {
+            ByteBuffer record = this.body.duplicate();
+            record.position(this.records + this.body.getInt(this.index + position * INDEX_WIDTH + 4));
+
+            Entry entry = new Entry(DateKey.toCalendar(this.dayAt(position)));
+            int flags = record.get();
+            boolean empty = flags == 0;
+            if ((flags & 1) != 0) {
+                entry.setWeightEntry(new WeightEntry(record.getDouble()));
+            }
+            if ((flags & 2) != 0) {
+                entry.setCalorieEntry(new CalorieEntry(record.getDouble()));
+            }
+            for (int count = record.getInt(); count > 0; count--) {
+                Food food = this.foods[record.getInt()];
+                double servings = record.getDouble();
+                if (food != null) {
+                    entry.addFoodEntry(new FoodEntry(food, servings));
+                    empty = false;
+                }
+            }
+            for (int count = record.getInt(); count > 0; count--) {
+                Exercise exercise = this.exercises[record.getInt()];
+                double duration = record.getDouble();
+                if (exercise != null) {
+                    entry.addExerciseEntry(new ExerciseEntry(exercise, duration));
+                    empty = false;
+                }
+            }
+            if (empty) {
+                return null;
+            }
+            // Nothing has changed since the entry was saved.
+            entry.markClean();
+            return entry;
+        } catch (RuntimeException e) {
+            throw new InvalidParameterException("Log snapshot contained malformed data.");
+        }
+    }
+
+    /**
+     * Finds a day in the index.
+     * @param day The epoch-day.
+     * @return The position of the day, or -1 if it is not in the snapshot.
+     */
+    private int find(int day) {
+        int low = 0;
+        int high = this.days - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int found = this.dayAt(middle);
+            if (found < day) {
+                low = middle + 1;
+            } else if (found > day) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Encodes entries into a snapshot body.
+     * @param entries The entries to encode, keyed by epoch-day.
+     * @return The body.
+     * @throws IOException Thrown if the body cannot be encoded.
+     */
+    static byte[] encode(SortedIntMap<Entry> entries) throws IOException {
+        LinkedHashMap<Food, Integer> foods = new LinkedHashMap<>();
+        LinkedHashMap<Exercise, Integer> exercises = new LinkedHashMap<>();
+        ByteArrayOutputStream index = new ByteArrayOutputStream(entries.size() * INDEX_WIDTH);
+        ByteArrayOutputStream records = BinarySnapshot.newBody();
+
+        try (DataOutputStream indexOut = new DataOutputStream(index);
+             DataOutputStream out = new DataOutputStream(records)) {
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.valueAt(i);
+                indexOut.writeInt(entries.keyAt(i));
+                indexOut.writeInt(out.size());
+                for (Nutrient nutrient : NUTRIENTS) {
+                    indexOut.writeDouble(nutrient.of(entry));
+                }
+
+                out.writeByte((entry.getWeightEntry() != null ? 1 : 0) | (entry.getCalorieEntry() != null ? 2 : 0));
+                if (entry.getWeightEntry() != null) {
+                    out.writeDouble(entry.getWeightEntry().getWeight());
+                }
+                if (entry.getCalorieEntry() != null) {
+                    out.writeDouble(entry.getCalorieEntry().getCalories());
+                }
+                out.writeInt(entry.getAllFoodEntries().size());
+                for (FoodEntry foodEntry : entry.getAllFoodEntries()) {
+                    out.writeInt(foods.computeIfAbsent(foodEntry.getFood(), food -> foods.size()));
+                    out.writeDouble(foodEntry.getServings());
+                }
+                out.writeInt(entry.getAllExerciseEntries().size());
+                for (ExerciseEntry exerciseEntry : entry.getAllExerciseEntries()) {
+                    out.writeInt(exercises.computeIfAbsent(exerciseEntry.getExercise(), exercise -> exercises.size()));
+                    out.writeDouble(exerciseEntry.getDuration());
+                }
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(index.size() + records.size() + 1024);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(NUTRIENTS.length);
+            out.writeInt(foods.size());
+            for (Food food : foods.keySet()) {
+                out.writeUTF(food.getName());
+                out.writeDouble(food.getCalories());
+                out.writeDouble(food.getFat());
+                out.writeDouble(food.getCarbs());
+                out.writeDouble(food.getProtein());
+            }
+            out.writeInt(exercises.size());
+            for (Exercise exercise : exercises.keySet()) {
+                out.writeUTF(exercise.getName());
+                out.writeDouble(exercise.getCalories());
+            }
+            out.writeInt(entries.size());
+            index.writeTo(out);
+            records.writeTo(out);
+        }
+        return bytes.toByteArray();
+    }
+}
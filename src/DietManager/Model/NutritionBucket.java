@@ -0,0 +1,74 @@
+package DietManager.Model;
+
+import DietManager.Model.Entry.Nutrient;
+import DietManager.Model.Util.Resolution;
+
+import java.time.LocalDate;
+
+/**
+ * A summary of the logged days in one bucket of time, such as a week or a month.
+ * Each nutrient is averaged over the days in the bucket that have an entry, so buckets of different sizes, or with
+ * a few days missing, can be compared with each other and with a single day.
+ */
+public class NutritionBucket {
+
+    private final Resolution resolution;
+    private final LocalDate start;
+    private final int daysLogged;
+    private final double[] averages;
+
+    /**
+     * Creates a bucket.
+     * @param resolution The span of the bucket.
+     * @param start The first day of the bucket.
+     * @param daysLogged The number of days in the bucket that have an entry.
+     * @param averages The average of each nutrient per logged day, by ordinal.
+     */
+    NutritionBucket(Resolution resolution, LocalDate start, int daysLogged, double[] averages) {
+        this.resolution = resolution;
+        this.start = start;
+        this.daysLogged = daysLogged;
+        this.averages = averages;
+    }
+
+    /**
+     * Returns the span of the bucket.
+     * @return The resolution the bucket was made at.
+     */
+    public Resolution getResolution() {
+        return this.resolution;
+    }
+
+    /**
+     * Returns the first day of the bucket.
+     * @return The first day.
+     */
+    public LocalDate getStart() {
+        return this.start;
+    }
+
+    /**
+     * Returns the last day of the bucket.
+     * @return The last day.
+     */
+    public LocalDate getEnd() {
+        return this.resolution.next(this.start).minusDays(1);
+    }
+
+    /**
+     * Returns the number of days in the bucket that have an entry.
+     * @return The number of logged days.
+     */
+    public int getDaysLogged() {
+        return this.daysLogged;
+    }
+
+    /**
+     * Returns the average daily amount of a nutrient over the logged days of the bucket.
+     * @param nutrient The nutrient.
+     * @return The average, or 0 if no days are logged.
+     */
+    public double average(Nutrient nutrient) {
+        return this.averages[nutrient.ordinal()];
+    }
+}
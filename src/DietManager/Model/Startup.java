@@ -0,0 +1,157 @@
+package DietManager.Model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.InvalidParameterException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Loads the food, exercise and log files at startup, running the loads that do not depend on each other at the same
+ * time. Foods and exercises are loaded in parallel; the log refers to both, so it is loaded once they are done, with
+ * large logs parsed in parts on the same pool.
+ * The time taken by each phase is recorded so that slow starts can be tracked down.
+ */
+public class Startup {
+
+    private final FoodHandler foodHandler;
+    private final ExerciseHandler exerciseHandler;
+    private final EntryHandler entryHandler;
+    private final ForkJoinPool pool;
+    // Milliseconds taken by each phase, in the order the phases finished.
+    private final Map<String, Long> timings;
+
+    /**
+     * Creates a startup that loads into the given handlers using the common fork-join pool.
+     * @param foodHandler The FoodHandler to load the food file into.
+     * @param exerciseHandler The ExerciseHandler to load the exercise file into.
+     * @param entryHandler The EntryHandler to load the log file into.
+     */
+    public Startup(FoodHandler foodHandler, ExerciseHandler exerciseHandler, EntryHandler entryHandler) {
+        this(foodHandler, exerciseHandler, entryHandler, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a startup that loads into the given handlers.
+     * @param foodHandler The FoodHandler to load the food file into.
+     * @param exerciseHandler The ExerciseHandler to load the exercise file into.
+     * @param entryHandler The EntryHandler to load the log file into.
+     * @param pool The pool the independent loads and the parts of the log run on.
+     */
+    public Startup(FoodHandler foodHandler, ExerciseHandler exerciseHandler, EntryHandler entryHandler,
+                   ForkJoinPool pool) {
+        this.foodHandler = foodHandler;
+        this.exerciseHandler = exerciseHandler;
+        this.entryHandler = entryHandler;
+        this.pool = pool;
+        this.timings = Collections.synchronizedMap(new LinkedHashMap<>());
+    }
+
+    /**
+     * Loads all three files. The log is not loaded if the foods or exercises could not be, as its rows would be
+     * dropped for referring to foods and exercises that do not exist.
+     * @param foods The food file.
+     * @param exercises The exercise file.
+     * @param log The log file.
+     * @throws InvalidParameterException Thrown if one of the files contains errors.
+     * @throws IOException Thrown if one of the files cannot be read from.
+     */
+    public void load(File foods, File exercises, File log) throws InvalidParameterException, IOException {
+        this.timings.clear();
+        long start = System.nanoTime();
+
+        CompletableFuture<Void> foodLoad = this.async("foods", () -> this.foodHandler.load(foods));
+        CompletableFuture<Void> exerciseLoad = this.async("exercises", () -> this.exerciseHandler.load(exercises));
+        try {
+            CompletableFuture.allOf(foodLoad, exerciseLoad).join();
+        } catch (CompletionException ce) {
+            Throwable cause = ce.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw ce;
+        }
+
+        this.timed("log", () -> this.entryHandler.load(log, this.pool));
+        this.timings.put("total", elapsed(start));
+    }
+
+    /**
+     * Returns how long each phase of the last load took.
+     * @return Milliseconds per phase, in the order the phases finished, ending with the total.
+     */
+    public Map<String, Long> getTimings() {
+        synchronized (this.timings) {
+            return new LinkedHashMap<>(this.timings);
+        }
+    }
+
+    /**
+     * Describes how long the last load took.
+     * @return A single line listing each phase and its time.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder("Startup:");
+        for (Map.Entry<String, Long> timing : this.getTimings().entrySet()) {
+            report.append(' ').append(timing.getKey()).append(' ').append(timing.getValue()).append("ms");
+        }
+        return report.toString();
+    }
+
+    /**
+     * Runs a phase on the pool.
+     * @param name The name the time of the phase is recorded under.
+     * @param phase The phase.
+     * @return A future that completes when the phase is done.
+     */
+    private CompletableFuture<Void> async(String name, Phase phase) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                this.timed(name, phase);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }, this.pool);
+    }
+
+    /**
+     * Runs a phase on the calling thread and records how long it took.
+     * @param name The name the time of the phase is recorded under.
+     * @param phase The phase.
+     * @throws IOException Thrown if the phase does.
+     */
+    private void timed(String name, Phase phase) throws IOException {
+        long start = System.nanoTime();
+        phase.run();
+        this.timings.put(name, elapsed(start));
+    }
+
+    /**
+     * Returns the milliseconds since a point in time.
+     * @param start The point in time, from System.nanoTime.
+     * @return The milliseconds since.
+     */
+    private static long elapsed(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * A single step of the startup.
+     */
+    private interface Phase {
+
+        /**
+         * Runs the step.
+         * @throws IOException Thrown if a file cannot be read.
+         */
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,132 @@
+package DietManager.Model.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes files on a single background thread so that saving never blocks the thread that asked for it.
+ * The caller hands over a snapshot of the lines to write, so the model can keep changing while the file is written.
+ * Saves of the same file are coalesced: if a file is queued again before it has been written, only the newest
+ * snapshot is written.
+ */
+public class BackgroundSaver {
+
+    private final IOHandler io;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<File, Job> pending;
+
+    /**
+     * Creates a saver with its own daemon thread.
+     * @param io The IOHandler used to write the files.
+     */
+    public BackgroundSaver(IOHandler io) {
+        this.io = io;
+        this.pending = new ConcurrentHashMap<>();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DietManager-saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a file to be written.
+     * @param file The file to replace.
+     * @param lines A snapshot of the lines to write. It must not be changed after it is handed over.
+     * @param onSaved Run on the saver thread once the file has been written, may be null. It is skipped if a newer
+     *                snapshot of the same file replaces this one before it is written.
+     */
+    public void save(File file, Collection<String> lines, Task onSaved) {
+        if (this.pending.put(file, new Job(lines, onSaved)) == null) {
+            try {
+                this.executor.execute(() -> this.write(file));
+            } catch (RejectedExecutionException ree) {
+                // The saver has been closed, so the file is written on the calling thread instead.
+                this.write(file);
+            }
+        }
+    }
+
+    /**
+     * Waits until every save queued so far has been written. Once the saver is closed there is nothing to wait for,
+     * close has written everything already.
+     */
+    public void flush() {
+        if (this.executor.isShutdown()) {
+            return;
+        }
+        try {
+            this.executor.submit(() -> { }).get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            System.out.println("Could not save files. Reason: " + ee.getMessage());
+        } catch (RejectedExecutionException ree) {
+            // Closed while this was called, close waits for the queued saves.
+        }
+    }
+
+    /**
+     * Writes every queued save and stops the saver thread. Later saves are written on the calling thread.
+     */
+    public void close() {
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the newest snapshot queued for a file.
+     * @param file The file to write.
+     */
+    private void write(File file) {
+        Job job = this.pending.remove(file);
+        if (job == null) {
+            return;
+        }
+        try {
+            this.io.writeLinesToFile(job.lines, file);
+            if (job.onSaved != null) {
+                job.onSaved.run();
+            }
+        } catch (IOException ioe) {
+            System.out.println("Could not save files. Reason: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Work to run on the saver thread after a file has been written.
+     */
+    public interface Task {
+
+        /**
+         * Runs the task. Any IOException is reported the same way as a failed save.
+         * @throws IOException Thrown if the task could not complete.
+         */
+        void run() throws IOException;
+    }
+
+    /**
+     * A snapshot waiting to be written.
+     */
+    private static class Job {
+
+        private final Collection<String> lines;
+        private final Task onSaved;
+
+        private Job(Collection<String> lines, Task onSaved) {
+            this.lines = lines;
+            this.onSaved = onSaved;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package DietManager.Model.Util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Observable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An Observable that can tell its observers about many changes at once.
+ * Changes made between beginBatch and endBatch are announced once, when the outermost batch ends, so loading a file
+ * or a bulk edit costs each observer a single update instead of one per row. Changes made outside of a batch are
+ * announced straight away, unless a coalescing delay is set: then the first change waits that long, and every change
+ * made meanwhile is announced along with it.
+ * Announcements are handed to an executor, which by default runs them on the thread that made the change. A UI can
+ * pass its own, such as one that runs them on the UI thread.
+ * Observers are passed a ChangeSet holding what changed since the last announcement, one event per key, so they can
+ * update just the items that changed.
+ * @param <K> The type of the keys the items are stored under.
+ * @param <V> The type of the items.
+ */
+public class BatchedObservable<K, V> extends Observable {
+
+    // Past this many changed keys an announcement is sent as a reset, observers read everything again anyway.
+    private static final int MAX_EVENTS = 10000;
+    // Runs the delayed announcements of every observable, on one daemon thread.
+    private static ScheduledExecutorService timer;
+
+    private int depth;
+    private boolean pending;
+    // How many holds are in place, and if a batch ended while held, see hold.
+    private int holds;
+    private boolean batchEnded;
+    // The changes since the last announcement, by key.
+    private LinkedHashMap<K, ChangeEvent<K, V>> tracked = new LinkedHashMap<>();
+    private boolean reset;
+    private long delay;
+    private ScheduledFuture<?> scheduled;
+    private Executor delivery = Runnable::run;
+
+    /**
+     * Starts a batch. Batches can be nested, changes are announced when the outermost one ends.
+     * Every call must be matched by a call to endBatch, even if the changes fail part way through.
+     */
+    public synchronized void beginBatch() {
+        this.depth++;
+    }
+
+    /**
+     * Ends a batch, announcing the changes made during it if it was the outermost one.
+     * Does nothing if there is no batch to end.
+     */
+    public void endBatch() {
+        synchronized (this) {
+            if (this.depth == 0 || --this.depth > 0) {
+                return;
+            }
+            if (this.holds > 0) {
+                // Announced as soon as the hold is released.
+                this.batchEnded = true;
+                return;
+            }
+        }
+        this.flush();
+    }
+
+    /**
+     * Holds announcements back without starting a batch, such as while the handler is locked. Once the last hold is
+     * released, changes made meanwhile are announced the same way as changes made outside of a batch, after the
+     * coalescing delay if one is set, unless a batch ended while they were held.
+     * Every call must be matched by a call to release.
+     */
+    public synchronized void hold() {
+        this.holds++;
+    }
+
+    /**
+     * Releases a hold, announcing what changed while it was in place if it was the last one.
+     * Does nothing if there is no hold to release.
+     */
+    public void release() {
+        boolean batchEnded;
+        synchronized (this) {
+            if (this.holds == 0 || --this.holds > 0) {
+                return;
+            }
+            batchEnded = this.batchEnded;
+            this.batchEnded = false;
+            if (!this.pending) {
+                return;
+            }
+        }
+        if (batchEnded) {
+            this.flush();
+        } else {
+            this.changed();
+        }
+    }
+
+    /**
+     * Sets how long a change made outside of a batch waits before it is announced, so that a burst of changes reaches
+     * observers as one.
+     * @param millis The delay in milliseconds, or 0 to announce every change straight away.
+     */
+    public synchronized void setCoalescing(long millis) {
+        this.delay = Math.max(millis, 0);
+    }
+
+    /**
+     * Sets the executor that observers are updated on.
+     * @param delivery The executor, or null to update observers on the thread that made the change.
+     */
+    public synchronized void setDelivery(Executor delivery) {
+        this.delivery = delivery != null ? delivery : Runnable::run;
+    }
+
+    /**
+     * Announces any changes that are waiting, without waiting for the coalescing delay. Changes made during a batch
+     * or a hold still wait for it to end.
+     */
+    public void flush() {
+        Executor delivery;
+        ChangeSet<K, V> changes;
+        synchronized (this) {
+            if (!this.pending || this.depth > 0 || this.holds > 0) {
+                return;
+            }
+            this.pending = false;
+            if (this.scheduled != null) {
+                this.scheduled.cancel(false);
+                this.scheduled = null;
+            }
+            delivery = this.delivery;
+            changes = new ChangeSet<>(this.reset, new ArrayList<>(this.tracked.values()));
+            this.tracked = new LinkedHashMap<>();
+            this.reset = false;
+        }
+        delivery.execute(() -> this.announce(changes));
+    }
+
+    /**
+     * Tracks a change to one item, to be announced with the next call to changed. A later change to the same key is
+     * combined with it, so observers only see where each key started and where it ended up.
+     * @param key The key of the item.
+     * @param oldValue The item stored under the key before, or null if there was none.
+     * @param newValue The item stored under the key now, or null if there is none.
+     */
+    protected synchronized void track(K key, V oldValue, V newValue) {
+        ChangeEvent<K, V> event = ChangeEvent.of(key, oldValue, newValue);
+        if (this.reset || event == null) {
+            return;
+        }
+        ChangeEvent<K, V> earlier = this.tracked.get(key);
+        if (earlier != null) {
+            event = earlier.then(event);
+            if (event == null) {
+                this.tracked.remove(key);
+                return;
+            }
+        } else if (this.tracked.size() == MAX_EVENTS) {
+            this.trackAll();
+            return;
+        }
+        this.tracked.put(key, event);
+    }
+
+    /**
+     * Tracks a change to everything, such as a load, so that the next announcement tells observers to read
+     * everything again.
+     */
+    protected synchronized void trackAll() {
+        this.reset = true;
+        this.tracked = new LinkedHashMap<>();
+    }
+
+    /**
+     * Announces the tracked changes now, at the end of the batch, or once the coalescing delay is up.
+     * Subclasses call this instead of setChanged and notifyObservers, after tracking what changed.
+     */
+    protected void changed() {
+        synchronized (this) {
+            this.pending = true;
+            if (this.depth > 0 || this.holds > 0 || this.scheduled != null) {
+                return;
+            }
+            if (this.delay > 0) {
+                this.scheduled = timer().schedule(this::flush, this.delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+        this.flush();
+    }
+
+    /**
+     * Tells the observers what changed.
+     * @param changes The changes.
+     */
+    private void announce(ChangeSet<K, V> changes) {
+        this.setChanged();
+        this.notifyObservers(changes);
+    }
+
+    /**
+     * Returns the thread delayed announcements run on, starting it the first time it is needed.
+     * @return The timer.
+     */
+    private static synchronized ScheduledExecutorService timer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "DietManager-notifier");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return timer;
+    }
+}
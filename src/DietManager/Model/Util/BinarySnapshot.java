@@ -0,0 +1,167 @@
+package DietManager.Model.Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A compact binary copy of a csv file that is much faster to load than the csv itself.
+ * The csv stays the interchange format; the snapshot sits next to it and is only trusted while the csv still has the
+ * exact size and modification time it had when the snapshot was written, so editing the csv by hand simply makes
+ * the next load fall back to it.
+ * Each handler encodes its own body, this class only deals with the header and validation.
+ * A snapshot can either be read whole and checksummed (open) or memory-mapped so that only the parts that are
+ * used are ever read from disk (map).
+ */
+public final class BinarySnapshot {
+
+    private static final int MAGIC = 0x444D4253;    // "DMBS"
+    private static final int VERSION = 2;
+    // Magic, version, kind, csv length, csv modification time, body length and checksum.
+    private static final int HEADER_LENGTH = 4 + 2 + 2 + 8 + 8 + 4 + 8;
+
+    /**
+     * Static utility class, no instances.
+     */
+    private BinarySnapshot() {
+    }
+
+    /**
+     * Returns the snapshot file that belongs to a csv file.
+     * @param csv The csv file.
+     * @return The snapshot stored next to the csv file.
+     */
+    public static File forFile(File csv) {
+        return new File(csv.getPath() + ".bin");
+    }
+
+    /**
+     * Starts a new snapshot body.
+     * @return A stream to encode the body into. Hand its bytes to write once the body is complete.
+     */
+    public static ByteArrayOutputStream newBody() {
+        return new ByteArrayOutputStream(64 * 1024);
+    }
+
+    /**
+     * Writes a snapshot of a csv file that has just been written.
+     * The current size and modification time of the csv are stamped into the header.
+     * @param io The IOHandler used to replace the snapshot file atomically.
+     * @param csv The csv file the snapshot is a copy of.
+     * @param kind A tag naming what the snapshot holds, checked again when it is read.
+     * @param body The encoded body.
+     * @throws IOException Thrown if the snapshot cannot be written.
+     */
+    public static void write(IOHandler io, File csv, char kind, byte[] body) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length + HEADER_LENGTH);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeChar(kind);
+        out.writeLong(csv.length());
+        out.writeLong(csv.lastModified());
+        out.writeInt(body.length);
+        out.writeLong(crc.getValue());
+        out.write(body);
+        out.flush();
+        io.writeBytesToFile(bytes.toByteArray(), forFile(csv));
+    }
+
+    /**
+     * Opens the snapshot of a csv file if it can be trusted.
+     * @param csv The csv file.
+     * @param kind The tag the snapshot was written with.
+     * @return A stream positioned at the start of the body, or null if there is no snapshot or it is out of date,
+     * from a different version, or damaged. The caller should read the csv instead.
+     */
+    public static DataInputStream open(File csv, char kind) {
+        File snapshot = forFile(csv);
+        if (!snapshot.exists() || !csv.exists()) {
+            return null;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(snapshot.toPath());
+            ByteBuffer body = body(ByteBuffer.wrap(bytes), csv, kind, true);
+            if (body == null) {
+                return null;
+            }
+            return new DataInputStream(new ByteArrayInputStream(bytes, body.position(), body.remaining()));
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Memory-maps the snapshot of a csv file if it can be trusted.
+     * Only the header is read, so the checksum of the body is not verified; the atomic writes in IOHandler are what
+     * keep the body whole. The mapping stays valid after the snapshot is replaced by a newer save.
+     * @param csv The csv file.
+     * @param kind The tag the snapshot was written with.
+     * @return A read-only buffer over the body, starting at position 0, or null if there is no snapshot or it is out
+     * of date or from a different version. The caller should read the csv instead.
+     */
+    public static ByteBuffer map(File csv, char kind) {
+        File snapshot = forFile(csv);
+        if (!snapshot.exists() || !csv.exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer body = body(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), csv, kind, false);
+            return body == null ? null : body.slice();
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks the header of a snapshot.
+     * @param snapshot The whole snapshot file, positioned at 0.
+     * @param csv The csv file the snapshot should match.
+     * @param kind The tag the snapshot should have.
+     * @param checksum True to verify the checksum of the body, which needs a buffer backed by an array.
+     * @return The snapshot positioned at the start of the body, or null if the header does not match.
+     */
+    private static ByteBuffer body(ByteBuffer snapshot, File csv, char kind, boolean checksum) {
+        if (snapshot.remaining() < HEADER_LENGTH) {
+            return null;
+        }
+        if (snapshot.getInt() != MAGIC || snapshot.getShort() != VERSION || snapshot.getChar() != kind) {
+            return null;
+        }
+        if (snapshot.getLong() != csv.length() || snapshot.getLong() != csv.lastModified()) {
+            return null;
+        }
+        int length = snapshot.getInt();
+        long expected = snapshot.getLong();
+        if (length != snapshot.remaining()) {
+            return null;
+        }
+        if (checksum) {
+            CRC32 crc = new CRC32();
+            crc.update(snapshot.array(), snapshot.arrayOffset() + snapshot.position(), length);
+            if (crc.getValue() != expected) {
+                return null;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Removes the snapshot of a csv file, used when the csv has been written but the snapshot could not be.
+     * @param csv The csv file.
+     */
+    public static void discard(File csv) {
+        forFile(csv).delete();
+    }
+}
@@ -0,0 +1,299 @@
+package DietManager.Model.Util;
+
+import java.nio.CharBuffer;
+import java.util.NoSuchElementException;
+
+/**
+ * A reusable cursor over a single csv line.
+ * Fields are read left to right and numbers are parsed directly from the characters of the line,
+ * so walking a row does not allocate an array or a String per field the way String.split does.
+ * A tokenizer is not thread safe; each thread that parses should own its own instance.
+ */
+public class CSVTokenizer {
+
+    // Exact powers of ten. Any long with at most 15 significant digits scaled by one of these is correctly rounded.
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private char[] chars = new char[128];
+    private int start;
+    private int pos;
+    private int end;
+    private int lastField;  // One past the last character that is not a separator.
+
+    /**
+     * Points the tokenizer at a new line. CharBuffers that are backed by an array are read in place,
+     * anything else is copied into a buffer owned by the tokenizer.
+     * @param line The line to tokenize.
+     * @return This tokenizer.
+     */
+    public CSVTokenizer reset(CharSequence line) {
+        if (line instanceof CharBuffer && ((CharBuffer) line).hasArray()) {
+            CharBuffer buffer = (CharBuffer) line;
+            int start = buffer.arrayOffset() + buffer.position();
+            return this.reset(buffer.array(), start, buffer.remaining());
+        }
+
+        int length = line.length();
+        if (this.chars.length < length) {
+            this.chars = new char[Math.max(length, this.chars.length * 2)];
+        }
+        if (line instanceof String) {
+            ((String) line).getChars(0, length, this.chars, 0);
+        } else {
+            for (int i = 0; i < length; i++) {
+                this.chars[i] = line.charAt(i);
+            }
+        }
+        return this.reset(this.chars, 0, length);
+    }
+
+    /**
+     * Points the tokenizer at a line held in a character array. The array is read in place and must not change
+     * while the line is being tokenized.
+     * @param chars The characters holding the line.
+     * @param offset The index of the first character of the line.
+     * @param length The length of the line.
+     * @return This tokenizer.
+     */
+    public CSVTokenizer reset(char[] chars, int offset, int length) {
+        this.chars = chars;
+        this.start = offset;
+        this.pos = offset;
+        this.end = offset + length;
+
+        // Trailing empty fields are ignored, the same as String.split does.
+        this.lastField = this.end;
+        while (this.lastField > offset && chars[this.lastField - 1] == ',') {
+            this.lastField--;
+        }
+        return this;
+    }
+
+    /**
+     * Returns if there are any fields left in the line.
+     * @return True if at least one more field can be read.
+     */
+    public boolean hasNext() {
+        return this.pos < this.lastField;
+    }
+
+    /**
+     * Moves the cursor back to the first field of the current line.
+     */
+    public void rewind() {
+        this.pos = this.start;
+    }
+
+    /**
+     * Moves past the next field without reading it.
+     * @throws NoSuchElementException Thrown if there are no fields left.
+     */
+    public void skip() throws NoSuchElementException {
+        this.advance();
+    }
+
+    /**
+     * Reads the next field as a single character tag such as the type column of a row.
+     * @return The character, or 0 if the field is not exactly one character long.
+     * @throws NoSuchElementException Thrown if there are no fields left.
+     */
+    public char nextChar() throws NoSuchElementException {
+        int fieldStart = this.pos;
+        int length = this.advance() - fieldStart;
+        return length == 1 ? this.chars[fieldStart] : 0;
+    }
+
+    /**
+     * Reads the next field as a String. This is the only read that allocates.
+     * @return The next field.
+     * @throws NoSuchElementException Thrown if there are no fields left.
+     */
+    public String nextString() throws NoSuchElementException {
+        int fieldStart = this.pos;
+        int fieldEnd = this.advance();
+        return new String(this.chars, fieldStart, fieldEnd - fieldStart);
+    }
+
+    /**
+     * Looks the next field up in a table of names without allocating.
+     * @param names The table to look the field up in.
+     * @return The id of the name in the field, or -1 if the table does not have it.
+     * @throws NoSuchElementException Thrown if there are no fields left.
+     */
+    public int nextName(NameTable names) throws NoSuchElementException {
+        int fieldStart = this.pos;
+        int fieldEnd = this.advance();
+        return names.find(this.chars, fieldStart, fieldEnd);
+    }
+
+    /**
+     * Parses the next field as an int in place.
+     * @return The value of the field.
+     * @throws NumberFormatException Thrown if the field is not a valid int.
+     * @throws NoSuchElementException Thrown if there are no fields left.
+     */
+    public int nextInt() throws NumberFormatException, NoSuchElementException {
+        int fieldStart = this.pos;
+        int fieldEnd = this.advance();
+        int i = fieldStart;
+        boolean negative = false;
+
+        if (i < fieldEnd && (this.chars[i] == '-' || this.chars[i] == '+')) {
+            negative = this.chars[i] == '-';
+            i++;
+        }
+        if (i == fieldEnd) {
+            throw this.invalid(fieldStart, fieldEnd);
+        }
+
+        // Accumulate negatively so that Integer.MIN_VALUE can be represented.
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int result = 0;
+        for (; i < fieldEnd; i++) {
+            int digit = this.chars[i] - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10) {
+                throw this.invalid(fieldStart, fieldEnd);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw this.invalid(fieldStart, fieldEnd);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Parses the next field as a double in place. Plain decimal values are converted without allocating,
+     * anything unusual (long mantissas, large exponents, special values) is handed to Double.parseDouble
+     * so the result is always identical to it.
+     * @return The value of the field.
+     * @throws NumberFormatException Thrown if the field is not a valid double.
+     * @throws NoSuchElementException Thrown if there are no fields left.
+     */
+    public double nextDouble() throws NumberFormatException, NoSuchElementException {
+        int fieldStart = this.pos;
+        int fieldEnd = this.advance();
+        int i = fieldStart;
+        int last = fieldEnd;
+
+        while (i < last && this.chars[i] <= ' ') {
+            i++;
+        }
+        while (last > i && this.chars[last - 1] <= ' ') {
+            last--;
+        }
+
+        boolean negative = false;
+        if (i < last && (this.chars[i] == '-' || this.chars[i] == '+')) {
+            negative = this.chars[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean fraction = false;
+
+        for (; i < last; i++) {
+            char c = this.chars[i];
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (mantissa != 0 || c != '0') {
+                    if (++significantDigits > MAX_EXACT_DIGITS) {
+                        return this.slowDouble(fieldStart, fieldEnd);
+                    }
+                    mantissa = mantissa * 10 + (c - '0');
+                }
+                if (fraction) {
+                    exponent--;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+
+        if (digits == 0) {
+            return this.slowDouble(fieldStart, fieldEnd);
+        }
+
+        if (i < last) {
+            if (this.chars[i] != 'e' && this.chars[i] != 'E') {
+                return this.slowDouble(fieldStart, fieldEnd);
+            }
+            i++;
+            boolean negativeExponent = false;
+            if (i < last && (this.chars[i] == '-' || this.chars[i] == '+')) {
+                negativeExponent = this.chars[i] == '-';
+                i++;
+            }
+            if (i == last || last - i > 3) {
+                return this.slowDouble(fieldStart, fieldEnd);
+            }
+            int explicit = 0;
+            for (; i < last; i++) {
+                int digit = this.chars[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    return this.slowDouble(fieldStart, fieldEnd);
+                }
+                explicit = explicit * 10 + digit;
+            }
+            exponent += negativeExponent ? -explicit : explicit;
+        }
+
+        double value;
+        if (mantissa == 0) {
+            value = 0.0;
+        } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return this.slowDouble(fieldStart, fieldEnd);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Moves the cursor past the next field and its separator.
+     * @return The index one past the last character of the field that was passed.
+     */
+    private int advance() {
+        if (this.pos > this.lastField) {
+            throw new NoSuchElementException("Line does not contain enough fields.");
+        }
+        int fieldEnd = this.pos;
+        while (fieldEnd < this.end && this.chars[fieldEnd] != ',') {
+            fieldEnd++;
+        }
+        this.pos = fieldEnd + 1;
+        return fieldEnd;
+    }
+
+    /**
+     * Parses a double the slow way for the inputs the fast path does not handle exactly.
+     * @param start The first character of the field.
+     * @param fieldEnd One past the last character of the field.
+     * @return The parsed value.
+     */
+    private double slowDouble(int start, int fieldEnd) {
+        return Double.parseDouble(new String(this.chars, start, fieldEnd - start));
+    }
+
+    /**
+     * Builds the exception thrown for a field that is not a valid number.
+     * @param start The first character of the field.
+     * @param fieldEnd One past the last character of the field.
+     * @return The exception to throw.
+     */
+    private NumberFormatException invalid(int start, int fieldEnd) {
+        return new NumberFormatException("For input string: \"" + new String(this.chars, start, fieldEnd - start) + "\"");
+    }
+}
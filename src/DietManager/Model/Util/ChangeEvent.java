@@ -0,0 +1,101 @@
+package DietManager.Model.Util;
+
+/**
+ * A change to one item of an observable collection: an item added under a key, replaced, or removed.
+ * @param <K> The type of the keys the items are stored under.
+ * @param <V> The type of the items.
+ */
+public final class ChangeEvent<K, V> {
+
+    /**
+     * What happened to the item.
+     */
+    public enum Kind {
+        ADDED,
+        UPDATED,    // Replaced, or the same item changed in place, in which case the old and new values are the same.
+        REMOVED
+    }
+
+    private final Kind kind;
+    private final K key;
+    private final V oldValue;
+    private final V newValue;
+
+    /**
+     * Creates an event.
+     * @param kind What happened.
+     * @param key The key of the item.
+     * @param oldValue The item before, null if it was added.
+     * @param newValue The item after, null if it was removed.
+     */
+    private ChangeEvent(Kind kind, K key, V oldValue, V newValue) {
+        this.kind = kind;
+        this.key = key;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    /**
+     * Describes the change from one value of a key to another.
+     * @param key The key.
+     * @param oldValue The item stored under the key before, or null if there was none.
+     * @param newValue The item stored under the key after, or null if there is none.
+     * @param <K> The type of the key.
+     * @param <V> The type of the items.
+     * @return The event, or null if there was no item either before or after.
+     */
+    public static <K, V> ChangeEvent<K, V> of(K key, V oldValue, V newValue) {
+        if (oldValue == null && newValue == null) {
+            return null;
+        }
+        Kind kind = oldValue == null ? Kind.ADDED : newValue == null ? Kind.REMOVED : Kind.UPDATED;
+        return new ChangeEvent<>(kind, key, oldValue, newValue);
+    }
+
+    /**
+     * Combines this event with one that followed it for the same key, such as an add and then a remove, which cancel
+     * out, or a remove and then an add, which is a replacement.
+     * @param next The later event.
+     * @return The combined event, or null if the two cancel out.
+     */
+    ChangeEvent<K, V> then(ChangeEvent<K, V> next) {
+        return of(this.key, this.oldValue, next.newValue);
+    }
+
+    /**
+     * Returns what happened to the item.
+     * @return The kind of change.
+     */
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    /**
+     * Returns the key of the item.
+     * @return The key.
+     */
+    public K getKey() {
+        return this.key;
+    }
+
+    /**
+     * Returns the item before the change.
+     * @return The item, or null if it was added.
+     */
+    public V getOldValue() {
+        return this.oldValue;
+    }
+
+    /**
+     * Returns the item after the change.
+     * @return The item, or null if it was removed.
+     */
+    public V getNewValue() {
+        return this.newValue;
+    }
+
+    @Override
+    public String toString() {
+        return this.kind + " " + this.key;
+    }
+}
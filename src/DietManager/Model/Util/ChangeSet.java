@@ -0,0 +1,51 @@
+package DietManager.Model.Util;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The changes announced by a single notification of a BatchedObservable, at most one event per key.
+ * A reset set has no events: too much changed, or it changed in ways that were not tracked one by one, and
+ * observers should read everything again.
+ * @param <K> The type of the keys the items are stored under.
+ * @param <V> The type of the items.
+ */
+public final class ChangeSet<K, V> {
+
+    private final boolean reset;
+    private final List<ChangeEvent<K, V>> events;
+
+    /**
+     * Creates a set.
+     * @param reset True if observers should read everything again.
+     * @param events The changes, in the order their keys first changed. Empty if reset.
+     */
+    ChangeSet(boolean reset, List<ChangeEvent<K, V>> events) {
+        this.reset = reset;
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    /**
+     * Returns if observers should read everything again instead of applying the events.
+     * @return True if the changes were not tracked one by one.
+     */
+    public boolean isReset() {
+        return this.reset;
+    }
+
+    /**
+     * Returns the changes, in the order their keys first changed.
+     * @return The changes, empty if this is a reset.
+     */
+    public List<ChangeEvent<K, V>> getEvents() {
+        return this.events;
+    }
+
+    /**
+     * Returns if the set has nothing to apply.
+     * @return True if it is not a reset and has no events.
+     */
+    public boolean isEmpty() {
+        return !this.reset && this.events.isEmpty();
+    }
+}
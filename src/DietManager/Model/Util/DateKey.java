@@ -0,0 +1,92 @@
+package DietManager.Model.Util;
+
+import java.time.LocalDate;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+/**
+ * Converts between the calendar types used at the edges of the application and epoch-day keys.
+ * An epoch-day is the number of days since 1970-01-01 and is what the model uses internally to store and look up days.
+ * Months follow the same convention as Calendar.MONTH and EntryHandler.getCal, and out of range months and days
+ * roll over the same way a lenient calendar does.
+ */
+public final class DateKey {
+
+    // The first and last years a day can be logged in. A date outside of them is almost certainly a typo, and storing
+    // it would stretch the daily totals over every day in between.
+    public static final int FIRST_YEAR = 1900;
+    public static final int LAST_YEAR = 2199;
+    private static final int FIRST_DAY = of(FIRST_YEAR, 0, 1);
+    private static final int LAST_DAY = of(LAST_YEAR + 1, 0, 1) - 1;
+
+    private DateKey() {}
+
+    /**
+     * Returns the epoch-day for a date without creating any objects.
+     * @param year The year of the date.
+     * @param month The month of the date, in the same form as Calendar.MONTH.
+     * @param day_of_month The day of the month of the date.
+     * @return The epoch-day of the date.
+     */
+    public static int of(int year, int month, int day_of_month) {
+        year += Math.floorDiv(month, 12);
+        month = Math.floorMod(month, 12) + 1;
+
+        // Days from civil, shifted so that years start in March and the leap day falls at the end of the year.
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468 + (day_of_month - 1);
+    }
+
+    /**
+     * Returns if a day falls between FIRST_YEAR and LAST_YEAR, and so can be logged.
+     * @param epochDay The epoch-day to check.
+     * @return True if the day can be logged.
+     */
+    public static boolean isLoggable(int epochDay) {
+        return epochDay >= FIRST_DAY && epochDay <= LAST_DAY;
+    }
+
+    /**
+     * Returns the epoch-day of a calendar. Only the date fields are used, the time of day is ignored.
+     * @param date The calendar to convert.
+     * @return The epoch-day of the calendar.
+     */
+    public static int of(Calendar date) {
+        return of(date.get(Calendar.YEAR), date.get(Calendar.MONTH), date.get(Calendar.DAY_OF_MONTH));
+    }
+
+    /**
+     * Returns the epoch-day of a local date.
+     * @param date The local date to convert.
+     * @return The epoch-day of the date.
+     */
+    public static int of(LocalDate date) {
+        return (int) date.toEpochDay();
+    }
+
+    /**
+     * Creates a cleared calendar for an epoch-day, matching what EntryHandler.getCal creates.
+     * @param epochDay The epoch-day to convert.
+     * @return A calendar set to the start of the day.
+     */
+    public static GregorianCalendar toCalendar(int epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        GregorianCalendar calendar = new GregorianCalendar();
+        calendar.clear();
+        calendar.set(date.getYear(), date.getMonthValue() - 1, date.getDayOfMonth());
+        return calendar;
+    }
+
+    /**
+     * Creates a local date for an epoch-day.
+     * @param epochDay The epoch-day to convert.
+     * @return The local date of the epoch-day.
+     */
+    public static LocalDate toLocalDate(int epochDay) {
+        return LocalDate.ofEpochDay(epochDay);
+    }
+}
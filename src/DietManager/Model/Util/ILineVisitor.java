@@ -0,0 +1,16 @@
+package DietManager.Model.Util;
+
+
+/**
+ * ILineVisitor is implemented by objects that consume a file one line at a time as it is being read.
+ */
+public interface ILineVisitor {
+
+    /**
+     * Handles a single line that has been read from a file.
+     * The line may be backed by a buffer that is reused for the next line, so it must not be kept.
+     *
+     * @param line The line that was read, with leading and trailing whitespace removed.
+     */
+    void visit(CharSequence line);
+}
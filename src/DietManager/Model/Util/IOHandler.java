@@ -5,6 +5,13 @@ import DietManager.Model.Food.Food;
 import DietManager.Model.ICSVable;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 /**
@@ -14,28 +21,101 @@ import java.util.*;
  */
 public class IOHandler {
 
-    // File IO utilities.
-    private BufferedWriter bw;
-    private BufferedReader br;
-
     /**
      * Writes an entry to the given file.
+     * The file is replaced atomically, see writeLinesToFile.
      *
      * @param foods A Collection of food items to be written to file.
      */
     public void writeToFile(Collection<ICSVable> foods, File file) throws IOException {
-        try {
-            this.bw = new BufferedWriter(new FileWriter(file));
-            for (ICSVable food : foods) {
-                bw.write(food.getCSV());
+        this.writeLinesToFile(this.toLines(foods), file);
+    }
+
+    /**
+     * Converts items to the lines that writeToFile would write for them.
+     * Used to take a snapshot of the model that can be written later on another thread.
+     *
+     * @param items The items to convert.
+     * @return The csv of each item, in order.
+     */
+    public ArrayList<String> toLines(Collection<ICSVable> items) {
+        ArrayList<String> lines = new ArrayList<>(items.size());
+        for (ICSVable item : items) {
+            lines.add(item.getCSV());
+        }
+        return lines;
+    }
+
+    /**
+     * Writes lines to the given file without ever exposing a partly written file.
+     * The lines are written to a temporary file next to the target, synced to disk, and then moved over the target,
+     * so if anything fails part way through the previous contents of the file are left untouched.
+     * This does not keep any state, so it is safe to call from a background thread.
+     *
+     * @param lines The lines to write, in order.
+     * @param file The file to replace.
+     * @throws IOException Thrown if the file cannot be written.
+     */
+    public void writeLinesToFile(Collection<String> lines, File file) throws IOException {
+        File target = file.getAbsoluteFile();
+        File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+
+        try (FileOutputStream out = new FileOutputStream(temp);
+             BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(out))) {
+            for (String line : lines) {
+                bw.write(line);
                 bw.newLine();
             }
-            this.bw.flush();
+            bw.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            temp.delete();
+            throw new IOException("Could not write required file.");
+        }
+        this.replace(temp, target);
+    }
+
+    /**
+     * Writes raw bytes to the given file without ever exposing a partly written file, the same way as
+     * writeLinesToFile.
+     *
+     * @param bytes The contents of the file.
+     * @param file The file to replace.
+     * @throws IOException Thrown if the file cannot be written.
+     */
+    public void writeBytesToFile(byte[] bytes, File file) throws IOException {
+        File target = file.getAbsoluteFile();
+        File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(bytes);
+            out.getFD().sync();
+        } catch (IOException e) {
+            temp.delete();
+            throw new IOException("Could not write required file.");
+        }
+        this.replace(temp, target);
+    }
+
+    /**
+     * Moves a fully written temporary file over its target.
+     *
+     * @param temp The temporary file, already synced to disk.
+     * @param target The file to replace.
+     * @throws IOException Thrown if the file cannot be moved.
+     */
+    private void replace(File temp, File target) throws IOException {
+        try {
+            try {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
         } catch (IOException e) {
+            temp.delete();
             throw new IOException("Could not write required file.");
-        } finally {
-            this.bw.close();
         }
+        this.syncDirectory(target.getParentFile());
     }
 
     /**
@@ -45,17 +125,187 @@ public class IOHandler {
      */
     public ArrayList<String> readFromFile(File file) throws IOException {
         ArrayList<String> list = new ArrayList<>();
-        try {
-            this.br = new BufferedReader(new FileReader(file));
-            String buffer;
-            while((buffer = this.br.readLine()) != null){
-                list.add(buffer.trim());
+        this.readFromFile(file, line -> list.add(line.toString()));
+        return list;
+    }
+
+    /**
+     * Streams the entries from a selected csv file to a visitor one line at a time.
+     * Only the current line is held in memory, so the caller can build its model directly from the file.
+     * The line handed to the visitor is a window over a reused buffer and is only valid until the visitor returns.
+     *
+     * @param file The csv file to read.
+     * @param visitor The visitor that each trimmed line is handed to, in file order.
+     * @throws IOException Thrown if the file cannot be read.
+     */
+    public void readFromFile(File file, ILineVisitor visitor) throws IOException {
+        try (Reader reader = new FileReader(file)) {
+            this.readLines(reader, visitor);
+        } catch (IOException e) {
+            throw new IOException("Could not read required file.");
+        }
+    }
+
+    /**
+     * Streams csv entries from a reader to a visitor one line at a time, the same way as readFromFile.
+     * The reader is read until it ends but is not closed.
+     *
+     * @param reader The reader to read, such as a download or a decompressed archive.
+     * @param visitor The visitor that each trimmed line is handed to, in order.
+     * @throws IOException Thrown if the reader fails.
+     */
+    public void readFromReader(Reader reader, ILineVisitor visitor) throws IOException {
+        this.readLines(reader, visitor);
+    }
+
+    /**
+     * Splits a file into byte ranges of roughly equal size that each start at the beginning of a line, so that the
+     * ranges can be read on different threads. The file is memory-mapped rather than read.
+     *
+     * @param file The csv file to split.
+     * @param parts The number of ranges wanted. Fewer are returned if the file is small or has few lines.
+     * @param minimum The smallest range worth splitting off, in bytes.
+     * @return The ranges in file order, each a read-only buffer from its first byte to its last. Hand each one to
+     * readFromRange. Empty if the file is empty.
+     * @throws IOException Thrown if the file cannot be read, or is too large to be mapped.
+     */
+    public List<ByteBuffer> split(File file, int parts, int minimum) throws IOException {
+        ArrayList<ByteBuffer> ranges = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Could not read required file.");
+            }
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int size = bytes.limit();
+            int length = Math.max(minimum, size / Math.max(1, parts));
+            int start = 0;
+            while (start < size) {
+                int end = (int) Math.min((long) start + length, size);
+                // Move the end past the next line feed so that no line is cut in two.
+                while (end < size && bytes.get(end - 1) != '\n') {
+                    end++;
+                }
+                ByteBuffer range = bytes.duplicate();
+                range.position(start).limit(end);
+                ranges.add(range.slice());
+                start = end;
             }
         } catch (IOException e) {
-            throw new IOException("Could not write to required file.");
-        } finally {
-            this.br.close();
+            throw new IOException("Could not read required file.");
+        }
+        return ranges;
+    }
+
+    /**
+     * Streams the lines of a byte range returned by split to a visitor, the same way as readFromFile.
+     * This does not keep any state, so different ranges can be read on different threads at the same time.
+     *
+     * @param range The range to read.
+     * @param visitor The visitor that each trimmed line is handed to, in file order.
+     * @throws IOException Thrown if the range cannot be decoded.
+     */
+    public void readFromRange(ByteBuffer range, ILineVisitor visitor) throws IOException {
+        ByteBuffer bytes = range.duplicate();
+        InputStream in = new InputStream() {
+            @Override
+            public int read() {
+                return bytes.hasRemaining() ? bytes.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                if (!bytes.hasRemaining()) {
+                    return -1;
+                }
+                length = Math.min(length, bytes.remaining());
+                bytes.get(buffer, offset, length);
+                return length;
+            }
+        };
+        try (Reader reader = new InputStreamReader(in)) {
+            this.readLines(reader, visitor);
+        } catch (IOException e) {
+            throw new IOException("Could not read required file.");
+        }
+    }
+
+    /**
+     * Hands every line of a reader to a visitor, see readFromFile.
+     *
+     * @param reader The reader to read until it ends.
+     * @param visitor The visitor that each trimmed line is handed to.
+     * @throws IOException Thrown if the reader fails.
+     */
+    private void readLines(Reader reader, ILineVisitor visitor) throws IOException {
+        char[] buffer = new char[8192];
+        char[] line = new char[256];
+        CharBuffer window = CharBuffer.wrap(line);
+        int length = 0;
+        boolean pending = false;
+        boolean skipLineFeed = false;
+        int read;
+
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                char c = buffer[i];
+                if (skipLineFeed) {
+                    skipLineFeed = false;
+                    if (c == '\n') {
+                        continue;
+                    }
+                }
+                if (c == '\n' || c == '\r') {
+                    this.visitTrimmed(visitor, window, length);
+                    length = 0;
+                    pending = false;
+                    skipLineFeed = c == '\r';
+                } else {
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, line.length * 2);
+                        window = CharBuffer.wrap(line);
+                    }
+                    line[length++] = c;
+                    pending = true;
+                }
+            }
+        }
+        if (pending) {
+            this.visitTrimmed(visitor, window, length);
+        }
+    }
+
+    /**
+     * Hands the trimmed contents of the line buffer to a visitor without copying them.
+     *
+     * @param visitor The visitor to hand the line to.
+     * @param window A buffer wrapping the line characters.
+     * @param length The number of characters in the line.
+     */
+    private void visitTrimmed(ILineVisitor visitor, CharBuffer window, int length) {
+        char[] line = window.array();
+        int start = 0;
+        while (start < length && line[start] <= ' ') {
+            start++;
+        }
+        while (length > start && line[length - 1] <= ' ') {
+            length--;
+        }
+        window.limit(length).position(start);
+        visitor.visit(window);
+        window.clear();
+    }
+
+    /**
+     * Syncs a directory so that a file that was just moved into it survives a crash.
+     * Not every platform can open a directory, in which case the rename is left to the file system.
+     *
+     * @param directory The directory to sync.
+     */
+    private void syncDirectory(File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Best effort only, the file itself has already been synced.
         }
-        return list;
     }
 }
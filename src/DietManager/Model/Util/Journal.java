@@ -0,0 +1,155 @@
+package DietManager.Model.Util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only log of changes that sits next to a csv file.
+ * Handlers append one small record per change instead of rewriting the whole csv, replay the records on top of the
+ * csv when loading, and compact by writing the csv and truncating the journal once enough records build up.
+ * Every record is flushed as it is written, so a crash loses at most the record that was being written.
+ * When the csv file is written in the background, the journal is rotated into a pending file first. The pending
+ * records are only dropped once the csv has been written, and replaying them over that csv changes nothing.
+ */
+public class Journal {
+
+    private final File file;
+    private final File pending;
+    private BufferedWriter writer;
+    private int records;
+    private int generation;     // Bumped by every rotation so that a stale commit does not drop newer records.
+
+    /**
+     * Creates a journal backed by a file. Nothing is read or written until the journal is used.
+     * @param file The journal file.
+     */
+    public Journal(File file) {
+        this.file = file;
+        this.pending = new File(file.getPath() + ".1");
+    }
+
+    /**
+     * Creates the journal that belongs to a csv file.
+     * @param csv The csv file the journal records changes to.
+     * @return A journal stored next to the csv file.
+     */
+    public static Journal forFile(File csv) {
+        return new Journal(new File(csv.getPath() + ".journal"));
+    }
+
+    /**
+     * Returns the file backing the journal.
+     * @return The journal file.
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Returns the number of records in the journal.
+     * @return The number of records replayed or appended since the journal was last truncated.
+     */
+    public int size() {
+        return this.records;
+    }
+
+    /**
+     * Appends records and flushes them to disk with a single write.
+     * @param records The records to append, each of which must fit on a single line.
+     * @throws IOException Thrown if the journal cannot be written to.
+     */
+    public synchronized void append(String... records) throws IOException {
+        if (this.writer == null) {
+            this.writer = new BufferedWriter(new FileWriter(this.file, true));
+        }
+        for (String record : records) {
+            this.writer.write(record);
+            this.writer.newLine();
+        }
+        this.writer.flush();
+        this.records += records.length;
+    }
+
+    /**
+     * Hands every record in the journal to a visitor, oldest first, starting with any records that were rotated out
+     * by a background save that did not finish. Does nothing if there are no journal files.
+     * @param io The IOHandler used to read the journal.
+     * @param visitor The visitor that applies each record.
+     * @throws IOException Thrown if the journal exists but cannot be read.
+     */
+    public synchronized void replay(IOHandler io, ILineVisitor visitor) throws IOException {
+        for (File source : new File[] {this.pending, this.file}) {
+            if (source.exists()) {
+                io.readFromFile(source, record -> {
+                    if (record.length() > 0) {
+                        this.records++;
+                        visitor.visit(record);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Moves the current records aside before the csv file is written in the background.
+     * New records go to a fresh journal, the rotated ones are kept until commit is called.
+     * @return The generation to hand to commit once the csv file has been written.
+     * @throws IOException Thrown if the journal cannot be moved.
+     */
+    public synchronized int rotate() throws IOException {
+        this.close();
+        if (this.file.exists()) {
+            if (this.pending.exists()) {
+                // An earlier background save has not finished yet, keep both sets of records.
+                Files.write(this.pending.toPath(), Files.readAllBytes(this.file.toPath()), StandardOpenOption.APPEND);
+                if (!this.file.delete()) {
+                    throw new IOException("Could not rotate journal.");
+                }
+            } else if (!this.file.renameTo(this.pending)) {
+                throw new IOException("Could not rotate journal.");
+            }
+        }
+        this.records = 0;
+        return ++this.generation;
+    }
+
+    /**
+     * Drops the rotated records once the csv file they were folded into has been written.
+     * Does nothing if the journal has been rotated again since, as the newer save still needs them.
+     * @param generation The generation returned by rotate.
+     */
+    public synchronized void commit(int generation) {
+        if (generation == this.generation) {
+            this.pending.delete();
+        }
+    }
+
+    /**
+     * Empties the journal. Called once every record has been written into the csv file.
+     * @throws IOException Thrown if the journal cannot be removed.
+     */
+    public synchronized void truncate() throws IOException {
+        this.close();
+        if (this.file.exists() && !this.file.delete()) {
+            throw new IOException("Could not truncate journal.");
+        }
+        this.pending.delete();
+        this.records = 0;
+        this.generation++;
+    }
+
+    /**
+     * Closes the journal file. It is reopened by the next append.
+     * @throws IOException Thrown if the journal cannot be closed.
+     */
+    public synchronized void close() throws IOException {
+        if (this.writer != null) {
+            this.writer.close();
+            this.writer = null;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package DietManager.Model.Util;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Guards a handler's storage so that it can be read and changed from several threads, such as the JavaFX thread,
+ * the TextUI thread, the view service and the shutdown hook.
+ * Changes take the lock for themselves. Reads share it, and reads of arrays and plain fields can skip it altogether:
+ * peek runs them optimistically and only takes the lock if a change happened meanwhile, so they never wait for a
+ * change that is not touching what they read at that moment.
+ * A thread that holds the lock can call back into the handler, a change can read and make further changes and a
+ * read can make further reads. Changes made while the lock is held are announced to observers once it is released,
+ * after the handler's coalescing delay if one is set, so an observer can always read the handler it is told about.
+ */
+public class ModelLock {
+
+    private final StampedLock lock = new StampedLock();
+    private final BatchedObservable<?, ?> owner;
+    // Run after every change once the lock is released, or null.
+    private final Runnable released;
+    // The thread holding the write lock, if any.
+    private volatile Thread writer;
+    // How many reads the current thread is inside of, so that nested reads do not queue behind a waiting change.
+    private final ThreadLocal<int[]> reading = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * Creates a lock for a handler.
+     * @param owner The handler whose announcements wait for the lock to be released.
+     */
+    public ModelLock(BatchedObservable<?, ?> owner) {
+        this(owner, null);
+    }
+
+    /**
+     * Creates a lock for a handler that passes what a change did on to another handler. The hook runs on the thread
+     * that made the change, after the lock is released and before the change is announced, so it can take the lock of
+     * a handler that reads this one.
+     * @param owner The handler whose announcements wait for the lock to be released.
+     * @param released Run after every change once the lock is released.
+     */
+    public ModelLock(BatchedObservable<?, ?> owner, Runnable released) {
+        this.owner = owner;
+        this.released = released;
+    }
+
+    /**
+     * Runs a read that only looks at arrays and fields, without taking the lock unless a change gets in the way.
+     * The read may see the storage part way through a change, in which case what it returns or throws is discarded
+     * and it runs again under the lock, so it must not change anything, not even a cache, and must not loop over
+     * linked structures.
+     * @param query The read.
+     * @param <T> The type of the result.
+     * @param <E> The type of exception the read throws.
+     * @return The result of the read.
+     * @throws E Thrown by the read.
+     */
+    public <T, E extends Exception> T peek(Action<T, E> query) throws E {
+        if (this.writer == Thread.currentThread() || this.reading.get()[0] > 0) {
+            return query.run();
+        }
+        long stamp = this.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = query.run();
+                if (this.lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (Exception e) {
+                if (this.lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        return this.read(query);
+    }
+
+    /**
+     * Runs a read under the shared lock. Any number of threads can read at once, a change waits for them.
+     * @param query The read.
+     * @param <T> The type of the result.
+     * @param <E> The type of exception the read throws.
+     * @return The result of the read.
+     * @throws E Thrown by the read.
+     */
+    public <T, E extends Exception> T read(Action<T, E> query) throws E {
+        if (this.writer == Thread.currentThread()) {
+            return query.run();
+        }
+        int[] depth = this.reading.get();
+        if (depth[0] > 0) {
+            return query.run();
+        }
+        long stamp = this.lock.readLock();
+        depth[0]++;
+        try {
+            return query.run();
+        } finally {
+            depth[0]--;
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Runs a change with the lock to itself. Observers are told about it once the lock is released.
+     * @param change The change.
+     * @param <T> The type of the result.
+     * @param <E> The type of exception the change throws.
+     * @return The result of the change.
+     * @throws E Thrown by the change.
+     * @throws IllegalStateException Thrown if the current thread is reading the handler, since waiting for the other
+     * readers to finish could wait for ever.
+     */
+    public <T, E extends Exception> T write(Action<T, E> change) throws E {
+        if (this.writer == Thread.currentThread()) {
+            return change.run();
+        }
+        if (this.reading.get()[0] > 0) {
+            throw new IllegalStateException("Could not change the model while reading it.");
+        }
+        this.owner.hold();
+        try {
+            long stamp = this.lock.writeLock();
+            this.writer = Thread.currentThread();
+            try {
+                return change.run();
+            } finally {
+                this.writer = null;
+                this.lock.unlockWrite(stamp);
+            }
+        } finally {
+            try {
+                if (this.released != null) {
+                    this.released.run();
+                }
+            } finally {
+                this.owner.release();
+            }
+        }
+    }
+
+    /**
+     * A read or change run under the lock.
+     * @param <T> The type of the result, Void for a change that returns nothing.
+     * @param <E> The type of exception it throws.
+     */
+    public interface Action<T, E extends Exception> {
+        T run() throws E;
+    }
+}
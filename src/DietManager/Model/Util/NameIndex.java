@@ -0,0 +1,455 @@
+package DietManager.Model.Util;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An index over a set of names that finds the names matching what a user typed, ignoring case.
+ * What was typed is split into words, and a name matches if each of those words is the start of a word in the name,
+ * allowing a typo in words of three to five letters and two in longer ones.
+ * Names are not compared with the query one by one. The distinct words of all names are kept in a vocabulary, with
+ * the names each word appears in, and the words of the query are looked up in the vocabulary: exactly through a
+ * sorted map, and with typos through an index of the three letter sequences in each word. The names are then found
+ * by combining the lists of the words that matched.
+ * Names that start with the query come first, alphabetically. The rest are ranked by the number of typos, then
+ * shorter names first, then alphabetically.
+ */
+public class NameIndex {
+
+    // Removed names are only dropped from the word lists once there are at least this many of them.
+    private static final int REBUILD_AFTER = 1024;
+
+    // The id of every name in the index.
+    private final HashMap<String, Integer> ids;
+    // The names and their lower case keys by id, null once the name is removed.
+    private final ArrayList<String> names;
+    private final ArrayList<String> keys;
+    // Every name by its key followed by the name, so names that start with a query are next to each other.
+    private final TreeMap<String, Integer> sorted;
+    // Every distinct word in the names, in order, and by id.
+    private final TreeMap<String, Word> vocabulary;
+    private final ArrayList<Word> words;
+    // The ids of the words that contain each three letter sequence.
+    private final HashMap<String, Postings> grams;
+    private int removed;
+    // Reused by search: the last round of the search each name matched in, and its typos so far.
+    private int[] rounds;
+    private int[] typos;
+    private int round;
+
+    /**
+     * Creates an empty index.
+     */
+    public NameIndex() {
+        this.ids = new HashMap<>();
+        this.names = new ArrayList<>();
+        this.keys = new ArrayList<>();
+        this.sorted = new TreeMap<>();
+        this.vocabulary = new TreeMap<>();
+        this.words = new ArrayList<>();
+        this.grams = new HashMap<>();
+        this.rounds = new int[0];
+        this.typos = new int[0];
+    }
+
+    /**
+     * Adds a name to the index. Does nothing if the name is already in it.
+     * @param name The name.
+     */
+    public synchronized void add(String name) {
+        String key = key(name);
+        this.add(name, key, key + '\0' + name);
+    }
+
+    /**
+     * Adds names to the index, the same as adding them one at a time. The names are sorted first, so the sorted maps
+     * are filled in order and each insert only touches the part of them that the one before it did. For a large
+     * number of names, such as a whole catalog, this is several times faster.
+     * @param names The names.
+     */
+    public synchronized void addAll(Collection<String> names) {
+        ArrayList<Map.Entry<String, String>> entries = new ArrayList<>(names.size());
+        for (String name : names) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(key(name) + '\0' + name, name));
+        }
+        entries.sort(Map.Entry.comparingByKey());
+        for (Map.Entry<String, String> entry : entries) {
+            String name = entry.getValue();
+            String sortKey = entry.getKey();
+            this.add(name, sortKey.substring(0, sortKey.length() - name.length() - 1), sortKey);
+        }
+    }
+
+    /**
+     * Adds a name to the index. Does nothing if the name is already in it.
+     * @param name The name.
+     * @param key The key of the name.
+     * @param entry The key followed by the name, which the name is kept under in the sorted map.
+     */
+    private void add(String name, String key, String entry) {
+        if (this.ids.containsKey(name)) {
+            return;
+        }
+        int id = this.names.size();
+        this.ids.put(name, id);
+        this.names.add(name);
+        this.keys.add(key);
+        this.sorted.put(entry, id);
+        for (String text : new HashSet<>(split(key))) {
+            Word word = this.vocabulary.get(text);
+            if (word == null) {
+                word = new Word(this.words.size(), text);
+                this.vocabulary.put(text, word);
+                this.words.add(word);
+                for (String gram : grams(text)) {
+                    this.grams.computeIfAbsent(gram, g -> new Postings()).add(word.id);
+                }
+            }
+            word.names.add(id);
+        }
+    }
+
+    /**
+     * Removes a name from the index. Does nothing if the name is not in it.
+     * @param name The name.
+     */
+    public synchronized void remove(String name) {
+        Integer id = this.ids.remove(name);
+        if (id == null) {
+            return;
+        }
+        this.sorted.remove(this.keys.get(id) + '\0' + name);
+        this.names.set(id, null);
+        this.keys.set(id, null);
+        this.removed++;
+        if (this.removed >= REBUILD_AFTER && this.removed > this.ids.size()) {
+            this.rebuild();
+        }
+    }
+
+    /**
+     * Returns the number of names in the index.
+     * @return The number of names.
+     */
+    public synchronized int size() {
+        return this.ids.size();
+    }
+
+    /**
+     * Finds the names that best match a query.
+     * @param query What the user typed.
+     * @param count The most names to return.
+     * @return The matching names, best first.
+     */
+    public synchronized List<String> search(String query, int count) {
+        String key = key(query);
+        ArrayList<String> results = new ArrayList<>();
+        if (count <= 0 || key.isEmpty()) {
+            return results;
+        }
+
+        // Names that start with the query cannot be beaten, so there is nothing more to do if there are enough.
+        HashSet<Integer> found = new HashSet<>();
+        for (Integer id : this.sorted.subMap(key, key + Character.MAX_VALUE).values()) {
+            results.add(this.names.get(id));
+            found.add(id);
+            if (results.size() == count) {
+                return results;
+            }
+        }
+
+        List<String> tokens = split(key);
+        if (tokens.isEmpty()) {
+            return results;
+        }
+        int round = this.startSearch(tokens.size());
+        Postings touched = new Postings();
+        for (int t = 0; t < tokens.size(); t++) {
+            this.matchToken(tokens.get(t), round + t, t == 0 ? touched : null);
+        }
+
+        // Holds the best names seen so far, with the worst of them at the head.
+        int last = round + tokens.size() - 1;
+        int wanted = count - results.size();
+        PriorityQueue<Integer> best = new PriorityQueue<>(wanted, (a, b) -> -this.compare(a, b));
+        for (int i = 0; i < touched.size; i++) {
+            int id = touched.ids[i];
+            if (this.rounds[id] != last || found.contains(id)) {
+                continue;
+            }
+            if (best.size() < wanted) {
+                best.add(id);
+            } else if (this.compare(id, best.peek()) < 0) {
+                best.poll();
+                best.add(id);
+            }
+        }
+        String[] ranked = new String[best.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = this.names.get(best.poll());
+        }
+        results.addAll(Arrays.asList(ranked));
+        return results;
+    }
+
+    /**
+     * Marks the names that contain a word matching a token. Only names that matched every earlier token are kept,
+     * each with the fewest typos its words need.
+     * @param token A word of the query.
+     * @param round The round of the search for this token; names that matched every earlier token are at round - 1.
+     * @param touched Collects the names that match, for the first token only; null for the others.
+     */
+    private void matchToken(String token, int round, Postings touched) {
+        int distance = token.length() <= 2 ? 0 : token.length() <= 5 ? 1 : 2;
+        // Words are visited in order of typos, so the first match of a name is its best.
+        ArrayList<ArrayList<Word>> byTypos = new ArrayList<>();
+        for (int d = 0; d <= distance; d++) {
+            byTypos.add(new ArrayList<>());
+        }
+        for (Word word : this.vocabulary.subMap(token, token + Character.MAX_VALUE).values()) {
+            byTypos.get(0).add(word);
+        }
+        if (distance > 0) {
+            for (Word word : this.similarWords(token, distance)) {
+                int d = prefixDistance(token, word.text, distance);
+                if (d > 0 && d <= distance) {
+                    byTypos.get(d).add(word);
+                }
+            }
+        }
+
+        for (int d = 0; d <= distance; d++) {
+            for (Word word : byTypos.get(d)) {
+                Postings names = word.names;
+                for (int i = 0; i < names.size; i++) {
+                    int id = names.ids[i];
+                    if (touched != null) {
+                        if (this.rounds[id] != round && this.names.get(id) != null) {
+                            this.rounds[id] = round;
+                            this.typos[id] = d;
+                            touched.add(id);
+                        }
+                    } else if (this.rounds[id] == round - 1) {
+                        this.rounds[id] = round;
+                        this.typos[id] += d;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the words that share enough three letter sequences with a token to be within a number of typos of it.
+     * @param token A word of the query.
+     * @param distance The most typos allowed.
+     * @return The candidate words, which still have to be compared with the token.
+     */
+    private List<Word> similarWords(String token, int distance) {
+        Set<String> grams = grams(token);
+        // A typo changes at most three sequences, so a match shares at least this many with the token.
+        int needed = Math.max(1, grams.size() - 3 * distance);
+        HashMap<Integer, Integer> shared = new HashMap<>();
+        for (String gram : grams) {
+            Postings postings = this.grams.get(gram);
+            if (postings != null) {
+                for (int i = 0; i < postings.size; i++) {
+                    shared.merge(postings.ids[i], 1, Integer::sum);
+                }
+            }
+        }
+        ArrayList<Word> similar = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : shared.entrySet()) {
+            if (entry.getValue() >= needed) {
+                similar.add(this.words.get(entry.getKey()));
+            }
+        }
+        return similar;
+    }
+
+    /**
+     * Starts a search, making sure the scratch arrays cover every name. Every search takes rounds that no earlier
+     * search used, so the arrays never have to be cleared.
+     * @param tokens The number of words in the query.
+     * @return The round of the first word of the query.
+     */
+    private int startSearch(int tokens) {
+        int size = this.names.size();
+        if (this.rounds.length < size || this.round > Integer.MAX_VALUE - tokens - 1) {
+            this.rounds = new int[Math.max(size, this.rounds.length * 2)];
+            this.typos = new int[this.rounds.length];
+            this.round = 0;
+        }
+        int first = this.round + 1;
+        this.round += tokens;
+        return first;
+    }
+
+    /**
+     * Orders two matching names.
+     * @param a The id of one name.
+     * @param b The id of the other.
+     * @return Less than zero if the first name ranks higher.
+     */
+    private int compare(int a, int b) {
+        if (this.typos[a] != this.typos[b]) {
+            return Integer.compare(this.typos[a], this.typos[b]);
+        }
+        String keyA = this.keys.get(a);
+        String keyB = this.keys.get(b);
+        if (keyA.length() != keyB.length()) {
+            return Integer.compare(keyA.length(), keyB.length());
+        }
+        return keyA.compareTo(keyB);
+    }
+
+    /**
+     * Returns the fewest edits that turn a token into the start of a word.
+     * @param token The token.
+     * @param word The word.
+     * @param limit The most edits worth counting.
+     * @return The edits needed, or more than the limit if the limit is exceeded.
+     */
+    private static int prefixDistance(String token, String word, int limit) {
+        int columns = Math.min(word.length(), token.length() + limit);
+        int[] previous = new int[columns + 1];
+        int[] current = new int[columns + 1];
+        for (int j = 0; j <= columns; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= token.length(); i++) {
+            current[0] = i;
+            int rowBest = current[0];
+            char c = token.charAt(i - 1);
+            for (int j = 1; j <= columns; j++) {
+                int cost = c == word.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1], previous[j]) + 1, previous[j - 1] + cost);
+                rowBest = Math.min(rowBest, current[j]);
+            }
+            if (rowBest > limit) {
+                return limit + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        int best = previous[0];
+        for (int j = 1; j <= columns; j++) {
+            best = Math.min(best, previous[j]);
+        }
+        return best;
+    }
+
+    /**
+     * Reassigns ids so that removed names, and words only they used, no longer take up room. The scratch arrays of
+     * search are dropped too, and sized again for the names that are left by the next search.
+     */
+    private void rebuild() {
+        ArrayList<String> live = new ArrayList<>(this.ids.keySet());
+        this.ids.clear();
+        this.names.clear();
+        this.keys.clear();
+        this.sorted.clear();
+        this.vocabulary.clear();
+        this.words.clear();
+        this.grams.clear();
+        this.removed = 0;
+        this.rounds = new int[0];
+        this.typos = new int[0];
+        this.round = 0;
+        this.addAll(live);
+    }
+
+    /**
+     * Returns the key a name is indexed and compared under.
+     * @param name The name.
+     * @return The trimmed, lower case name.
+     */
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Splits a key into its words, which are the runs of letters and digits in it.
+     * @param key The key.
+     * @return The words, in order.
+     */
+    private static List<String> split(String key) {
+        ArrayList<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= key.length(); i++) {
+            boolean inWord = i < key.length() && Character.isLetterOrDigit(key.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(key.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Returns the three letter sequences in a word, including two that mark its start.
+     * @param word The word.
+     * @return The sequences.
+     */
+    private static Set<String> grams(String word) {
+        HashSet<String> grams = new HashSet<>();
+        String padded = "  " + word;
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    /**
+     * A growable list of ids.
+     */
+    private static class Postings {
+
+        private int[] ids = new int[2];
+        private int size;
+
+        /**
+         * Appends an id.
+         * @param id The id.
+         */
+        void add(int id) {
+            if (this.size == this.ids.length) {
+                this.ids = Arrays.copyOf(this.ids, this.size * 2);
+            }
+            this.ids[this.size++] = id;
+        }
+    }
+
+    /**
+     * A distinct word of the names, and the names it appears in.
+     */
+    private static class Word {
+
+        private final int id;
+        private final String text;
+        private final Postings names;
+
+        /**
+         * Creates a word.
+         * @param id The id of the word.
+         * @param text The lower case word.
+         */
+        Word(int id, String text) {
+            this.id = id;
+            this.text = text;
+            this.names = new Postings();
+        }
+    }
+}
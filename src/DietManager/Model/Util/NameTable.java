@@ -0,0 +1,204 @@
+package DietManager.Model.Util;
+
+import java.util.Arrays;
+
+/**
+ * Gives names small integer ids. Each name is kept once, and keeps the same id for as long as the table exists, even
+ * if whatever it named is removed and added again.
+ * Names can be looked up straight from the characters of a csv field, so that reading a row that refers to a name
+ * does not have to allocate a String first. Looking a name up does not take a lock; only adding one does.
+ */
+public class NameTable {
+
+    /**
+     * What the table holds at one point. A new one is published after every name that is added, so a reader that
+     * does not take the lock sees the names, the slots and the size together.
+     */
+    private static final class Contents {
+
+        final String[] names;
+        // Open addressing hash table holding id + 1 of each name, 0 for an empty slot.
+        final int[] slots;
+        final int size;
+
+        /**
+         * Creates the contents.
+         * @param names The names, by id.
+         * @param slots The hash table of ids.
+         * @param size The number of names.
+         */
+        Contents(String[] names, int[] slots, int size) {
+            this.names = names;
+            this.slots = slots;
+            this.size = size;
+        }
+    }
+
+    private volatile Contents contents;
+
+    /**
+     * Creates an empty table.
+     */
+    public NameTable() {
+        this.contents = new Contents(new String[16], new int[32], 0);
+    }
+
+    /**
+     * Returns the id of a name, giving it the next id if it does not have one yet.
+     * @param name The name.
+     * @return The id of the name.
+     */
+    public synchronized int intern(String name) {
+        int id = this.find(name);
+        if (id >= 0) {
+            return id;
+        }
+        Contents contents = this.contents;
+        id = contents.size;
+        String[] names = contents.names;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+        }
+        names[id] = name;
+        // The slots are only ever written in place while the names are too, so an old reader never finds an id
+        // that is past the end of its names.
+        int[] slots = contents.slots;
+        if (names != contents.names || (id + 1) * 2 > slots.length) {
+            slots = rehash(names, id, slots.length * 2);
+        }
+        place(slots, name, id);
+        this.contents = new Contents(names, slots, id + 1);
+        return id;
+    }
+
+    /**
+     * Returns the id of a name.
+     * @param name The name.
+     * @return The id, or -1 if the name has none.
+     */
+    public int find(CharSequence name) {
+        Contents contents = this.contents;
+        int[] slots = contents.slots;
+        int mask = slots.length - 1;
+        for (int slot = hash(name) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            String candidate = contents.names[slots[slot] - 1];
+            if (candidate != null && candidate.contentEquals(name)) {
+                return slots[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the id of a name held in part of a character array.
+     * @param chars The characters.
+     * @param start The first character of the name.
+     * @param end One past the last character of the name.
+     * @return The id, or -1 if the name has none.
+     */
+    public int find(char[] chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        Contents contents = this.contents;
+        int[] slots = contents.slots;
+        int mask = slots.length - 1;
+        for (int slot = spread(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            String candidate = contents.names[slots[slot] - 1];
+            if (candidate != null && matches(candidate, chars, start, end)) {
+                return slots[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the name with an id.
+     * @param id The id.
+     * @return The name.
+     */
+    public String nameOf(int id) {
+        return this.contents.names[id];
+    }
+
+    /**
+     * Returns the number of names in the table, which is one more than the highest id.
+     * @return The number of names.
+     */
+    public int size() {
+        return this.contents.size;
+    }
+
+    /**
+     * Puts an id in the first free slot for its name.
+     * @param slots The hash table.
+     * @param name The name.
+     * @param id The id.
+     */
+    private static void place(int[] slots, String name, int id) {
+        int mask = slots.length - 1;
+        int slot = hash(name) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+    }
+
+    /**
+     * Moves the names into a larger hash table. Readers keep using the old one until the new one is published.
+     * @param names The names, by id.
+     * @param size The number of names to move.
+     * @param capacity The number of slots, a power of two.
+     * @return The new hash table.
+     */
+    private static int[] rehash(String[] names, int size, int capacity) {
+        int[] slots = new int[capacity];
+        for (int id = 0; id < size; id++) {
+            place(slots, names[id], id);
+        }
+        return slots;
+    }
+
+    /**
+     * Tests if a name is the same as part of a character array.
+     * @param name The name.
+     * @param chars The characters.
+     * @param start The first character to compare.
+     * @param end One past the last character to compare.
+     * @return True if they are the same.
+     */
+    private static boolean matches(String name, char[] chars, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes a name the same way as String.hashCode, so that a name hashes the same whatever holds it.
+     * @param name The name.
+     * @return The hash.
+     */
+    private static int hash(CharSequence name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + name.charAt(i);
+        }
+        return spread(hash);
+    }
+
+    /**
+     * Mixes the high bits of a hash into the low bits, which are the ones used to pick a slot.
+     * @param hash The hash.
+     * @return The mixed hash.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
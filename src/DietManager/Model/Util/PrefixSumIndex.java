@@ -0,0 +1,186 @@
+package DietManager.Model.Util;
+
+/**
+ * A set of per-key value columns with a Fenwick tree over each column, so that the sum of a column over any
+ * range of keys is answered in O(log n) and a single key can be changed in O(log n).
+ * Keys are dense integers such as epoch-days. Storage covers every key between the lowest and highest key that
+ * has been set, and grows (rebuilding the trees in linear time) when a key outside that span is set.
+ */
+public class PrefixSumIndex {
+
+    private final int columns;
+    private int base;           // The key stored at position 0.
+    private int capacity;       // The number of keys covered, always a power of two.
+    private double[][] values;  // The point values of each column.
+    private double[][] trees;   // The Fenwick tree of each column, 1-indexed.
+
+    /**
+     * Creates an empty index.
+     * @param columns The number of value columns stored for every key.
+     */
+    public PrefixSumIndex(int columns) {
+        this.columns = columns;
+        this.values = new double[columns][0];
+        this.trees = new double[columns][1];
+    }
+
+    /**
+     * Replaces every column value for a key.
+     * @param key The key to set.
+     * @param row The new value of each column, in column order.
+     */
+    public void set(int key, double[] row) {
+        this.ensureCovers(key);
+        int position = key - this.base;
+        for (int column = 0; column < this.columns; column++) {
+            double delta = row[column] - this.values[column][position];
+            if (delta != 0) {
+                this.values[column][position] = row[column];
+                this.add(this.trees[column], position, delta);
+            }
+        }
+    }
+
+    /**
+     * Sets every column value for a key back to zero.
+     * @param key The key to clear.
+     */
+    public void clear(int key) {
+        if (!this.covers(key)) {
+            return;
+        }
+        int position = key - this.base;
+        for (int column = 0; column < this.columns; column++) {
+            double delta = -this.values[column][position];
+            if (delta != 0) {
+                this.values[column][position] = 0;
+                this.add(this.trees[column], position, delta);
+            }
+        }
+    }
+
+    /**
+     * Removes every value from the index.
+     */
+    public void clear() {
+        this.capacity = 0;
+        this.values = new double[this.columns][0];
+        this.trees = new double[this.columns][1];
+    }
+
+    /**
+     * Returns the value of one column for a key.
+     * @param column The column to read.
+     * @param key The key to read.
+     * @return The value, or 0 if the key was never set.
+     */
+    public double get(int column, int key) {
+        return this.covers(key) ? this.values[column][key - this.base] : 0;
+    }
+
+    /**
+     * Returns the sum of one column over a range of keys.
+     * @param column The column to sum.
+     * @param fromKey The first key of the range, inclusive.
+     * @param toKey The last key of the range, inclusive.
+     * @return The sum of the column over the range.
+     */
+    public double sum(int column, int fromKey, int toKey) {
+        if (this.capacity == 0 || fromKey > toKey) {
+            return 0;
+        }
+        // Clamp to the covered span, everything outside of it is zero.
+        long from = Math.max((long) fromKey - this.base, 0);
+        long to = Math.min((long) toKey - this.base, this.capacity - 1);
+        if (from > to) {
+            return 0;
+        }
+        return this.prefix(this.trees[column], (int) to + 1) - this.prefix(this.trees[column], (int) from);
+    }
+
+    /**
+     * Returns if a key falls inside the span that is currently stored.
+     * @param key The key to check.
+     * @return True if the key is covered.
+     */
+    private boolean covers(int key) {
+        return this.capacity > 0 && key >= this.base && (long) key - this.base < this.capacity;
+    }
+
+    /**
+     * Grows the stored span so that it includes a key, rebuilding the trees if the span changes.
+     * @param key The key that needs to be covered.
+     * @throws IllegalArgumentException Thrown if covering the key would need more than 2^30 positions.
+     */
+    private void ensureCovers(int key) {
+        if (this.covers(key)) {
+            return;
+        }
+        int low = this.capacity == 0 ? key : Math.min(key, this.base);
+        long high = this.capacity == 0 ? key : Math.max(key, (long) this.base + this.capacity - 1);
+        long span = high - low + 1;
+        if (span > 1 << 30) {
+            throw new IllegalArgumentException("Keys are too far apart to index.");
+        }
+        int newCapacity = Math.max(16, Integer.highestOneBit((int) span));
+        if (newCapacity < span) {
+            newCapacity *= 2;
+        }
+        // Leave room on the side that grew so that a run of new keys does not rebuild every time.
+        int newBase = key < this.base && this.capacity > 0 ? (int) (high - newCapacity + 1) : low;
+
+        for (int column = 0; column < this.columns; column++) {
+            double[] grown = new double[newCapacity];
+            if (this.capacity > 0) {
+                System.arraycopy(this.values[column], 0, grown, this.base - newBase, this.capacity);
+            }
+            this.values[column] = grown;
+            this.trees[column] = this.build(grown);
+        }
+        this.base = newBase;
+        this.capacity = newCapacity;
+    }
+
+    /**
+     * Builds a Fenwick tree over a column in linear time.
+     * @param column The point values of the column.
+     * @return The tree.
+     */
+    private double[] build(double[] column) {
+        double[] tree = new double[column.length + 1];
+        System.arraycopy(column, 0, tree, 1, column.length);
+        for (int i = 1; i <= column.length; i++) {
+            int parent = i + (i & -i);
+            if (parent <= column.length) {
+                tree[parent] += tree[i];
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Adds a delta to a position of a tree.
+     * @param tree The tree to update.
+     * @param position The 0-indexed position to update.
+     * @param delta The amount to add.
+     */
+    private void add(double[] tree, int position, double delta) {
+        for (int i = position + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Returns the sum of the first few positions of a tree.
+     * @param tree The tree to read.
+     * @param length The number of positions to sum.
+     * @return The sum of positions 0 to length - 1.
+     */
+    private double prefix(double[] tree, int length) {
+        double sum = 0;
+        for (int i = length; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+}
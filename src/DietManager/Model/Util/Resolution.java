@@ -0,0 +1,85 @@
+package DietManager.Model.Util;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * The spans of time that days can be grouped into, so that a long history can be summarised in a bounded number of
+ * buckets. Weeks start on Monday.
+ */
+public enum Resolution {
+
+    DAY,
+    WEEK,
+    MONTH,
+    YEAR;
+
+    /**
+     * Returns the first day of the bucket a day falls in.
+     * @param day The day.
+     * @return The first day of its bucket.
+     */
+    public LocalDate start(LocalDate day) {
+        switch (this) {
+            case DAY:
+                return day;
+            case WEEK:
+                return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH:
+                return day.withDayOfMonth(1);
+            default:
+                return day.withDayOfYear(1);
+        }
+    }
+
+    /**
+     * Returns the first day of the bucket after the one a day falls in.
+     * @param day The day.
+     * @return The first day of the next bucket.
+     */
+    public LocalDate next(LocalDate day) {
+        switch (this) {
+            case DAY:
+                return day.plusDays(1);
+            case WEEK:
+                return this.start(day).plusWeeks(1);
+            case MONTH:
+                return this.start(day).plusMonths(1);
+            default:
+                return this.start(day).plusYears(1);
+        }
+    }
+
+    /**
+     * Counts the buckets that a range of days touches.
+     * @param from The first day of the range, inclusive.
+     * @param to The last day of the range, inclusive.
+     * @return The number of buckets, or 0 if the range is empty.
+     */
+    public long count(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return 0;
+        }
+        ChronoUnit unit = this == DAY ? ChronoUnit.DAYS : this == WEEK ? ChronoUnit.WEEKS
+                : this == MONTH ? ChronoUnit.MONTHS : ChronoUnit.YEARS;
+        return unit.between(this.start(from), this.start(to)) + 1;
+    }
+
+    /**
+     * Returns the finest resolution that splits a range of days into no more than a number of buckets.
+     * @param from The first day of the range, inclusive.
+     * @param to The last day of the range, inclusive.
+     * @param maxBuckets The most buckets wanted.
+     * @return The finest resolution that fits, or YEAR if none do.
+     */
+    public static Resolution fit(LocalDate from, LocalDate to, int maxBuckets) {
+        for (Resolution resolution : values()) {
+            if (resolution.count(from, to) <= maxBuckets) {
+                return resolution;
+            }
+        }
+        return YEAR;
+    }
+}
@@ -0,0 +1,259 @@
+package DietManager.Model.Util;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+
+/**
+ * A sorted map from primitive int keys to values.
+ * Keys and values are kept in two parallel arrays ordered by key, so lookups are a binary search over an int[]
+ * and never box the key. Inserting in ascending key order, which is how logs are usually read, only appends.
+ * A key can also be stored with a null value to mark it present while its value lives elsewhere, see setLoader.
+ * @param <V> The type of the values.
+ */
+public class SortedIntMap<V> {
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private IntFunction<V> loader;
+
+    /**
+     * Creates an empty map.
+     */
+    public SortedIntMap() {
+        this.keys = new int[16];
+        this.values = new Object[16];
+    }
+
+    /**
+     * Sets where values stored as null come from. get, valueAt and the views ask the loader for the value of such a
+     * key every time it is read; the map does not keep what the loader returns, put the value to keep it.
+     * @param loader The loader, or null to return null for those keys.
+     */
+    public void setLoader(IntFunction<V> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Returns the number of keys in the map.
+     * @return The number of keys in the map.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns if the map is empty.
+     * @return True if there are no keys in the map.
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Returns the value stored for a key.
+     * @param key The key to look up.
+     * @return The value, or null if the key is not present.
+     */
+    public V get(int key) {
+        int index = this.indexOf(key);
+        return index >= 0 ? this.valueAt(index) : null;
+    }
+
+    /**
+     * Returns the value that is actually stored for a key, without asking the loader.
+     * @param key The key to look up.
+     * @return The stored value, or null if the key is not present or its value is left to the loader.
+     */
+    public V getStored(int key) {
+        int index = this.indexOf(key);
+        return index >= 0 ? this.storedAt(index) : null;
+    }
+
+    /**
+     * Returns if a key is present in the map.
+     * @param key The key to look for.
+     * @return True if the key is present.
+     */
+    public boolean containsKey(int key) {
+        return this.indexOf(key) >= 0;
+    }
+
+    /**
+     * Stores a value for a key, replacing any value that was already stored.
+     * @param key The key.
+     * @param value The value, or null to leave it to the loader.
+     * @return The value that was stored before, or null if the key was not present or had no stored value.
+     */
+    public V put(int key, V value) {
+        int index = this.indexOf(key);
+        if (index >= 0) {
+            V previous = this.storedAt(index);
+            this.values[index] = value;
+            return previous;
+        }
+
+        index = -(index + 1);
+        if (this.size == this.keys.length) {
+            this.keys = Arrays.copyOf(this.keys, this.size * 2);
+            this.values = Arrays.copyOf(this.values, this.size * 2);
+        }
+        System.arraycopy(this.keys, index, this.keys, index + 1, this.size - index);
+        System.arraycopy(this.values, index, this.values, index + 1, this.size - index);
+        this.keys[index] = key;
+        this.values[index] = value;
+        this.size++;
+        return null;
+    }
+
+    /**
+     * Removes a key from the map.
+     * @param key The key to remove.
+     * @return The value that was stored for the key, or null if the key was not present or had no stored value.
+     */
+    public V remove(int key) {
+        int index = this.indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V previous = this.storedAt(index);
+        System.arraycopy(this.keys, index + 1, this.keys, index, this.size - index - 1);
+        System.arraycopy(this.values, index + 1, this.values, index, this.size - index - 1);
+        this.size--;
+        this.values[this.size] = null;
+        return previous;
+    }
+
+    /**
+     * Removes every key from the map.
+     */
+    public void clear() {
+        Arrays.fill(this.values, 0, this.size, null);
+        this.size = 0;
+    }
+
+    /**
+     * Finds the position of a key.
+     * @param key The key to find.
+     * @return The index of the key, or (-(insertion point) - 1) if it is not present.
+     */
+    public int indexOf(int key) {
+        // Fast path for appending in ascending order.
+        if (this.size == 0 || key > this.keys[this.size - 1]) {
+            return -(this.size + 1);
+        }
+        return Arrays.binarySearch(this.keys, 0, this.size, key);
+    }
+
+    /**
+     * Returns the key at a position.
+     * @param index The position, from 0 to size() - 1.
+     * @return The key at the position.
+     */
+    public int keyAt(int index) {
+        return this.keys[index];
+    }
+
+    /**
+     * Returns the value at a position.
+     * @param index The position, from 0 to size() - 1.
+     * @return The value at the position.
+     */
+    public V valueAt(int index) {
+        V value = this.storedAt(index);
+        if (value == null && this.loader != null) {
+            value = this.loader.apply(this.keys[index]);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value that is actually stored at a position, without asking the loader.
+     * Use this to look at the values that have been loaded without loading the rest.
+     * @param index The position, from 0 to size() - 1.
+     * @return The stored value, which may be null.
+     */
+    @SuppressWarnings("unchecked")
+    public V storedAt(int index) {
+        return (V) this.values[index];
+    }
+
+    /**
+     * Returns the position of the first key that is greater than or equal to a key.
+     * @param key The key to search from.
+     * @return The position, which is size() if every key is smaller.
+     */
+    public int ceilingIndex(int key) {
+        int index = this.indexOf(key);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    /**
+     * Returns a copy of the map. Only the two arrays are copied: values stored as null stay null and the copy has no
+     * loader, so nothing is loaded. Use storedAt on the copy, and look up the keys it has no value for elsewhere.
+     * @return The copy.
+     */
+    public SortedIntMap<V> copy() {
+        SortedIntMap<V> copy = new SortedIntMap<>();
+        copy.keys = Arrays.copyOf(this.keys, Math.max(this.size, 1));
+        copy.values = Arrays.copyOf(this.values, Math.max(this.size, 1));
+        copy.size = this.size;
+        return copy;
+    }
+
+    /**
+     * Returns a view of the values in ascending key order. The view is not a copy and reflects later changes.
+     * @return The values in the map.
+     */
+    public Collection<V> values() {
+        return this.values(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns a view of the values whose keys fall in a range, in ascending key order.
+     * The view is not a copy: the range is located with a binary search each time it is iterated,
+     * so it reflects later changes and only ever touches the values inside the range.
+     * @param fromKey The lowest key in the range, inclusive.
+     * @param toKey The highest key in the range, inclusive.
+     * @return The values in the range.
+     */
+    public Collection<V> values(int fromKey, int toKey) {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                int first = SortedIntMap.this.ceilingIndex(fromKey);
+                int last = toKey == Integer.MAX_VALUE ? SortedIntMap.this.size : SortedIntMap.this.ceilingIndex(toKey + 1);
+
+                return new Iterator<V>() {
+                    private int next = first;
+
+                    @Override
+                    public boolean hasNext() {
+                        return this.next < last && this.next < SortedIntMap.this.size;
+                    }
+
+                    @Override
+                    public V next() {
+                        if (!this.hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return SortedIntMap.this.valueAt(this.next++);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                if (fromKey > toKey) {
+                    return 0;
+                }
+                int last = toKey == Integer.MAX_VALUE ? SortedIntMap.this.size : SortedIntMap.this.ceilingIndex(toKey + 1);
+                return last - SortedIntMap.this.ceilingIndex(fromKey);
+            }
+        };
+    }
+}
@@ -24,9 +24,11 @@ import java.util.Observer;
  */
 public class ExerciseTable extends Pane implements Observer {
 
-    private ObservableList<Exercise> data;
+    private ObservableList<Exercise> data = FXCollections.observableArrayList();
+    private TableUpdates<String, Exercise> updates = new TableUpdates<>(Exercise::getName, null);
     private TableView<Exercise>table;
     private ExerciseHandler exerciseHandler;
+    private ViewModelService views;
     private Label label;
     private VBox vbox;
 
@@ -34,12 +36,14 @@ public class ExerciseTable extends Pane implements Observer {
      * Constructor for the exercise table
      *
      * @param exerciseHandler the exercise handler needed to get all exercise entries
+     * @param views the service the rows are read on when every row has to be read again
      */
-    public ExerciseTable(ExerciseHandler exerciseHandler){
+    public ExerciseTable(ExerciseHandler exerciseHandler, ViewModelService views){
 
         this.exerciseHandler = exerciseHandler;
+        this.views = views;
         this.exerciseHandler.addObserver(this);
-        table = new TableView<>();
+        table = new TableView<>(data);
         label = new Label("Exercise List");
         label.setFont(new Font("Arial", 20));
 
@@ -64,14 +68,22 @@ public class ExerciseTable extends Pane implements Observer {
 
     /**
      * Implement the Observer update method. Calls all observable objects to let them know an update has been made
+     * Only the rows that changed are updated, unless the handler asks for everything to be read again, in which case
+     * the rows are read on the background service and shown once they are ready.
      *
      * @param obs the obeservable object
      * @param o object that observable wil get updated about/with
      *
      */
     public void update(Observable obs, Object o){
-        data = FXCollections.observableArrayList(exerciseHandler.getAll());
-        table.setItems(data);
+        if (!views.isPending(this) && updates.apply(o)) {
+            return;
+        }
+        views.submit(this, exerciseHandler::getAll, rows -> {
+            data = FXCollections.observableArrayList(rows);
+            updates.reset(data);
+            table.setItems(data);
+        });
     }
 
     /**
@@ -90,5 +102,6 @@ public class ExerciseTable extends Pane implements Observer {
      */
     public void setData(ObservableList<Exercise> data) {
         this.data = data;
+        updates.reset(data);
     }
 }
@@ -24,9 +24,11 @@ import java.util.Observer;
  */
 public class FoodTable extends Pane implements Observer {
 
-    private ObservableList<Food> data;
+    private ObservableList<Food> data = FXCollections.observableArrayList();
+    private TableUpdates<String, Food> updates = new TableUpdates<>(Food::getName, null);
     private TableView<Food>table;
     private FoodHandler foodHandler;
+    private ViewModelService views;
     private ExerciseHandler exerciseHandler;
     private EntryHandler entryHandler;
     private Label label;
@@ -36,11 +38,13 @@ public class FoodTable extends Pane implements Observer {
      * Constructor for the food table
      *
      * @param foodHandler the exercise handler needed to get all food entries
+     * @param views the service the rows are read on when every row has to be read again
      */
-    public FoodTable(FoodHandler foodHandler){
+    public FoodTable(FoodHandler foodHandler, ViewModelService views){
+        this.views = views;
         this.foodHandler = foodHandler;
         this.foodHandler.addObserver(this);
-        table = new TableView<>();
+        table = new TableView<>(data);
         label = new Label("Food Pantry");
         label.setFont(new Font("Arial", 20));
 
@@ -76,14 +80,22 @@ public class FoodTable extends Pane implements Observer {
 
     /**
      * Implement the Observer update method. Calls all observable objects to let them know an update has been made
+     * Only the rows that changed are updated, unless the handler asks for everything to be read again, in which case
+     * the rows are read on the background service and shown once they are ready.
      *
      * @param obs the obeservable object
      * @param o object that observable wil get updated about/with
      *
      */
     public void update(Observable obs, Object o){
-        data = FXCollections.observableArrayList(foodHandler.getAll());
-        table.setItems(data);
+        if (!views.isPending(this) && updates.apply(o)) {
+            return;
+        }
+        views.submit(this, foodHandler::getAll, rows -> {
+            data = FXCollections.observableArrayList(rows);
+            updates.reset(data);
+            table.setItems(data);
+        });
     }
 
     /**
@@ -1,10 +1,12 @@
 package DietManager.View.FXComponents;
 
-import DietManager.Model.Entry.Entry;
-import DietManager.Model.Entry.FoodEntry;
+import DietManager.Model.Entry.Nutrient;
 import DietManager.Model.EntryHandler;
-import DietManager.Model.ExerciseHandler;
-import DietManager.Model.FoodHandler;
+import DietManager.Model.NutritionBucket;
+import DietManager.Model.Util.ChangeEvent;
+import DietManager.Model.Util.ChangeSet;
+import DietManager.Model.Util.DateKey;
+import DietManager.Model.Util.Resolution;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.Group;
@@ -12,87 +14,396 @@ import javafx.scene.chart.BarChart;
 import javafx.scene.chart.CategoryAxis;
 import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.XYChart;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.Pane;
 
-import java.util.Arrays;
-import java.util.Collection;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
+/**
+ * Displays the fat, protein and carbs of the logged days as a bar chart.
+ * The chart shows a window of days, by default the whole history, in no more than MAX_BARS groups of bars: day by
+ * day while that fits, otherwise averaged by week, month or year. Every group is read from the entry handler's daily
+ * totals in O(log n), so neither the history's length nor panning and zooming make a redraw slower. The window is
+ * zoomed by scrolling over the chart and moved by scrolling sideways, or with shift held, as well as from the menu.
+ * The groups are read on the view service's background thread, which keeps the groups it has read and only reads
+ * the ones that changed or came into view. The FX thread is handed the finished values and only touches the bars
+ * whose values differ from what is shown.
+ */
 public class Graph extends Pane implements Observer {
 
+    // The most groups of bars shown at once.
+    private static final int MAX_BARS = 60;
+    // How much one step of scrolling zooms in by, and how far it moves the window, as a part of its length.
+    private static final double ZOOM_STEP = 0.8;
+    private static final double PAN_STEP = 0.25;
+    private static final String[] NUTRIENTS = {"Fat", "Protein", "Carbs"};
+    private static final Nutrient[] VALUES = {Nutrient.FAT, Nutrient.PROTEIN, Nutrient.CARBS};
+
     private EntryHandler entryHandler;
+    private ViewModelService views;
+    // The window chosen with setWindow, or null to follow the whole history.
+    private volatile LocalDate[] window;
+    // The days that changed since the background thread last read them, guarded by itself.
+    private final HashSet<Integer> changedDays = new HashSet<>();
+    private boolean reset;
 
-    public Graph(EntryHandler entryHandler){
+    // Only used on the background thread: the resolution the buckets were read at, the bucket keys that have been
+    // read, the values of each non-empty bucket by the epoch-day it starts on, and how many bars have each value.
+    private Resolution resolution;
+    private int readFrom;
+    private int readTo = -1;
+    private TreeMap<Integer, double[]> values = new TreeMap<>();
+    private TreeMap<Double, Integer> heights = new TreeMap<>();
 
-        this.entryHandler = entryHandler;
-        this.entryHandler.addObserver(this);
-        update(entryHandler,entryHandler);
-    }
+    // Only used on the FX thread.
+    private NumberAxis yAxis;
+    private BarChart<String,Number> barChart;
+    private Resolution shownResolution;
+    private TreeMap<Integer, XYChart.Series<String,Number>> series = new TreeMap<>();
 
-    @Override
-    public void update(Observable observable, Object o) {
-        Collection<Entry> entries = entryHandler.getAll();
-        double maxValue = getMaxValue(entries);
-        ObservableList<String>nutrientTypes = FXCollections.observableArrayList();
-        nutrientTypes.addAll("Fat","Protein","Carbs");
+    public Graph(EntryHandler entryHandler, ViewModelService views){
+
+        this.entryHandler = entryHandler;
+        this.views = views;
+        ObservableList<String>nutrientTypes = FXCollections.observableArrayList(NUTRIENTS);
         //Defining the x axis
         CategoryAxis xAxis = new CategoryAxis();
         xAxis.setCategories(nutrientTypes);
         //Defining the y axis
-        NumberAxis yAxis = new NumberAxis(0,maxValue,20);
+        yAxis = new NumberAxis(0,0,20);
         yAxis.setLabel("Grams");
         //Creating the Bar chart
-        BarChart<String,Number>barChart = new BarChart<>(xAxis,yAxis);
+        barChart = new BarChart<>(xAxis,yAxis);
         barChart.setTitle("Nutrition by Entry Date");
         barChart.setStyle("-fx-font-size:" + 15 + "px;");
-        //Prepare XYChart.Series objects by setting data
-        for(Entry entry : entries){
-            XYChart.Series<String,Number> series = new XYChart.Series<>();
-            series.setName(entry.getDateString());
-            Collection<FoodEntry> foodEntries = entry.getAllFoodEntries();
-            double fatTotal = 0;
-            double proteinTotal = 0;
-            double carbTotal = 0;
-            for(FoodEntry foodEntry : foodEntries){
-                fatTotal += foodEntry.getTotalFat();
-                proteinTotal += foodEntry.getTotalProtein();
-                carbTotal  += foodEntry.getTotalCarbs();
+        this.getChildren().add(new Group(barChart));
+        this.setOnScroll(this::scrolled);
+        this.entryHandler.addObserver(this);
+        update(entryHandler,entryHandler);
+    }
+
+    /**
+     * Shows a window of days. Bars already read for the new window are kept, only the ones that come into view are
+     * read, unless the window is so much longer or shorter that it is shown at a different resolution.
+     * @param from The first day to show, or null to follow the whole history.
+     * @param to The last day to show, or null to follow the whole history.
+     */
+    public void setWindow(LocalDate from, LocalDate to) {
+        if (from == null || to == null) {
+            this.window = null;
+        } else {
+            this.window = from.isAfter(to) ? new LocalDate[] {to, from} : new LocalDate[] {from, to};
+        }
+        this.views.submit(this, this::prepare, this::show);
+    }
+
+    /**
+     * Moves the window later or earlier, keeping its length. It always moves by at least a day.
+     * @param fraction How far to move, as a part of the window's length, negative to move back in time.
+     */
+    public void pan(double fraction) {
+        LocalDate[] window = this.window();
+        if (window == null || fraction == 0 || Double.isNaN(fraction)) {
+            return;
+        }
+        long length = ChronoUnit.DAYS.between(window[0], window[1]) + 1;
+        long days = Math.max(1, Math.round(length * Math.abs(fraction)));
+        if (fraction < 0) {
+            days = -days;
+        }
+        this.setWindow(window[0].plusDays(days), window[1].plusDays(days));
+    }
+
+    /**
+     * Zooms in one step.
+     */
+    public void zoomIn() {
+        this.zoom(ZOOM_STEP);
+    }
+
+    /**
+     * Zooms out one step.
+     */
+    public void zoomOut() {
+        this.zoom(1 / ZOOM_STEP);
+    }
+
+    /**
+     * Moves the window one step earlier.
+     */
+    public void panEarlier() {
+        this.pan(-PAN_STEP);
+    }
+
+    /**
+     * Moves the window one step later.
+     */
+    public void panLater() {
+        this.pan(PAN_STEP);
+    }
+
+    /**
+     * Makes the window longer or shorter around its middle.
+     * @param factor The new length as a multiple of the current one, below 1 to zoom in.
+     */
+    public void zoom(double factor) {
+        LocalDate[] window = this.window();
+        if (window == null || !(factor > 0)) {
+            return;
+        }
+        long length = ChronoUnit.DAYS.between(window[0], window[1]) + 1;
+        long zoomed = Math.max(1, Math.round(length * factor));
+        LocalDate from = window[0].plusDays((length - zoomed) / 2);
+        this.setWindow(from, from.plusDays(zoomed - 1));
+    }
+
+    /**
+     * Zooms when the chart is scrolled up or down, and pans when it is scrolled sideways or with shift held.
+     * @param event The scroll.
+     */
+    private void scrolled(ScrollEvent event) {
+        double sideways = event.getDeltaX() != 0 ? event.getDeltaX() : event.isShiftDown() ? event.getDeltaY() : 0;
+        if (sideways != 0) {
+            // Scrolling to the right, or down with shift held, moves later.
+            if (sideways < 0) {
+                this.panLater();
+            } else {
+                this.panEarlier();
             }
-            Number fatNumber = fatTotal;
-            series.getData().add(new XYChart.Data<>("Fat",fatNumber));
-            Number proteinNumber = proteinTotal;
-            series.getData().add(new XYChart.Data<>("Protein",proteinNumber));
-            Number carbNumber = carbTotal;
-            series.getData().add(new XYChart.Data<>("Carbs",carbNumber));
-            barChart.getData().add(series);
-        }
-        Group root = new Group(barChart);
-        this.getChildren().clear();
-        this.getChildren().add(root);
-    }
-    private double getMaxValue(Collection<Entry> entries){
-        double maxValue = 0;
-        for(Entry entry : entries) {
-            Collection<FoodEntry> foodEntries = entry.getAllFoodEntries();
-            double fatTotal = 0;
-            double proteinTotal = 0;
-            double carbTotal = 0;
-            for (FoodEntry foodEntry : foodEntries) {
-                fatTotal += foodEntry.getTotalFat();
-                proteinTotal += foodEntry.getTotalProtein();
-                carbTotal += foodEntry.getTotalCarbs();
+        } else if (event.getDeltaY() > 0) {
+            this.zoomIn();
+        } else if (event.getDeltaY() < 0) {
+            this.zoomOut();
+        }
+        event.consume();
+    }
+
+    /**
+     * Notes the days that changed, or that everything has to be read again, and has the bars read in the background.
+     * @param observable The entry handler.
+     * @param o The changes, see ChangeSet.
+     */
+    @Override
+    public void update(Observable observable, Object o) {
+        synchronized (this.changedDays) {
+            if (o instanceof ChangeSet && !((ChangeSet<?, ?>) o).isReset()) {
+                for (ChangeEvent<?, ?> event : ((ChangeSet<?, ?>) o).getEvents()) {
+                    this.changedDays.add((Integer) event.getKey());
+                }
+            } else {
+                this.reset = true;
+                this.changedDays.clear();
             }
-            if (fatTotal > maxValue) {
-                maxValue = fatTotal;
+        }
+        this.views.submit(this, this::prepare, this::show);
+    }
+
+    /**
+     * Brings the buckets read on the background thread up to date with the window: drops the buckets that left it,
+     * reads the ones that came into it, and reads again the ones holding a changed day.
+     * @return The bars to show.
+     */
+    private Bars prepare() {
+        ArrayList<Integer> changed;
+        synchronized (this.changedDays) {
+            changed = new ArrayList<>(this.changedDays);
+            this.changedDays.clear();
+            if (this.reset) {
+                this.reset = false;
+                this.forgetAll();
             }
-            if (proteinTotal > maxValue) {
-                maxValue = proteinTotal;
+        }
+        LocalDate[] window = this.window();
+        if (window == null) {
+            this.forgetAll();
+            return new Bars(null, Collections.emptySortedMap(), 0);
+        }
+        Resolution resolution = Resolution.fit(window[0], window[1], MAX_BARS);
+        if (resolution.count(window[0], window[1]) > MAX_BARS) {
+            // Too long even year by year, so only the latest years are shown.
+            window = new LocalDate[] {resolution.start(window[1]).minusYears(MAX_BARS - 1), window[1]};
+        }
+        if (resolution != this.resolution) {
+            this.forgetAll();
+            this.resolution = resolution;
+        }
+        int from = DateKey.of(resolution.start(window[0]));
+        int to = DateKey.of(resolution.start(window[1]));
+
+        for (Integer key : new ArrayList<>(this.values.headMap(from).keySet())) {
+            this.forget(this.values.remove(key));
+        }
+        for (Integer key : new ArrayList<>(this.values.tailMap(to, false).keySet())) {
+            this.forget(this.values.remove(key));
+        }
+        for (LocalDate start = resolution.start(window[0]); DateKey.of(start) <= to; start = resolution.next(start)) {
+            int key = DateKey.of(start);
+            if (key < this.readFrom || key > this.readTo) {
+                this.read(start);
             }
-            if (carbTotal > maxValue) {
-                maxValue = carbTotal;
+        }
+        for (int day : changed) {
+            LocalDate start = resolution.start(DateKey.toLocalDate(day));
+            int key = DateKey.of(start);
+            // Buckets outside the window are read when they come into it.
+            if (key >= from && key <= to && key >= this.readFrom && key <= this.readTo) {
+                this.read(start);
             }
         }
-        return maxValue;
+        this.readFrom = from;
+        this.readTo = to;
+        return new Bars(resolution, new TreeMap<>(this.values), this.heights.isEmpty() ? 0 : this.heights.lastKey());
+    }
+
+    /**
+     * Shows bars prepared on the background thread, touching only the series whose values changed.
+     * @param bars The bars.
+     */
+    private void show(Bars bars) {
+        if (bars.resolution != this.shownResolution) {
+            this.series.clear();
+            this.barChart.getData().clear();
+            this.shownResolution = bars.resolution;
+            this.barChart.setTitle(bars.resolution == null || bars.resolution == Resolution.DAY
+                    ? "Nutrition by Entry Date"
+                    : "Daily Average Nutrition by " + bars.resolution.name().charAt(0)
+                    + bars.resolution.name().substring(1).toLowerCase());
+        }
+        for (Integer key : new ArrayList<>(this.series.keySet())) {
+            if (!bars.values.containsKey(key)) {
+                this.barChart.getData().remove(this.series.remove(key));
+            }
+        }
+        for (Map.Entry<Integer, double[]> bucket : bars.values.entrySet()) {
+            int key = bucket.getKey();
+            double[] totals = bucket.getValue();
+            XYChart.Series<String,Number> bucketSeries = this.series.get(key);
+            if (bucketSeries != null) {
+                for (int i = 0; i < totals.length; i++) {
+                    XYChart.Data<String,Number> bar = bucketSeries.getData().get(i);
+                    if (bar.getYValue().doubleValue() != totals[i]) {
+                        bar.setYValue(totals[i]);
+                    }
+                }
+                continue;
+            }
+            // New buckets are nearly always the latest, which can go straight on the end.
+            int position = this.series.isEmpty() || key > this.series.lastKey()
+                    ? this.series.size() : this.series.headMap(key).size();
+            bucketSeries = new XYChart.Series<>();
+            bucketSeries.setName(label(bars.resolution, DateKey.toLocalDate(key)));
+            for (int i = 0; i < totals.length; i++) {
+                bucketSeries.getData().add(new XYChart.Data<>(NUTRIENTS[i], totals[i]));
+            }
+            this.series.put(key, bucketSeries);
+            this.barChart.getData().add(position, bucketSeries);
+        }
+        this.yAxis.setUpperBound(bars.top);
+    }
+
+    /**
+     * Returns the days to show.
+     * @return The first and last day of the window, or null if the window follows the history and there is none.
+     */
+    private LocalDate[] window() {
+        LocalDate[] window = this.window;
+        if (window != null) {
+            return window;
+        }
+        LocalDate first = this.entryHandler.firstDay();
+        return first == null ? null : new LocalDate[] {first, this.entryHandler.lastDay()};
+    }
+
+    /**
+     * Reads one bucket from the handler into the values of the background thread.
+     * @param start The first day of the bucket.
+     */
+    private void read(LocalDate start) {
+        int key = DateKey.of(start);
+        NutritionBucket bucket = this.entryHandler.bucket(this.resolution, start);
+        this.forget(this.values.remove(key));
+        if (bucket.getDaysLogged() == 0) {
+            return;
+        }
+        double[] totals = new double[VALUES.length];
+        for (int i = 0; i < VALUES.length; i++) {
+            totals[i] = bucket.average(VALUES[i]);
+        }
+        this.values.put(key, totals);
+        for (double total : totals) {
+            this.heights.merge(total, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Drops every bucket read on the background thread, so that the next call to prepare reads them again.
+     */
+    private void forgetAll() {
+        this.values.clear();
+        this.heights.clear();
+        this.resolution = null;
+        this.readFrom = 0;
+        this.readTo = -1;
+    }
+
+    /**
+     * Drops the values that were read for a bucket.
+     * @param totals The values, or null if none were read.
+     */
+    private void forget(double[] totals) {
+        if (totals == null) {
+            return;
+        }
+        for (double total : totals) {
+            this.heights.computeIfPresent(total, (height, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Names a bucket in the legend. Days are written the same way as Entry.getDateString so they match the log.
+     * @param resolution The resolution of the bucket.
+     * @param start The first day of the bucket.
+     * @return The name.
+     */
+    private static String label(Resolution resolution, LocalDate start) {
+        GregorianCalendar date = DateKey.toCalendar(DateKey.of(start));
+        String day = date.get(Calendar.MONTH)+"-"+date.get(Calendar.DAY_OF_MONTH)+"-"+date.get(Calendar.YEAR);
+        switch (resolution) {
+            case DAY:
+                return day;
+            case WEEK:
+                return "Week of " + day;
+            case MONTH:
+                return date.get(Calendar.MONTH)+"-"+date.get(Calendar.YEAR);
+            default:
+                return String.valueOf(date.get(Calendar.YEAR));
+        }
+    }
+
+    /**
+     * The bars prepared on the background thread for the FX thread to show. Nothing changes it once it is made.
+     */
+    private static class Bars {
+
+        private final Resolution resolution;
+        private final SortedMap<Integer, double[]> values;
+        private final double top;
+
+        private Bars(Resolution resolution, SortedMap<Integer, double[]> values, double top) {
+            this.resolution = resolution;
+            this.values = values;
+            this.top = top;
+        }
     }
 }
@@ -3,6 +3,7 @@ package DietManager.View.FXComponents;
 import DietManager.Controller.EntryController;
 import DietManager.Model.Entry.Entry;
 import DietManager.Model.EntryHandler;
+import DietManager.Model.Util.DateKey;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.EventHandler;
@@ -18,6 +19,7 @@ import javafx.scene.layout.VBox;
 import javafx.scene.text.Font;
 import javafx.util.Callback;
 
+import java.util.Comparator;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -26,9 +28,15 @@ import java.util.Observer;
  */
 public class LogTable extends Pane implements Observer {
 
-    private ObservableList<Entry> data;
+    // Entries are listed by date, the same as getAll returns them.
+    private static final Comparator<Entry> ORDER = Comparator.comparingInt(entry -> DateKey.of(entry.getDate()));
+
+    private ObservableList<Entry> data = FXCollections.observableArrayList();
+    // Entries are announced under their epoch-day.
+    private TableUpdates<Integer, Entry> updates = new TableUpdates<>(entry -> DateKey.of(entry.getDate()), ORDER);
     private TableView<Entry>table;
     private EntryHandler entryHandler;
+    private ViewModelService views;
     private EntryController entryController;
     private TableColumn dateColumn;
     private Label label;
@@ -39,14 +47,16 @@ public class LogTable extends Pane implements Observer {
      *
      * @param entryHandler the entry handler needed to get all entry/log entries
      * @param entryController the controller used when selecting entries
+     * @param views the service the rows are read on when every row has to be read again
      */
-    public LogTable(EntryHandler entryHandler, EntryController entryController){
+    public LogTable(EntryHandler entryHandler, EntryController entryController, ViewModelService views){
+        this.views = views;
         this.entryHandler = entryHandler;
         this.entryHandler.addObserver(this);
         this.entryController = entryController;
         entryHandler.addObserver(this);
 
-        table = new TableView<>();
+        table = new TableView<>(data);
         label = new Label("Daily Logs");
         label.setFont(new Font("Arial", 20));
         dateColumn = new TableColumn("Date");
@@ -66,14 +76,22 @@ public class LogTable extends Pane implements Observer {
 
     /**
      * Implement the Observer update method. Calls all observable objects to let them know an update has been made
+     * Only the rows that changed are updated, unless the handler asks for everything to be read again, in which case
+     * the rows are read on the background service and shown once they are ready.
      *
      * @param obs the obeservable object
      * @param o object that observable wil get updated about/with
      *
      */
     public void update(Observable obs,Object o){
-        data = FXCollections.observableArrayList(entryHandler.getAll());
-        table.setItems(data);
+        if (!views.isPending(this) && updates.apply(o)) {
+            return;
+        }
+        views.submit(this, entryHandler::getAll, rows -> {
+            data = FXCollections.observableArrayList(rows);
+            updates.reset(data);
+            table.setItems(data);
+        });
     }
 
     /**
@@ -0,0 +1,96 @@
+package DietManager.View.FXComponents;
+
+import DietManager.Model.Util.ChangeEvent;
+import DietManager.Model.Util.ChangeSet;
+import javafx.collections.ObservableList;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.function.Function;
+
+/**
+ * Applies the changes a handler announces to the rows of a table, so that only the rows that changed are touched and
+ * the table keeps its scroll position and selection.
+ * Rows are found by the key the handler announces them under, through a map from key to row index, so a change does
+ * not have to search the rows, and a row read back from a snapshot is found even though it is not the same object
+ * that was announced.
+ * Applying a change only depends on whether its key has a row, not on what the change says was there before. A
+ * change announced before the rows were read again, but delivered after, then leaves one row per key instead of
+ * adding a second one.
+ * @param <K> The type of the keys.
+ * @param <V> The type of the rows.
+ */
+final class TableUpdates<K, V> {
+
+    private final Function<? super V, ? extends K> keyOf;
+    private final Comparator<? super V> order;
+    private final HashMap<K, Integer> indexes;
+    private ObservableList<V> rows;
+
+    /**
+     * Creates the updates for a table.
+     * @param keyOf Gives the key the handler announces a row under.
+     * @param order The order the rows are kept in, or null to add new rows at the end.
+     */
+    TableUpdates(Function<? super V, ? extends K> keyOf, Comparator<? super V> order) {
+        this.keyOf = keyOf;
+        this.order = order;
+        this.indexes = new HashMap<>();
+    }
+
+    /**
+     * Starts applying changes to a new set of rows. Called whenever every row has been read again.
+     * @param rows The rows shown.
+     */
+    void reset(ObservableList<V> rows) {
+        this.rows = rows;
+        this.indexes.clear();
+        this.reindex(0);
+    }
+
+    /**
+     * Applies the changes an observer was updated with to the rows.
+     * @param changes The argument the observer was updated with.
+     * @return False if the changes cannot be applied and every row has to be read again.
+     */
+    @SuppressWarnings("unchecked")
+    boolean apply(Object changes) {
+        if (this.rows == null || !(changes instanceof ChangeSet) || ((ChangeSet<?, ?>) changes).isReset()) {
+            return false;
+        }
+        for (ChangeEvent<?, ?> event : ((ChangeSet<?, ?>) changes).getEvents()) {
+            K key = (K) event.getKey();
+            V newValue = (V) event.getNewValue();
+            Integer index = this.indexes.get(key);
+            if (newValue == null) {
+                if (index != null) {
+                    this.rows.remove((int) index);
+                    this.indexes.remove(key);
+                    this.reindex(index);
+                }
+            } else if (index != null) {
+                this.rows.set(index, newValue);
+            } else {
+                int position = this.rows.size();
+                if (this.order != null) {
+                    position = Collections.binarySearch(this.rows, newValue, this.order);
+                    position = position < 0 ? -position - 1 : position;
+                }
+                this.rows.add(position, newValue);
+                this.reindex(position);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records the index of every row from one on, after rows were added or removed before them.
+     * @param from The first row that moved.
+     */
+    private void reindex(int from) {
+        for (int i = from; i < this.rows.size(); i++) {
+            this.indexes.put(this.keyOf.apply(this.rows.get(i)), i);
+        }
+    }
+}
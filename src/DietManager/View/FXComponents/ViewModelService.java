@@ -0,0 +1,111 @@
+package DietManager.View.FXComponents;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Prepares what the views show on a background thread, so that reading and adding up the model never holds up the
+ * UI thread. A view submits a computation that reads the model and returns a snapshot that nothing else will change,
+ * and the snapshot is handed back on the delivery executor, such as the FX thread, to be shown.
+ * Computations run one at a time, in the order they were submitted. Work for the same view is coalesced: if a view
+ * submits again before its last snapshot has been shown, only the newest computation's snapshot is shown.
+ */
+public class ViewModelService {
+
+    private final Executor delivery;
+    private final ExecutorService worker;
+    private final ConcurrentHashMap<Object, Job<?>> pending;
+
+    /**
+     * Creates a service with its own daemon thread.
+     * @param delivery The executor snapshots are handed back on.
+     */
+    public ViewModelService(Executor delivery) {
+        this.delivery = delivery;
+        this.pending = new ConcurrentHashMap<>();
+        this.worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DietManager-views");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a computation for a view, replacing any earlier one for the same view that has not been shown yet.
+     * @param view The view the snapshot is for, used to coalesce its work.
+     * @param compute Reads the model on the background thread and returns the snapshot.
+     * @param show Shows the snapshot, run on the delivery executor.
+     * @param <T> The type of the snapshot.
+     */
+    public <T> void submit(Object view, Supplier<T> compute, Consumer<T> show) {
+        if (this.pending.put(view, new Job<>(compute, show)) == null) {
+            this.worker.execute(() -> this.run(view));
+        }
+    }
+
+    /**
+     * Returns if a view has work that has not been shown yet. A view that applies changes to what it shows should
+     * submit instead while this is true, since what it shows is about to be replaced.
+     * @param view The view.
+     * @return True if a snapshot for the view is still to come.
+     */
+    public boolean isPending(Object view) {
+        return this.pending.containsKey(view);
+    }
+
+    /**
+     * Runs the newest computation of a view and hands its snapshot over. If a newer one is submitted meanwhile the
+     * snapshot is dropped and the newer one is run instead.
+     * @param view The view.
+     */
+    private void run(Object view) {
+        Job<?> job = this.pending.get(view);
+        if (job == null) {
+            return;
+        }
+        try {
+            job.compute();
+        } catch (RuntimeException e) {
+            System.out.println("Could not update view. Reason: "+e.getMessage());
+            if (!this.pending.remove(view, job)) {
+                this.worker.execute(() -> this.run(view));
+            }
+            return;
+        }
+        this.delivery.execute(() -> {
+            if (this.pending.remove(view, job)) {
+                job.show();
+            } else {
+                this.worker.execute(() -> this.run(view));
+            }
+        });
+    }
+
+    /**
+     * A computation and what to do with its snapshot.
+     * @param <T> The type of the snapshot.
+     */
+    private static class Job<T> {
+
+        private final Supplier<T> compute;
+        private final Consumer<T> show;
+        private T snapshot;
+
+        private Job(Supplier<T> compute, Consumer<T> show) {
+            this.compute = compute;
+            this.show = show;
+        }
+
+        private void compute() {
+            this.snapshot = this.compute.get();
+        }
+
+        private void show() {
+            this.show.accept(this.snapshot);
+        }
+    }
+}
@@ -4,11 +4,13 @@ import DietManager.Model.EntryHandler;
 import DietManager.Model.ExerciseHandler;
 import DietManager.Model.Food.Food;
 import DietManager.Model.FoodHandler;
+import DietManager.Model.Util.BatchedObservable;
 import DietManager.View.FXComponents.*;
 import DietManager.Controller.EntryController;
 import DietManager.Controller.ExerciseController;
 import DietManager.Controller.FoodController;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.VBox;
@@ -41,6 +43,7 @@ public class JavaFXUI extends Application {
     private static BorderPane main;
     private static ViewButtonPane buttonPane;
     private static Graph graph;
+    private static ViewModelService views;
 
     /**
      * Constructor for the JavaFXUI
@@ -63,13 +66,20 @@ public class JavaFXUI extends Application {
      * Inherited method from application that starts the UI
      */
     public void start(Stage stage) {
+        // Views are updated on the FX thread, and changes made within 50ms of each other update them once.
+        for (BatchedObservable handler : new BatchedObservable[] {foodHandler, exerciseHandler, entryHandler}) {
+            handler.setDelivery(Platform::runLater);
+            handler.setCoalescing(50);
+        }
+        // What the tables and graph show is read off the FX thread and handed back to it once it is ready.
+        views = new ViewModelService(Platform::runLater);
         main = new BorderPane();
         entryController = new EntryController(this);
-        foodTable = new FoodTable(foodHandler);
-        logTable = new LogTable(entryHandler,entryController);
-        exerciseTable = new ExerciseTable(exerciseHandler);
+        foodTable = new FoodTable(foodHandler, views);
+        logTable = new LogTable(entryHandler,entryController, views);
+        exerciseTable = new ExerciseTable(exerciseHandler, views);
         buttonPane = new ViewButtonPane(this);
-        graph = new Graph(entryHandler);
+        graph = new Graph(entryHandler, views);
 
         /*Menu Bar setup*/
         MenuBar menuBar = new MenuBar();
@@ -80,13 +90,13 @@ public class JavaFXUI extends Application {
         save.setOnAction(e -> {
             try{
                 if (foodHandler.hasFile()) {
-                    foodHandler.save();
+                    foodHandler.saveInBackground();
                 }
                 if (exerciseHandler.hasFile()) {
-                    exerciseHandler.save();
+                    exerciseHandler.saveInBackground();
                 }
                 if (entryHandler.hasFile()) {
-                    entryHandler.save();
+                    entryHandler.saveInBackground();
                 }
                 new AlertModal("Success", "Save successful!");
             } catch(IOException ex){
@@ -124,7 +134,20 @@ public class JavaFXUI extends Application {
         MenuItem deleteExer = new MenuItem("Delete Exercise");
         deleteExer.setOnAction(new ExerciseController(exerciseHandler, this, "delete"));
         menuExercise.getItems().addAll(addExer,updateExer,deleteExer);
-        menuBar.getMenus().addAll(menuFile,menuFood, entryMenu, menuExercise);//add all menus
+        /*Graph menu - move and resize the window of days the graph shows*/
+        Menu menuGraph = new Menu("Graph");
+        MenuItem earlier = new MenuItem("Earlier");
+        earlier.setOnAction(e -> graph.panEarlier());
+        MenuItem later = new MenuItem("Later");
+        later.setOnAction(e -> graph.panLater());
+        MenuItem zoomIn = new MenuItem("Zoom In");
+        zoomIn.setOnAction(e -> graph.zoomIn());
+        MenuItem zoomOut = new MenuItem("Zoom Out");
+        zoomOut.setOnAction(e -> graph.zoomOut());
+        MenuItem wholeHistory = new MenuItem("Whole History");
+        wholeHistory.setOnAction(e -> graph.setWindow(null, null));
+        menuGraph.getItems().addAll(earlier, later, zoomIn, zoomOut, wholeHistory);
+        menuBar.getMenus().addAll(menuFile,menuFood, entryMenu, menuExercise, menuGraph);//add all menus
 
         /*Append to the display*/
         VBox vbox = new VBox(menuBar);